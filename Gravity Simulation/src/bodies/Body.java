@@ -1,6 +1,5 @@
 package bodies;
 
-import javafx.scene.shape.Circle;
 import utils.Vec2d;
 import utils.Vec;
 
@@ -12,8 +11,6 @@ import utils.Vec;
  */
 public interface Body {
 
-	public void updateObjects();
-
 	public void setPos(Vec2d pos);
 
 	public void setPos(double x, double y);
@@ -32,10 +29,6 @@ public interface Body {
 
 	public void resetAcc();
 
-	public Circle getCircle();
-
 	public Body clone();
 
-	public void delete();
-
 }
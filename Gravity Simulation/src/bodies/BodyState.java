@@ -0,0 +1,17 @@
+package bodies;
+
+/**
+ * The state of a body that is in no store, for example a new body that is not
+ * yet added to a constellation or a body that was removed from a simulation. It
+ * is a single small object instead of a store of its own and is dropped when
+ * the body moves into a store.
+ *
+ * @author Jan Muskalla
+ *
+ */
+final class BodyState {
+
+	double x, y, velX, velY, accX, accY, mass, radius;
+	long id;
+
+}
@@ -0,0 +1,410 @@
+package bodies;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import utils.BinaryReader;
+import utils.BinaryWriter;
+
+/**
+ * Stores position, velocity, acceleration, mass and radius of a group of bodies
+ * in primitive arrays (structure of arrays). The simulation works directly on
+ * these arrays, so a time step does not create any objects. Planets and
+ * particles are only views on an index of a store.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class BodyStore {
+
+	private static final int defaultCapacity = 16;
+
+	/** the id of the next new body */
+	private static final AtomicLong nextId = new AtomicLong();
+
+	/** the state of the bodies */
+	private double[] x, y, velX, velY, accX, accY, mass, radius;
+
+	/** the ids of the bodies, an id moves with its body from store to store */
+	private long[] id;
+
+	/** the bodies that are views on the arrays */
+	private IndexedBody[] bodies;
+
+	/** bodies that are marked to be removed with the next compaction */
+	private boolean[] dead;
+	private int deadCount;
+
+	/** number of bodies in this store */
+	private int size;
+
+	/**
+	 * Creates an empty store with a given capacity.
+	 *
+	 * @param capacity
+	 */
+	public BodyStore(int capacity) {
+		capacity = Math.max(capacity, 1);
+		x = new double[capacity];
+		y = new double[capacity];
+		velX = new double[capacity];
+		velY = new double[capacity];
+		accX = new double[capacity];
+		accY = new double[capacity];
+		mass = new double[capacity];
+		radius = new double[capacity];
+		id = new long[capacity];
+		bodies = new IndexedBody[capacity];
+		dead = new boolean[capacity];
+		size = 0;
+	}
+
+	/** Creates an empty store. */
+	public BodyStore() {
+		this(defaultCapacity);
+	}
+
+	/**
+	 * Creates a store and moves the state of all given bodies into it.
+	 *
+	 * @param bodyList
+	 */
+	public BodyStore(List<? extends IndexedBody> bodyList) {
+		this(bodyList.size());
+		for (IndexedBody body : bodyList)
+			add(body);
+	}
+
+	/**
+	 * Moves the state of a body into this store, the body becomes a view on the
+	 * last index of this one. If the body was the view on an entry of another
+	 * store, the entry is marked as dead there and dropped with the next
+	 * compaction of that store, so moving many bodies does not shift the other
+	 * store for each of them.
+	 *
+	 * @param body
+	 */
+	public void add(IndexedBody body) {
+		BodyStore old = body.store;
+		if (old == this)
+			return;
+
+		ensureCapacity(size + 1);
+		if (old == null) {
+			BodyState state = body.state;
+			x[size] = state.x;
+			y[size] = state.y;
+			velX[size] = state.velX;
+			velY[size] = state.velY;
+			accX[size] = state.accX;
+			accY[size] = state.accY;
+			mass[size] = state.mass;
+			radius[size] = state.radius;
+			id[size] = state.id;
+			body.state = null;
+		} else {
+			int i = body.index;
+			x[size] = old.x[i];
+			y[size] = old.y[i];
+			velX[size] = old.velX[i];
+			velY[size] = old.velY[i];
+			accX[size] = old.accX[i];
+			accY[size] = old.accY[i];
+			mass[size] = old.mass[i];
+			radius[size] = old.radius[i];
+			id[size] = old.id[i];
+			if (old.bodies[i] == body) {
+				old.bodies[i] = null;
+				old.markDead(i);
+			}
+		}
+
+		bodies[size] = body;
+		body.store = this;
+		body.index = size;
+		size++;
+	}
+
+	/**
+	 * @return a new id for a body that is created in this process
+	 */
+	static long newId() {
+		return nextId.getAndIncrement();
+	}
+
+	/**
+	 * Makes a new body the view on an entry that has no view yet.
+	 */
+	void setBody(int i, IndexedBody body) {
+		if (bodies[i] != null)
+			throw new IllegalStateException("index " + i + " already has a body");
+		bodies[i] = body;
+	}
+
+	/**
+	 * Moves the state of the view on an entry out of this store, so another body
+	 * can become the view on the entry.
+	 */
+	void releaseBody(int i) {
+		detach(i);
+		bodies[i] = null;
+	}
+
+	/**
+	 * Removes a body from this store together with all bodies that are marked as
+	 * dead, see compact(). The body keeps its state, so it can still be used on
+	 * its own.
+	 *
+	 * @param body
+	 */
+	public void remove(IndexedBody body) {
+		if (body.store != this)
+			return;
+
+		markDead(body.index);
+		compact();
+	}
+
+	/**
+	 * Copies the state of all bodies of another store into this store. The bodies
+	 * themselves are not copied, so this store is only a record of the state, for
+	 * example of the planets at an earlier time.
+	 *
+	 * @param other
+	 */
+	public void copyStateFrom(BodyStore other) {
+		int n = other.size;
+		resize(n);
+		System.arraycopy(other.x, 0, x, 0, n);
+		System.arraycopy(other.y, 0, y, 0, n);
+		System.arraycopy(other.velX, 0, velX, 0, n);
+		System.arraycopy(other.velY, 0, velY, 0, n);
+		System.arraycopy(other.accX, 0, accX, 0, n);
+		System.arraycopy(other.accY, 0, accY, 0, n);
+		System.arraycopy(other.mass, 0, mass, 0, n);
+		System.arraycopy(other.radius, 0, radius, 0, n);
+		System.arraycopy(other.id, 0, id, 0, n);
+	}
+
+	/**
+	 * Sets the number of bodies without views, for example for a store that is
+	 * filled from a stream. All views are removed, the state of new entries is
+	 * undefined until it is written into the arrays.
+	 *
+	 * @param n
+	 */
+	public void resize(int n) {
+		ensureCapacity(n);
+		Arrays.fill(bodies, 0, Math.max(size, n), null);
+		Arrays.fill(dead, 0, Math.max(size, n), false);
+		deadCount = 0;
+		size = n;
+	}
+
+	/**
+	 * Writes the number of bodies and their state, but not the bodies that are
+	 * views on it.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeState(BinaryWriter out) throws IOException {
+		out.writeInt(size);
+		out.writeDoubles(x, 0, size);
+		out.writeDoubles(y, 0, size);
+		out.writeDoubles(velX, 0, size);
+		out.writeDoubles(velY, 0, size);
+		out.writeDoubles(accX, 0, size);
+		out.writeDoubles(accY, 0, size);
+		out.writeDoubles(mass, 0, size);
+		out.writeDoubles(radius, 0, size);
+		out.writeLongs(id, 0, size);
+	}
+
+	/**
+	 * Reads a state that was written with writeState into this store. All views
+	 * are removed like in resize(int). The bodies keep their ids, new bodies get
+	 * ids that are larger than all read ids.
+	 *
+	 * @param in
+	 * @throws IOException
+	 */
+	public void readState(BinaryReader in) throws IOException {
+		int n = in.readInt();
+		resize(n);
+		in.readDoubles(x, 0, n);
+		in.readDoubles(y, 0, n);
+		in.readDoubles(velX, 0, n);
+		in.readDoubles(velY, 0, n);
+		in.readDoubles(accX, 0, n);
+		in.readDoubles(accY, 0, n);
+		in.readDoubles(mass, 0, n);
+		in.readDoubles(radius, 0, n);
+		in.readLongs(id, 0, n);
+
+		long max = -1;
+		for (int i = 0; i < n; i++)
+			max = Math.max(max, id[i]);
+		nextId.accumulateAndGet(max + 1, Math::max);
+	}
+
+	/**
+	 * Marks the body at an index to be removed. The body stays in the store until
+	 * the next call of compact(), so the indices of all bodies stay the same.
+	 *
+	 * @param i
+	 */
+	public void markDead(int i) {
+		if (!dead[i]) {
+			dead[i] = true;
+			deadCount++;
+		}
+	}
+
+	/**
+	 * @param i
+	 * @return true if the body at an index is marked to be removed
+	 */
+	public boolean isDead(int i) {
+		return dead[i];
+	}
+
+	/**
+	 * Removes all bodies that are marked as dead in one pass. The order of the
+	 * remaining bodies is kept, every removed body keeps its state in a
+	 * BodyState. Entries without a view are just dropped.
+	 *
+	 * @return the number of removed bodies
+	 */
+	public int compact() {
+		if (deadCount == 0)
+			return 0;
+
+		int k = 0;
+		for (int i = 0; i < size; i++) {
+			if (dead[i]) {
+				dead[i] = false;
+				if (bodies[i] != null)
+					detach(i);
+				continue;
+			}
+			if (k != i) {
+				x[k] = x[i];
+				y[k] = y[i];
+				velX[k] = velX[i];
+				velY[k] = velY[i];
+				accX[k] = accX[i];
+				accY[k] = accY[i];
+				mass[k] = mass[i];
+				radius[k] = radius[i];
+				id[k] = id[i];
+				bodies[k] = bodies[i];
+				if (bodies[k] != null)
+					bodies[k].index = k;
+			}
+			k++;
+		}
+		Arrays.fill(bodies, k, size, null);
+
+		int removed = size - k;
+		size = k;
+		deadCount = 0;
+		return removed;
+	}
+
+	/**
+	 * Copies the state of the body at an index into a BodyState of the body
+	 * without changing this store. The body is in no store afterwards.
+	 *
+	 * @param i
+	 */
+	private void detach(int i) {
+		IndexedBody body = bodies[i];
+		BodyState state = new BodyState();
+		state.x = x[i];
+		state.y = y[i];
+		state.velX = velX[i];
+		state.velY = velY[i];
+		state.accX = accX[i];
+		state.accY = accY[i];
+		state.mass = mass[i];
+		state.radius = radius[i];
+		state.id = id[i];
+		body.state = state;
+		body.store = null;
+		body.index = -1;
+	}
+
+	/**
+	 * Grows all arrays so they can hold at least a given number of bodies.
+	 *
+	 * @param capacity
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity <= x.length)
+			return;
+
+		int newCapacity = Math.max(capacity, x.length * 2);
+		x = Arrays.copyOf(x, newCapacity);
+		y = Arrays.copyOf(y, newCapacity);
+		velX = Arrays.copyOf(velX, newCapacity);
+		velY = Arrays.copyOf(velY, newCapacity);
+		accX = Arrays.copyOf(accX, newCapacity);
+		accY = Arrays.copyOf(accY, newCapacity);
+		mass = Arrays.copyOf(mass, newCapacity);
+		radius = Arrays.copyOf(radius, newCapacity);
+		id = Arrays.copyOf(id, newCapacity);
+		bodies = Arrays.copyOf(bodies, newCapacity);
+		dead = Arrays.copyOf(dead, newCapacity);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public IndexedBody getBody(int i) {
+		return bodies[i];
+	}
+
+	public double[] getX() {
+		return x;
+	}
+
+	public double[] getY() {
+		return y;
+	}
+
+	public double[] getVelX() {
+		return velX;
+	}
+
+	public double[] getVelY() {
+		return velY;
+	}
+
+	public double[] getAccX() {
+		return accX;
+	}
+
+	public double[] getAccY() {
+		return accY;
+	}
+
+	public double[] getMass() {
+		return mass;
+	}
+
+	public double[] getRadius() {
+		return radius;
+	}
+
+	/**
+	 * @return the ids of the bodies, every body that was created in this process
+	 *         has its own id
+	 */
+	public long[] getId() {
+		return id;
+	}
+
+}
@@ -1,9 +1,18 @@
 package bodies;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import simulation.ephemeris.Ephemeris;
+import simulation.gravity.DirectSum;
+import simulation.gravity.ForceSolver;
+import simulation.integrators.Integrator;
+import simulation.integrators.Taylor;
 
 /**
  * Implements a Constellation with an array of planets, a scale, time and name.
+ * The state of the planets and particles is kept in one BodyStore each. The
+ * gravity is calculated with the ForceSolver of the constellation and the
+ * planets are moved with its Integrator.
  * 
  * @author Jan Muskalla
  * 
@@ -14,10 +23,16 @@ public class Constellation {
 
 	private ArrayList<Planet> planetList;
 	private ArrayList<Particle> particleList;
+	private BodyStore planetStore;
+	private BodyStore particleStore;
 	private double scale;
 	private double time;
 	private String name;
 	private int sps;
+	private ForceSolver solver;
+	private double softening;
+	private Integrator integrator;
+	private boolean multiRate;
 
 	/**
 	 * Creates a new constellation with name, planets, scale and time scale
@@ -71,12 +86,36 @@ public class Constellation {
 	 */
 	public Constellation(String name, ArrayList<Planet> planetArray, ArrayList<Particle> particleArray, double scale,
 			double time, int sps) {
+		this(name, planetArray, new BodyStore(planetArray), particleArray, new BodyStore(particleArray), scale, time,
+				sps);
+	}
+
+	/**
+	 * Creates a new constellation on stores that already hold the planets and
+	 * particles, for example stores that were copied or read from a checkpoint.
+	 * The lists have to be the views on the stores in the order of the stores.
+	 * 
+	 * @param name
+	 * @param planetArray
+	 * @param planetStore
+	 * @param particleArray
+	 * @param particleStore
+	 * @param scale
+	 * @param time
+	 * @param sps
+	 */
+	public Constellation(String name, ArrayList<Planet> planetArray, BodyStore planetStore,
+			ArrayList<Particle> particleArray, BodyStore particleStore, double scale, double time, int sps) {
 		this.name = name;
 		this.planetList = planetArray;
 		this.particleList = particleArray;
+		this.planetStore = planetStore;
+		this.particleStore = particleStore;
 		this.scale = scale;
 		this.time = time;
 		this.sps = sps;
+		this.solver = new DirectSum();
+		this.integrator = new Taylor();
 	}
 
 	public int numberOfPlanets() {
@@ -99,6 +138,14 @@ public class Constellation {
 		return particleList;
 	}
 
+	public BodyStore getPlanetStore() {
+		return planetStore;
+	}
+
+	public BodyStore getParticleStore() {
+		return particleStore;
+	}
+
 	public Planet getPlanet(int i) {
 		return planetList.get(i);
 	}
@@ -119,16 +166,121 @@ public class Constellation {
 		return sps;
 	}
 
+	public ForceSolver getSolver() {
+		return solver;
+	}
+
+	/**
+	 * Sets the solver for the gravity, for example a BarnesHut solver for large
+	 * numbers of planets.
+	 * 
+	 * @param solver
+	 */
+	public void setSolver(ForceSolver solver) {
+		solver.setSoftening(softening);
+		this.solver = solver;
+	}
+
+	public double getSoftening() {
+		return softening;
+	}
+
+	/**
+	 * Sets the length of the Plummer softening of the gravity in this
+	 * constellation, 0 for Newtonian gravity. A small softening keeps the
+	 * accelerations finite when planets pass very close to each other.
+	 * 
+	 * @param softening
+	 */
+	public void setSoftening(double softening) {
+		this.softening = softening;
+		solver.setSoftening(softening);
+	}
+
+	public Integrator getIntegrator() {
+		return integrator;
+	}
+
+	/**
+	 * Sets the method that moves the planets, for example a symplectic method
+	 * that allows larger time steps.
+	 * 
+	 * @param integrator
+	 */
+	public void setIntegrator(Integrator integrator) {
+		this.integrator = integrator;
+	}
+
+	public boolean isMultiRate() {
+		return multiRate;
+	}
+
+	/**
+	 * Sets if the particles are moved with time steps of their own, longer far
+	 * from the planets and shorter close to them, instead of the time step of the
+	 * planets.
+	 * 
+	 * @param multiRate
+	 */
+	public void setMultiRate(boolean multiRate) {
+		this.multiRate = multiRate;
+	}
+
+	/**
+	 * Lets the planets that have the name of a body in an ephemeris follow the
+	 * ephemeris instead of being integrated, see EphemerisPlanet. The planets are
+	 * replaced by new views on their entries in the store and set to the
+	 * ephemeris at time 0.
+	 * 
+	 * @param ephemeris
+	 * @param names
+	 *            the names of the planets that follow the ephemeris, all planets
+	 *            of the ephemeris if there is no name
+	 * @return the number of planets that follow the ephemeris
+	 */
+	public int followEphemeris(Ephemeris ephemeris, String... names) {
+		int n = 0;
+		for (int i = 0; i < planetList.size(); i++) {
+			Planet p = planetList.get(i);
+			int body = ephemeris.indexOf(p.getName());
+			if (body < 0 || (names.length > 0 && !Arrays.asList(names).contains(p.getName())))
+				continue;
+			int index = p.getIndex();
+			planetStore.releaseBody(index);
+			EphemerisPlanet follower = new EphemerisPlanet(planetStore, index, p.getColor(), p.getName(), ephemeris,
+					body);
+			follower.follow(0);
+			planetList.set(i, follower);
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Returns a copy of this constellation. The stores are copied as a whole and
+	 * the copied bodies are views on the new stores, so large numbers of particles
+	 * are copied fast.
+	 */
 	public Constellation clone() {
-		ArrayList<Planet> planetArrayNew = new ArrayList<>();
+		BodyStore planetStoreNew = new BodyStore(planetStore.size());
+		planetStoreNew.copyStateFrom(planetStore);
+		ArrayList<Planet> planetArrayNew = new ArrayList<>(planetList.size());
 		for (Planet p : planetList)
-			planetArrayNew.add(p.clone());
+			planetArrayNew.add(p.copyTo(planetStoreNew));
 
-		ArrayList<Particle> particleArrayNew = new ArrayList<>();
-		for (Particle p : particleList)
-			particleArrayNew.add(p.clone());
+		BodyStore particleStoreNew = new BodyStore(particleStore.size());
+		particleStoreNew.copyStateFrom(particleStore);
+		ArrayList<Particle> particleArrayNew = new ArrayList<>(particleList.size());
+		for (int i = 0; i < particleList.size(); i++)
+			particleArrayNew.add(new Particle(particleStoreNew, i));
 
-		return new Constellation(this.name, planetArrayNew, particleArrayNew, this.scale, this.time, this.sps);
+		Constellation clone = new Constellation(this.name, planetArrayNew, planetStoreNew, particleArrayNew,
+				particleStoreNew, this.scale, this.time, this.sps);
+		clone.setSoftening(softening);
+		clone.setSolver(solver.clone());
+		clone.setIntegrator(integrator.clone());
+		clone.setMultiRate(multiRate);
+		return clone;
 	}
 
 }
@@ -0,0 +1,112 @@
+package bodies;
+
+import javafx.scene.paint.Color;
+import simulation.ephemeris.Ephemeris;
+
+/**
+ * A planet that follows the trajectory of a body in an ephemeris instead of
+ * being moved by the integrator, for example a major body that is only the
+ * background for particles and small planets. It is still a source of gravity
+ * for all other bodies and collides like any other planet. Outside of the time
+ * of its ephemeris it is integrated like other planets.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class EphemerisPlanet extends Planet {
+
+	/** the ephemeris and the index of the body in it */
+	private final Ephemeris ephemeris;
+	private final int body;
+
+	/** the evaluated state */
+	private final double[] evaluated = new double[6];
+
+	/**
+	 * Creates a new planet that follows a body of an ephemeris.
+	 *
+	 * @param posX
+	 * @param posY
+	 * @param velX
+	 * @param velY
+	 * @param mass
+	 * @param radius
+	 * @param color
+	 * @param name
+	 * @param ephemeris
+	 * @param body
+	 *            the index of the body in the ephemeris
+	 */
+	public EphemerisPlanet(double posX, double posY, double velX, double velY, double mass, double radius,
+			Color color, String name, Ephemeris ephemeris, int body) {
+		super(posX, posY, velX, velY, mass, radius, color, name);
+		this.ephemeris = ephemeris;
+		this.body = body;
+	}
+
+	/**
+	 * Creates a planet that follows a body of an ephemeris as the view on an
+	 * entry of a store that has no view yet.
+	 *
+	 * @param store
+	 * @param index
+	 * @param color
+	 * @param name
+	 * @param ephemeris
+	 * @param body
+	 *            the index of the body in the ephemeris
+	 */
+	public EphemerisPlanet(BodyStore store, int index, Color color, String name, Ephemeris ephemeris, int body) {
+		super(store, index, color, name);
+		this.ephemeris = ephemeris;
+		this.body = body;
+	}
+
+	/**
+	 * @param t
+	 *            the time in seconds
+	 * @return true if the ephemeris of this planet covers a time
+	 */
+	public boolean covers(double t) {
+		return t >= ephemeris.getStartTime(body) && t <= ephemeris.getEndTime(body);
+	}
+
+	/**
+	 * Sets the position and velocity of this planet to the ephemeris at a time.
+	 * The mass and radius stay, they can change by collisions in this simulation.
+	 *
+	 * @param t
+	 *            the time in seconds
+	 * @return false if the ephemeris does not cover the time
+	 */
+	public boolean follow(double t) {
+		if (!ephemeris.evaluate(body, t, evaluated))
+			return false;
+		setPos(evaluated[0], evaluated[1]);
+		setVel(evaluated[2], evaluated[3]);
+		return true;
+	}
+
+	public Ephemeris getEphemeris() {
+		return ephemeris;
+	}
+
+	/**
+	 * @return the index of the body in the ephemeris
+	 */
+	public int getBody() {
+		return body;
+	}
+
+	@Override
+	public EphemerisPlanet copyTo(BodyStore store) {
+		return new EphemerisPlanet(store, index, getColor(), getName(), ephemeris, body);
+	}
+
+	@Override
+	public EphemerisPlanet clone() {
+		return new EphemerisPlanet(getPosX(), getPosY(), getVelX(), getVelY(), getMass(), getRadius(), getColor(),
+				getName(), ephemeris, body);
+	}
+
+}
@@ -0,0 +1,183 @@
+package bodies;
+
+import utils.Vec;
+import utils.Vec2d;
+
+/**
+ * A body whose position, velocity, acceleration, mass and radius are kept at an
+ * index of a BodyStore. A new body and a body that was removed from its store
+ * keep their state in a BodyState until they are added to the store of a
+ * constellation or simulation.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public abstract class IndexedBody implements Body {
+
+	/** the store with the state of this body and the index in it */
+	BodyStore store;
+	int index;
+
+	/** the state of this body while it is in no store, otherwise null */
+	BodyState state;
+
+	/**
+	 * Creates a body with position, velocity, mass and radius that is in no store
+	 * yet.
+	 */
+	protected IndexedBody(double posX, double posY, double velX, double velY, double mass, double radius) {
+		state = new BodyState();
+		state.x = posX;
+		state.y = posY;
+		state.velX = velX;
+		state.velY = velY;
+		state.mass = mass;
+		state.radius = radius;
+		state.id = BodyStore.newId();
+		index = -1;
+	}
+
+	/**
+	 * Creates a body as the view on an entry of a store that has no view yet, for
+	 * example an entry of a store that was copied or read as a whole. The state is
+	 * not copied, so many bodies are created fast.
+	 */
+	protected IndexedBody(BodyStore store, int index) {
+		store.setBody(index, this);
+		this.store = store;
+		this.index = index;
+	}
+
+	@Override
+	public abstract IndexedBody clone();
+
+	/**
+	 * @return the store of this body or null if the body is in no store
+	 */
+	public BodyStore getStore() {
+		return store;
+	}
+
+	/**
+	 * @return the index of this body in its store or -1 if the body is in no
+	 *         store
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the id of this body, it stays the same when the body moves to
+	 *         another store
+	 */
+	public long getId() {
+		return store != null ? store.getId()[index] : state.id;
+	}
+
+	public double getPosX() {
+		return store != null ? store.getX()[index] : state.x;
+	}
+
+	public double getPosY() {
+		return store != null ? store.getY()[index] : state.y;
+	}
+
+	public double getVelX() {
+		return store != null ? store.getVelX()[index] : state.velX;
+	}
+
+	public double getVelY() {
+		return store != null ? store.getVelY()[index] : state.velY;
+	}
+
+	@Override
+	public Vec getPos() {
+		return new Vec(getPosX(), getPosY());
+	}
+
+	@Override
+	public void setPos(Vec2d pos) {
+		setPos(pos.getX(), pos.getY());
+	}
+
+	@Override
+	public void setPos(double x, double y) {
+		if (store == null) {
+			state.x = x;
+			state.y = y;
+			return;
+		}
+		store.getX()[index] = x;
+		store.getY()[index] = y;
+	}
+
+	@Override
+	public Vec getVel() {
+		return new Vec(getVelX(), getVelY());
+	}
+
+	@Override
+	public void setVel(Vec vel) {
+		setVel(vel.getX(), vel.getY());
+	}
+
+	@Override
+	public void setVel(double x, double y) {
+		if (store == null) {
+			state.velX = x;
+			state.velY = y;
+			return;
+		}
+		store.getVelX()[index] = x;
+		store.getVelY()[index] = y;
+	}
+
+	@Override
+	public Vec getAcc() {
+		if (store == null)
+			return new Vec(state.accX, state.accY);
+		return new Vec(store.getAccX()[index], store.getAccY()[index]);
+	}
+
+	@Override
+	public void addAcc(Vec v) {
+		if (store == null) {
+			state.accX += v.getX();
+			state.accY += v.getY();
+			return;
+		}
+		store.getAccX()[index] += v.getX();
+		store.getAccY()[index] += v.getY();
+	}
+
+	@Override
+	public void resetAcc() {
+		if (store == null) {
+			state.accX = 0;
+			state.accY = 0;
+			return;
+		}
+		store.getAccX()[index] = 0;
+		store.getAccY()[index] = 0;
+	}
+
+	public double getMass() {
+		return store != null ? store.getMass()[index] : state.mass;
+	}
+
+	public double getRadius() {
+		return store != null ? store.getRadius()[index] : state.radius;
+	}
+
+	/** sets mass and radius without any further calculation */
+	protected void setMassAndRadius(double mass, double radius) {
+		if (store == null) {
+			state.mass = mass;
+			state.radius = radius;
+			return;
+		}
+		store.getMass()[index] = mass;
+		store.getRadius()[index] = radius;
+	}
+
+}
@@ -1,13 +1,5 @@
 package bodies;
 
-import javafx.scene.layout.Pane;
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Circle;
-import simulation.Main;
-import utils.Vec2d;
-import utils.Vec;
-import window.ViewSettings;
-
 /**
  * A particle has no mass, radius, name or trail, so it does not influence other
  * bodies.
@@ -15,13 +7,7 @@ import window.ViewSettings;
  * @author Jan Muskalla
  *
  */
-public class Particle implements Body {
-
-	/** planet properties */
-	private Vec pos, vel, acc;
-
-	/** drawn objects */
-	private Circle circle;
+public class Particle extends IndexedBody {
 
 	/**
 	 * Creates a new particle with position and velocity
@@ -32,11 +18,17 @@ public class Particle implements Body {
 	 * @param velY
 	 */
 	public Particle(double posX, double posY, double velX, double velY) {
-		this.pos = new Vec(posX, posY);
-		this.vel = new Vec(velX, velY);
-		this.acc = new Vec();
-		circle = new Circle(ViewSettings.minBodySize);
-		circle.setFill(Color.WHITE);
+		super(posX, posY, velX, velY, 0, 0);
+	}
+
+	/**
+	 * Creates a particle as the view on an entry of a store that has no view yet.
+	 * 
+	 * @param store
+	 * @param index
+	 */
+	public Particle(BodyStore store, int index) {
+		super(store, index);
 	}
 
 	/** Creates a new particle */
@@ -44,72 +36,9 @@ public class Particle implements Body {
 		this(0, 0, 0, 0);
 	}
 
-	/** updates the circle position */
-	@Override
-	public void updateObjects() {
-		Vec tp = Main.win.transform(pos);
-		circle.setCenterX(tp.getX());
-		circle.setCenterY(tp.getY());
-	}
-
 	@Override
 	public Particle clone() {
-		return new Particle(pos.getX(), pos.getY(), vel.getX(), vel.getY());
-	}
-
-	@Override
-	public void setPos(Vec2d pos) {
-		this.pos.set(pos.getX(), pos.getY());
-	}
-
-	@Override
-	public void setPos(double x, double y) {
-		this.pos = new Vec(x, y);
-	}
-
-	@Override
-	public Vec getPos() {
-		return pos;
-	}
-
-	@Override
-	public void setVel(Vec vel) {
-		this.vel = vel;
-	}
-
-	@Override
-	public void setVel(double x, double y) {
-		vel = new Vec(x, y);
-	}
-
-	@Override
-	public Vec getVel() {
-		return vel;
-	}
-
-	@Override
-	public void resetAcc() {
-		acc = new Vec();
-	}
-
-	@Override
-	public Vec getAcc() {
-		return acc;
-	}
-
-	@Override
-	public void addAcc(Vec v) {
-		acc = acc.add(v);
-	}
-
-	@Override
-	public Circle getCircle() {
-		return circle;
-	}
-
-	@Override
-	public void delete() {
-		((Pane) circle.getParent()).getChildren().remove(circle);
+		return new Particle(getPosX(), getPosY(), getVelX(), getVelY());
 	}
 
 }
@@ -0,0 +1,261 @@
+package simulation;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import bodies.BodyStore;
+import bodies.Constellation;
+import bodies.EphemerisPlanet;
+import bodies.Particle;
+import bodies.Planet;
+import javafx.scene.paint.Color;
+import simulation.distributed.DistributedParticleStage;
+import simulation.ephemeris.Ephemeris;
+import simulation.gravity.ForceSolver;
+import simulation.integrators.Integrator;
+import utils.BinaryReader;
+import utils.BinaryWriter;
+
+/**
+ * Writes the whole state of a simulation in a compact binary format and
+ * creates a simulation from it that continues exactly like the written one. A
+ * long calculation can be stopped and resumed, or several simulations can be
+ * started from the same state.
+ *
+ * A checkpoint contains the system (name, scale, time step and steps per
+ * second), the current time step, the simulated time and the counters, the
+ * solver and the integrator with their parameters and saved data, the planets
+ * with name, color and the ephemeris file of the planets that follow one, the
+ * particles and the data of the particle stage. The ephemeris files are read
+ * again when the checkpoint is read, so they have to stay in place. The
+ * state of the bodies is written as whole arrays, so millions of particles are
+ * written and read in the time the disk needs. The particles and the data of
+ * a particle stage in other processes are collected from the workers, so the
+ * checkpoint is the same as of a simulation in one process.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class Checkpoint {
+
+	/** "GRAV" */
+	private static final int magic = 0x47524156;
+	private static final int version = 3;
+
+	/** the buffer for files */
+	private static final int fileBufferSize = 1 << 20;
+
+	/**
+	 * Writes a checkpoint of a simulation into a file. If the simulation thread
+	 * runs, the checkpoint is written between two steps.
+	 *
+	 * @param simulation
+	 * @param path
+	 * @throws IOException
+	 */
+	public static void save(Simulation simulation, Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			simulation.writeCheckpoint(channel);
+		}
+	}
+
+	/**
+	 * Creates a simulation from a checkpoint file. The simulation is not started.
+	 *
+	 * @param path
+	 * @return the simulation
+	 * @throws IOException
+	 */
+	public static Simulation load(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return read(channel);
+		}
+	}
+
+	/**
+	 * Writes a checkpoint of a simulation into a channel. Must not be called while
+	 * the simulation thread moves the bodies, see Simulation.writeCheckpoint.
+	 *
+	 * @param simulation
+	 * @param channel
+	 * @throws IOException
+	 */
+	public static void write(Simulation simulation, WritableByteChannel channel) throws IOException {
+		BinaryWriter out = new BinaryWriter(channel, fileBufferSize);
+		out.writeInt(magic);
+		out.writeInt(version);
+
+		Constellation constellation = simulation.getConstellation();
+		out.writeString(constellation.getName());
+		out.writeDouble(constellation.getScale());
+		out.writeDouble(constellation.getTime());
+		out.writeInt(constellation.getSps());
+		out.writeBoolean(constellation.isMultiRate());
+
+		out.writeDouble(simulation.getTime());
+		out.writeDouble(simulation.getSecondsCounter());
+		out.writeLong(simulation.getSteps());
+		out.writeLong(simulation.getPlanetCollisions());
+		out.writeLong(simulation.getParticleImpacts());
+
+		ForceSolver solver = simulation.getSolver();
+		out.writeString(solver.getClass().getName());
+		out.writeDouble(solver.getSoftening());
+		solver.writeState(out);
+		Integrator integrator = simulation.getIntegrator();
+		out.writeString(integrator.getClass().getName());
+		integrator.writeState(out);
+
+		// name, color and ephemeris of the planets in the order of the store
+		ArrayList<Planet> planetList = simulation.getPlanetList();
+		out.writeInt(planetList.size());
+		for (Planet p : planetList) {
+			out.writeString(p.getName());
+			writeColor(out, p.getColor());
+			out.writeBoolean(p instanceof EphemerisPlanet);
+			if (p instanceof EphemerisPlanet) {
+				EphemerisPlanet follower = (EphemerisPlanet) p;
+				out.writeString(follower.getEphemeris().getPath().toString());
+				out.writeInt(follower.getBody());
+			}
+		}
+		ParticleStage stage = simulation.getParticleStage();
+		stage.gather(simulation.getParticleStore());
+		simulation.getPlanetStore().writeState(out);
+		simulation.getParticleStore().writeState(out);
+
+		// only a stage of the kind the simulation creates can read its data again,
+		// workers write the data of the stage they use
+		Class<?> kind = constellation.isMultiRate() ? MultiRateParticleStage.class : ParticleStage.class;
+		boolean stageState = stage.getClass() == kind || stage instanceof DistributedParticleStage
+				&& ((DistributedParticleStage) stage).isMultiRate() == constellation.isMultiRate();
+		out.writeBoolean(stageState);
+		if (stageState)
+			stage.writeState(out);
+		out.flush();
+	}
+
+	/**
+	 * Creates a simulation from a checkpoint in a channel. The simulation is not
+	 * started.
+	 *
+	 * @param channel
+	 * @return the simulation
+	 * @throws IOException
+	 */
+	public static Simulation read(ReadableByteChannel channel) throws IOException {
+		BinaryReader in = new BinaryReader(channel, fileBufferSize);
+		if (in.readInt() != magic)
+			throw new IOException("not a checkpoint");
+		int v = in.readInt();
+		if (v != version && v != 2)
+			throw new IOException("unknown checkpoint version " + v);
+
+		String name = in.readString();
+		double scale = in.readDouble();
+		double constellationTime = in.readDouble();
+		int sps = in.readInt();
+		boolean multiRate = in.readBoolean();
+
+		double time = in.readDouble();
+		double secondsCounter = in.readDouble();
+		long steps = in.readLong();
+		long planetCollisions = in.readLong();
+		long particleImpacts = in.readLong();
+
+		ForceSolver solver = create(in.readString(), ForceSolver.class);
+		double softening = in.readDouble();
+		solver.readState(in);
+		Integrator integrator = create(in.readString(), Integrator.class);
+		integrator.readState(in);
+
+		// version 2 has no ephemerides, every ephemeris file is only read once
+		int planets = in.readInt();
+		String[] names = new String[planets];
+		Color[] colors = new Color[planets];
+		Ephemeris[] ephemerides = new Ephemeris[planets];
+		int[] bodies = new int[planets];
+		HashMap<String, Ephemeris> files = new HashMap<String, Ephemeris>();
+		for (int i = 0; i < planets; i++) {
+			names[i] = in.readString();
+			colors[i] = readColor(in);
+			if (v > 2 && in.readBoolean()) {
+				String file = in.readString();
+				bodies[i] = in.readInt();
+				ephemerides[i] = files.get(file);
+				if (ephemerides[i] == null) {
+					ephemerides[i] = new Ephemeris(Path.of(file));
+					files.put(file, ephemerides[i]);
+				}
+				if (bodies[i] >= ephemerides[i].getBodyCount())
+					throw new IOException("the ephemeris " + file + " has no body " + bodies[i]);
+			}
+		}
+		BodyStore planetStore = new BodyStore(planets);
+		planetStore.readState(in);
+		if (planetStore.size() != planets)
+			throw new IOException("planets do not match the planet store");
+		ArrayList<Planet> planetList = new ArrayList<Planet>(planets);
+		for (int i = 0; i < planets; i++)
+			planetList.add(ephemerides[i] != null
+					? new EphemerisPlanet(planetStore, i, colors[i], names[i], ephemerides[i], bodies[i])
+					: new Planet(planetStore, i, colors[i], names[i]));
+
+		BodyStore particleStore = new BodyStore(0);
+		particleStore.readState(in);
+		ArrayList<Particle> particleList = new ArrayList<Particle>(particleStore.size());
+		for (int i = 0; i < particleStore.size(); i++)
+			particleList.add(new Particle(particleStore, i));
+
+		Constellation constellation = new Constellation(name, planetList, planetStore, particleList, particleStore,
+				scale, constellationTime, sps);
+		constellation.setSolver(solver);
+		constellation.setSoftening(softening);
+		constellation.setIntegrator(integrator);
+		constellation.setMultiRate(multiRate);
+
+		Simulation simulation = new Simulation(constellation);
+		simulation.restore(time, secondsCounter, steps, planetCollisions, particleImpacts);
+		if (in.readBoolean())
+			simulation.getParticleStage().readState(in);
+		return simulation;
+	}
+
+	private static void writeColor(BinaryWriter out, Color color) throws IOException {
+		out.writeBoolean(color != null);
+		if (color != null) {
+			out.writeDouble(color.getRed());
+			out.writeDouble(color.getGreen());
+			out.writeDouble(color.getBlue());
+			out.writeDouble(color.getOpacity());
+		}
+	}
+
+	private static Color readColor(BinaryReader in) throws IOException {
+		if (!in.readBoolean())
+			return null;
+		return new Color(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+	}
+
+	/**
+	 * Creates an object of a class with the constructor without parameters, which
+	 * may be private.
+	 */
+	private static <T> T create(String className, Class<T> type) throws IOException {
+		try {
+			Constructor<? extends T> constructor = Class.forName(className).asSubclass(type).getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return constructor.newInstance();
+		} catch (ReflectiveOperationException | ClassCastException e) {
+			throw new IOException("can't create " + className, e);
+		}
+	}
+
+}
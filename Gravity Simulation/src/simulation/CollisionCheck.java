@@ -0,0 +1,72 @@
+package simulation;
+
+import java.lang.reflect.Method;
+import bodies.Constellation;
+import bodies.Planet;
+import systems.Systems;
+
+/**
+ * Runs systems with many planet collisions once with the collision scheduler
+ * and once with tests of all pairs in every step and compares the collisions
+ * and the final states. The scheduler must not miss or delay a collision, so
+ * both runs have to be the same to the last bit. Start with
+ *
+ * java simulation.CollisionCheck [steps] [system ...]
+ *
+ * Without systems the random systems are run a few times. The exit code is 1
+ * if any run differs.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class CollisionCheck {
+
+	private static final String[] defaultSystems = { "earthMarsCollision", "randomPlanets", "randomPlanets",
+			"randomPlanets", "randomMoons", "randomMoons", "sym8", "saturnUranusEncounter" };
+
+	public static void main(String... args) throws Exception {
+		long steps = args.length > 0 ? Long.parseLong(args[0]) : 200000;
+		String[] systems = args.length > 1 ? java.util.Arrays.copyOfRange(args, 1, args.length) : defaultSystems;
+
+		boolean same = true;
+		for (String system : systems) {
+			Method method = Systems.class.getMethod(system);
+			Constellation constellation = (Constellation) method.invoke(null);
+
+			// a simulation moves the bodies of its constellation, so both get a copy
+			Simulation scheduled = new Simulation(constellation.clone());
+			Simulation everyStep = new Simulation(constellation.clone());
+			everyStep.setScheduleCollisions(false);
+
+			long start = System.nanoTime();
+			scheduled.runSteps(steps);
+			double scheduledTime = (System.nanoTime() - start) * 1e-9;
+			start = System.nanoTime();
+			everyStep.runSteps(steps);
+			double everyStepTime = (System.nanoTime() - start) * 1e-9;
+
+			boolean equal = equal(scheduled, everyStep);
+			same &= equal;
+			System.out.printf("%-24s %d steps, collisions %d scheduled, %d every step, %s, %.2f s / %.2f s%n", system,
+					steps, scheduled.getPlanetCollisions(), everyStep.getPlanetCollisions(),
+					equal ? "same" : "DIFFERENT", scheduledTime, everyStepTime);
+		}
+		System.exit(same ? 0 : 1);
+	}
+
+	/**
+	 * @return true if both simulations have the same planets at the same states
+	 */
+	private static boolean equal(Simulation a, Simulation b) {
+		if (a.getPlanetCollisions() != b.getPlanetCollisions() || a.getPlanetList().size() != b.getPlanetList().size())
+			return false;
+		for (int i = 0; i < a.getPlanetList().size(); i++) {
+			Planet p = a.getPlanetList().get(i), q = b.getPlanetList().get(i);
+			if (p.getPos().getX() != q.getPos().getX() || p.getPos().getY() != q.getPos().getY()
+					|| p.getMass() != q.getMass())
+				return false;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,264 @@
+package simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import bodies.BodyStore;
+import utils.Utils;
+
+/**
+ * Tests pairs of planets for collisions only when they could touch. For every
+ * pair the earliest time of a contact is calculated from the gap between the
+ * planets, their relative speed and a bound on their accelerations, and the
+ * pair is only tested again after half of this time. The half is a margin for
+ * the error of the integrator. The pairs are kept in a priority queue ordered
+ * by the time of their next test, so in a system where no planets come close
+ * almost no pairs are tested in a step.
+ *
+ * The acceleration bounds hold for a window of time, not only for the current
+ * positions. In the window every planet moves at most |v| t + A t^2 / 2 with
+ * the largest bound A of all planets, so its distance to every other planet
+ * is at least the current distance minus both of these ways, and never less
+ * than the sum of the radii before they touch. The bound of a planet is the
+ * sum of the accelerations by all other planets at these smallest distances.
+ * If a bound is larger than the A that was assumed, the window is halved and A
+ * is raised until all bounds are at most A. Then no acceleration can exceed A
+ * in the window, because it would first have to reach A while all planets
+ * were still within their ways. No pair waits longer than the end of the
+ * window, then the bounds are calculated again.
+ *
+ * The bounds assume that only planets accelerate planets. After a planet is
+ * added, removed or changed by a collision all pairs have to be scheduled
+ * again.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class CollisionScheduler {
+
+	/** systems with more planets use the grid, the number of pairs grows too fast */
+	public static final int maxPlanets = 256;
+
+	/** the largest window in time steps, it only limits the work for a window */
+	private static final int maxSteps = 256;
+
+	/** the number of times a window is halved before the largest bound is used */
+	private static final int maxHalvings = 30;
+
+	/** all pairs ordered by the time of their next test */
+	private final PriorityQueue<Contact> queue = new PriorityQueue<Contact>();
+
+	/** true if the pairs in the queue belong to the current planets */
+	private boolean valid = false;
+
+	/** the acceleration bound of each planet until the end of the window */
+	private double[] bound = new double[0];
+	private double windowEnd = Double.NEGATIVE_INFINITY;
+
+	/** the current accelerations and speeds of the planets */
+	private double[] acceleration = new double[0], speed = new double[0];
+
+	private static final long[] noOverlaps = new long[0];
+
+	/** the found overlaps */
+	private long[] overlaps = new long[16];
+
+	/** the pairs that were tested in this step */
+	private final ArrayList<Contact> tested = new ArrayList<Contact>();
+
+	/**
+	 * Finds all pairs of planets that overlap at the current time and schedules
+	 * the tested pairs again. A pair (i, j) with i < j is packed in a long as i
+	 * << 32 | j, the pairs are sorted.
+	 *
+	 * @param planets
+	 * @param now
+	 *            the current simulated time
+	 * @param time
+	 *            the current time step
+	 * @return all overlapping pairs
+	 */
+	public long[] findOverlaps(BodyStore planets, double now, double time) {
+		int n = planets.size();
+		if (valid && (queue.isEmpty() || queue.peek().due > now))
+			return noOverlaps;
+		if (!valid || now >= windowEnd)
+			calculateBounds(planets, now, time);
+
+		if (!valid) {
+			queue.clear();
+			for (int i = 0; i < n; i++)
+				for (int j = i + 1; j < n; j++)
+					queue.add(schedule(new Contact(i, j), planets, now));
+			valid = true;
+		}
+
+		int count = 0;
+		while (!queue.isEmpty() && queue.peek().due <= now) {
+			Contact contact = queue.poll();
+			if (gap(planets, contact.i, contact.j) < 0) {
+				if (count == overlaps.length)
+					overlaps = Arrays.copyOf(overlaps, count * 2);
+				overlaps[count++] = (long) contact.i << 32 | contact.j;
+			}
+			tested.add(contact);
+		}
+
+		// scheduled after all tests, overlapping pairs are due again at once
+		for (Contact contact : tested)
+			queue.add(schedule(contact, planets, now));
+		tested.clear();
+
+		if (count == 0)
+			return noOverlaps;
+		long[] result = Arrays.copyOf(overlaps, count);
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * Starts a new window and calculates the acceleration bounds of all planets
+	 * in it.
+	 */
+	private void calculateBounds(BodyStore planets, double now, double time) {
+		int n = planets.size();
+		if (bound.length < n) {
+			bound = new double[planets.getX().length];
+			acceleration = new double[bound.length];
+			speed = new double[bound.length];
+		}
+		double[] x = planets.getX(), y = planets.getY();
+		double[] velX = planets.getVelX(), velY = planets.getVelY();
+		double[] mass = planets.getMass(), radius = planets.getRadius();
+
+		// the current accelerations without directions
+		double assumed = 0;
+		for (int i = 0; i < n; i++) {
+			double sum = 0;
+			for (int k = 0; k < n; k++) {
+				if (k == i)
+					continue;
+				double dx = x[k] - x[i];
+				double dy = y[k] - y[i];
+				sum += mass[k] / (dx * dx + dy * dy);
+			}
+			acceleration[i] = Utils.GRAV_CONST * sum;
+			speed[i] = Math.sqrt(velX[i] * velX[i] + velY[i] * velY[i]);
+			assumed = Math.max(assumed, acceleration[i]);
+		}
+		assumed *= 2;
+
+		double window = maxSteps * time;
+		for (int halvings = 0;; halvings++) {
+			double largest = 0;
+			for (int i = 0; i < n; i++) {
+				double sum = 0;
+				double way = speed[i] * window + assumed * window * window / 2;
+				for (int k = 0; k < n; k++) {
+					if (k == i)
+						continue;
+					double dx = x[k] - x[i];
+					double dy = y[k] - y[i];
+					double d = Math.sqrt(dx * dx + dy * dy) - way - speed[k] * window
+							- assumed * window * window / 2;
+					d = Math.max(d, radius[i] + radius[k]);
+					sum += mass[k] / (d * d);
+				}
+				bound[i] = Utils.GRAV_CONST * sum;
+				largest = Math.max(largest, bound[i]);
+			}
+			if (largest <= assumed)
+				break;
+			if (halvings == maxHalvings) {
+
+				// the accelerations when all planets touch hold for any window
+				for (int i = 0; i < n; i++)
+					bound[i] = largestBound(planets, i);
+				window = maxSteps * time;
+				break;
+			}
+			assumed = largest;
+			window /= 2;
+		}
+		windowEnd = now + window;
+	}
+
+	/**
+	 * @return the acceleration of a planet if all other planets touch it
+	 */
+	private static double largestBound(BodyStore planets, int i) {
+		double[] mass = planets.getMass(), radius = planets.getRadius();
+		double sum = 0;
+		for (int k = 0; k < planets.size(); k++) {
+			if (k == i)
+				continue;
+			double d = radius[i] + radius[k];
+			sum += mass[k] / (d * d);
+		}
+		return Utils.GRAV_CONST * sum;
+	}
+
+	/**
+	 * Sets the time of the next test of a pair to half of the earliest time of a
+	 * contact, but not later than the end of the window.
+	 *
+	 * @return the contact
+	 */
+	private Contact schedule(Contact contact, BodyStore planets, double now) {
+		int i = contact.i, j = contact.j;
+		double gap = gap(planets, i, j);
+		if (gap <= 0) {
+			contact.due = now;
+			return contact;
+		}
+
+		double dvx = planets.getVelX()[i] - planets.getVelX()[j];
+		double dvy = planets.getVelY()[i] - planets.getVelY()[j];
+		double v = Math.sqrt(dvx * dvx + dvy * dvy);
+		double a = bound[i] + bound[j];
+
+		// the smallest t with v*t + a/2*t^2 = gap
+		double t = 2 * gap / (v + Math.sqrt(v * v + 2 * a * gap));
+
+		contact.due = Math.min(now + t / 2, windowEnd);
+		return contact;
+	}
+
+	/**
+	 * @return the distance between the surfaces of two planets, negative if they
+	 *         overlap
+	 */
+	private static double gap(BodyStore planets, int i, int j) {
+		double dx = planets.getX()[i] - planets.getX()[j];
+		double dy = planets.getY()[i] - planets.getY()[j];
+		return Math.sqrt(dx * dx + dy * dy) - planets.getRadius()[i] - planets.getRadius()[j];
+	}
+
+	/**
+	 * All pairs have to be scheduled again, because a planet was added, removed or
+	 * changed.
+	 */
+	public void reset() {
+		valid = false;
+	}
+
+	/**
+	 * A pair of planets and the time of its next test.
+	 */
+	private static class Contact implements Comparable<Contact> {
+
+		private final int i, j;
+		private double due;
+
+		Contact(int i, int j) {
+			this.i = i;
+			this.j = j;
+		}
+
+		@Override
+		public int compareTo(Contact other) {
+			return Double.compare(due, other.due);
+		}
+	}
+
+}
@@ -0,0 +1,308 @@
+package simulation;
+
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import bodies.Constellation;
+import bodies.Planet;
+import simulation.distributed.DistributedParticleStage;
+import simulation.ephemeris.Ephemeris;
+import simulation.ephemeris.EphemerisWriter;
+import simulation.gravity.BarnesHut;
+import simulation.gravity.DirectSum;
+import simulation.gravity.ForceSolver;
+import simulation.gravity.VectorSum;
+import simulation.integrators.BlockTimeStep;
+import simulation.integrators.Integrator;
+import simulation.integrators.Leapfrog;
+import simulation.integrators.RegularizedLeapfrog;
+import simulation.integrators.RungeKutta4;
+import simulation.integrators.Taylor;
+import simulation.integrators.VelocityVerlet;
+import simulation.integrators.WisdomHolman;
+import simulation.integrators.Yoshida4;
+import simulation.recording.TrajectoryRecorder;
+import simulation.telemetry.TelemetryPublisher;
+import systems.Systems;
+
+/**
+ * Runs a constellation without a window as fast as possible and prints the
+ * steps per second and the final state of the planets. Start with
+ *
+ * java simulation.Headless [system] [options]
+ *
+ * The system is the name of a method in Systems, for example solarSystem. The
+ * options are -steps n, -seconds t (simulated seconds), -time t (the time step
+ * in seconds), -parallel and -threads n. Without -steps or -seconds one
+ * simulated year is calculated. -solver direct, barnesHut or vector selects the
+ * gravity solver of the system, vector needs --add-modules
+ * jdk.incubator.vector and the classes of the source folder vector.
+ * -integrator leapfrog, verlet, taylor, yoshida4, rk4, wisdomHolman, block or
+ * regularized selects the integrator of the system, regularized with an
+ * -encounter radius in meters (default 1e9).
+ *
+ * With -workers n the particles are moved by n worker processes that are
+ * started on this machine. With -listen address as well, the coordinator waits
+ * for n workers that are started by hand (java simulation.distributed.Worker
+ * address) instead, the address is host:port or unix:path.
+ *
+ * With -resume file the simulation continues from a checkpoint instead of a
+ * system, also with workers, with -checkpoint file a checkpoint is written
+ * after the last step.
+ * With -record file the trajectories are written into a file every -interval
+ * n steps (default 1). With -ephemeris file the planets are sampled every
+ * -interval n steps as well and their trajectories are written as an ephemeris
+ * with a -tolerance in meters (default 1000) and series of -degree n (default
+ * 12). With -follow file the planets that are in an ephemeris follow it
+ * instead of being integrated. With -publish address a frame is streamed to
+ * the subscribers every -interval n steps, see TelemetryPublisher.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class Headless {
+
+	private static final double year = 31536000;
+
+	public static void main(String... args) throws Exception {
+		String system = "solarSystem";
+		long steps = -1;
+		double seconds = year;
+		double time = 0;
+		boolean parallel = false;
+		int threads = 0;
+		int workers = 0;
+		String listen = null;
+		String resume = null;
+		String checkpoint = null;
+		String record = null;
+		int interval = 1;
+		String ephemeris = null;
+		double tolerance = 1000;
+		int degree = 12;
+		String follow = null;
+		String publish = null;
+		String solver = null;
+		String integrator = null;
+		double encounter = 1e9;
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-steps":
+				steps = Long.parseLong(args[++i]);
+				break;
+			case "-seconds":
+				seconds = Double.parseDouble(args[++i]);
+				break;
+			case "-time":
+				time = Double.parseDouble(args[++i]);
+				break;
+			case "-parallel":
+				parallel = true;
+				break;
+			case "-threads":
+				threads = Integer.parseInt(args[++i]);
+				break;
+			case "-workers":
+				workers = Integer.parseInt(args[++i]);
+				break;
+			case "-listen":
+				listen = args[++i];
+				break;
+			case "-resume":
+				resume = args[++i];
+				break;
+			case "-checkpoint":
+				checkpoint = args[++i];
+				break;
+			case "-record":
+				record = args[++i];
+				break;
+			case "-interval":
+				interval = Integer.parseInt(args[++i]);
+				break;
+			case "-ephemeris":
+				ephemeris = args[++i];
+				break;
+			case "-tolerance":
+				tolerance = Double.parseDouble(args[++i]);
+				break;
+			case "-degree":
+				degree = Integer.parseInt(args[++i]);
+				break;
+			case "-follow":
+				follow = args[++i];
+				break;
+			case "-publish":
+				publish = args[++i];
+				break;
+			case "-solver":
+				solver = args[++i];
+				break;
+			case "-integrator":
+				integrator = args[++i];
+				break;
+			case "-encounter":
+				encounter = Double.parseDouble(args[++i]);
+				break;
+			default:
+				system = args[i];
+			}
+		}
+
+		Simulation sim;
+		if (resume != null)
+			sim = Checkpoint.load(Path.of(resume));
+		else {
+			Constellation constellation = load(system);
+			if (solver != null)
+				constellation.setSolver(solver(solver));
+			if (integrator != null)
+				constellation.setIntegrator(integrator(integrator, encounter));
+			if (follow != null)
+				System.out.println(constellation.followEphemeris(new Ephemeris(Path.of(follow)))
+						+ " planets follow the ephemeris " + follow);
+			sim = new Simulation(constellation);
+		}
+		boolean multiRate = sim.getConstellation().isMultiRate();
+		DistributedParticleStage stage = null;
+		if (workers > 0) {
+			int workerThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / workers);
+			stage = listen != null ? DistributedParticleStage.listen(listen, workers, multiRate)
+					: DistributedParticleStage.startLocal(workers, workerThreads, multiRate);
+			stage.continueFrom(sim.getParticleStage());
+			sim.setParticleStage(stage);
+		}
+		if (time > 0)
+			sim.multTime(time / sim.getTime());
+		if (threads > 0)
+			sim.setThreads(threads);
+		sim.setParallel(parallel);
+		TrajectoryRecorder recorder = null;
+		if (record != null) {
+			recorder = new TrajectoryRecorder(Path.of(record), interval);
+			sim.setRecorder(recorder);
+		}
+		TelemetryPublisher publisher = null;
+		if (publish != null) {
+			publisher = new TelemetryPublisher(publish, interval);
+			sim.setPublisher(publisher);
+		}
+		EphemerisWriter ephemerisWriter = null;
+		if (ephemeris != null) {
+			ephemerisWriter = new EphemerisWriter(tolerance, degree);
+			ephemerisWriter.setSystem(sim.getName(), sim.getScale());
+			ephemerisWriter.sample(sim);
+		}
+		if (steps < 0)
+			steps = (long) Math.ceil(seconds / sim.getTime());
+
+		System.out.println(sim.getName() + ": " + sim.getNumberOfObjects() + " objects, " + steps + " steps of "
+				+ sim.getTime() + " s, " + sim.getIntegrator().getName() + ", "
+				+ sim.getSolver().getClass().getSimpleName()
+				+ (sim.getSolver() instanceof VectorSum && !VectorSum.isAvailable() ? " (scalar fallback)" : "")
+				+ ", " + (parallel ? "parallel" : "serial")
+				+ (workers > 0 ? ", " + workers + " workers" : ""));
+
+		long start = System.nanoTime();
+		if (ephemerisWriter == null)
+			sim.runSteps(steps);
+		else
+			for (long done = 0; done < steps; done += interval) {
+				sim.runSteps(Math.min(interval, steps - done));
+				ephemerisWriter.sample(sim);
+			}
+		double wallTime = (System.nanoTime() - start) * 1e-9;
+		sim.stop();
+		if (recorder != null) {
+			recorder.close();
+			System.out.println(recorder.getFrames() + " frames recorded in " + record);
+		}
+		if (publisher != null) {
+			publisher.close();
+			System.out.println(publisher.getSentFrames() + " frames sent, " + publisher.getDroppedFrames()
+					+ " frames dropped");
+		}
+		if (ephemerisWriter != null) {
+			ephemerisWriter.write(Path.of(ephemeris));
+			System.out.println(ephemerisWriter.getSegments() + " segments of " + ephemerisWriter.getBodyCount()
+					+ " planets written in " + ephemeris + ", " + Files.size(Path.of(ephemeris)) + " bytes");
+		}
+		if (checkpoint != null) {
+			long checkpointStart = System.nanoTime();
+			Checkpoint.save(sim, Path.of(checkpoint));
+			System.out.printf("checkpoint %s written in %.3f s%n", checkpoint,
+					(System.nanoTime() - checkpointStart) * 1e-9);
+		}
+		// the workers are stopped after the checkpoint, which needs the data of their stages
+		if (stage != null)
+			stage.close();
+
+		System.out.printf("%.3f s, %.0f steps/s, simulated %.6e s (%.2f years)%n", wallTime, steps / wallTime,
+				sim.getSecondsCounter(), sim.getSecondsCounter() / year);
+		System.out.println(sim.getPlanetList().size() + " planets, " + sim.getParticleList().size() + " particles");
+		for (Planet p : sim.getPlanetList())
+			System.out.printf("%-12s pos (%.6e, %.6e) m, vel (%.6e, %.6e) m/s, mass %.4e kg%n", p.getName(),
+					p.getPos().getX(), p.getPos().getY(), p.getVel().getX(), p.getVel().getY(), p.getMass());
+	}
+
+	/**
+	 * @param name
+	 *            direct, barnesHut or vector
+	 * @return a new solver
+	 */
+	private static ForceSolver solver(String name) {
+		switch (name) {
+		case "direct":
+			return new DirectSum();
+		case "barnesHut":
+			return new BarnesHut();
+		case "vector":
+			return new VectorSum();
+		default:
+			throw new IllegalArgumentException("unknown solver " + name);
+		}
+	}
+
+	/**
+	 * @param name
+	 *            leapfrog, verlet, taylor, yoshida4, rk4, wisdomHolman, block or
+	 *            regularized
+	 * @param encounter
+	 *            the encounter radius of regularized
+	 * @return a new integrator
+	 */
+	private static Integrator integrator(String name, double encounter) {
+		switch (name) {
+		case "leapfrog":
+			return new Leapfrog();
+		case "verlet":
+			return new VelocityVerlet();
+		case "taylor":
+			return new Taylor();
+		case "yoshida4":
+			return new Yoshida4();
+		case "rk4":
+			return new RungeKutta4();
+		case "wisdomHolman":
+			return new WisdomHolman();
+		case "block":
+			return new BlockTimeStep();
+		case "regularized":
+			return new RegularizedLeapfrog(encounter);
+		default:
+			throw new IllegalArgumentException("unknown integrator " + name);
+		}
+	}
+
+	/**
+	 * @param name
+	 *            the name of a method in Systems
+	 * @return the constellation of the method
+	 */
+	private static Constellation load(String name) throws Exception {
+		Method method = Systems.class.getMethod(name);
+		return (Constellation) method.invoke(null);
+	}
+
+}
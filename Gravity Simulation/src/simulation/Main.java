@@ -1,8 +1,15 @@
 package simulation;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
 import bodies.Constellation;
 import javafx.application.Application;
 import javafx.stage.Stage;
+import simulation.recording.Recording;
+import simulation.recording.Replay;
+import simulation.telemetry.TelemetryPublisher;
 import systems.Systems;
 import window.Window;
 
@@ -17,36 +24,95 @@ public class Main extends Application {
 	/** the current simulation */
 	public static Simulation sim;
 
+	/** what the window draws, the simulation or a replay */
+	public static SnapshotSource source;
+
 	/** the main window */
 	public static Window win;
 
-	/** Launches the JavaFX application. */
+	/**
+	 * Launches the JavaFX application, -replay file plays a recording and
+	 * -publish address streams the simulation to subscribers.
+	 */
 	public static void main(String... args) {
 		Application.launch(args);
 	}
 
 	/**
 	 * Starts the first simulation with the default Constellation and opens the main
-	 * window.
+	 * window. With -replay file the window plays a recording instead. With
+	 * -publish address (host:port or unix:path) about 60 frames per second are
+	 * streamed to subscribers, see TelemetryPublisher.
 	 */
 	@Override
 	public void start(Stage primaryStage) throws Exception {
 		sim = new Simulation(Systems.solarSystem());
+		source = sim;
+		List<String> args = getParameters().getRaw();
+		int r = args.indexOf("-replay");
+		if (r >= 0 && r + 1 < args.size())
+			source = new Replay(new Recording(Path.of(args.get(r + 1))));
+		int p = args.indexOf("-publish");
+		if (p >= 0 && p + 1 < args.size())
+			sim.setPublisher(new TelemetryPublisher(args.get(p + 1), Math.max(1, sim.getSps() / 60)));
 		win = new Window();
 		win.start(primaryStage);
-		sim.run();
+		if (source == sim)
+			sim.run();
+	}
+
+	/**
+	 * Stops the simulation and plays a recording in the window.
+	 * 
+	 * @param path
+	 * @throws IOException
+	 */
+	public static void replay(Path path) throws IOException {
+		Replay replay = new Replay(new Recording(path));
+		sim.stop();
+		closeReplay();
+		source = replay;
+		win.resetAndLoad();
+	}
+
+	/**
+	 * Closes the current replay, if there is one.
+	 */
+	private static void closeReplay() {
+		if (source instanceof Replay) {
+			try {
+				((Replay) source).close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
 	}
 
 	/**
 	 * Starts a new simulation with a given Constellation in a default window.
+	 * The telemetry publisher moves to the new simulation.
 	 * 
 	 * @param newConstellation
 	 */
 	public static void restart(Constellation newConstellation, boolean resetSave) {
+		boolean parallel = sim.isParallel();
+		int threads = sim.getThreads();
+		TelemetryPublisher publisher = sim.getPublisher();
 		sim.stop();
+		closeReplay();
 		sim = new Simulation(newConstellation);
+		source = sim;
+		sim.setThreads(threads);
+		sim.setParallel(parallel);
+		if (publisher != null) {
+			try {
+				sim.setPublisher(publisher);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		win.resetAndLoad();
 		sim.run();
-		win.resetAndLoad(sim);
 		if (resetSave)
 			win.resetSaved();
 	}
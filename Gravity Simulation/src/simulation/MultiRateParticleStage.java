@@ -0,0 +1,435 @@
+package simulation;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import bodies.BodyStore;
+import simulation.gravity.ForceSolver;
+import utils.BinaryReader;
+import utils.BinaryWriter;
+import utils.Utils;
+
+/**
+ * Moves the particles with time steps of their own. The step of a particle is
+ * the time step of the planets times a power of two, from 1/8 close to a
+ * planet to 32 far away from all planets. It is chosen from the shortest
+ * orbital time of the particle around any planet, like the levels of the block
+ * time steps.
+ *
+ * A particle with a longer step is only moved in the planet steps that are a
+ * multiple of its step, a particle with a shorter step is moved several times
+ * in one planet step. The particles are moved with the leapfrog method in
+ * drift-kick-drift form, so they only need the planets in the middle of their
+ * step. These positions are taken from a record of the last planet steps and
+ * interpolated between two planet steps with the velocities (cubic Hermite
+ * interpolation).
+ *
+ * A particle with a long step is drawn at the position of its last step, which
+ * is at most 32 planet steps old.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class MultiRateParticleStage extends ParticleStage {
+
+	/** particles take at most 2^maxSub steps in one planet step */
+	private static final int maxSub = 3;
+
+	/** and at most one step in 2^maxSuper planet steps */
+	private static final int maxSuper = 5;
+
+	/**
+	 * after a multiple of this number of planet steps all particles are at the
+	 * time of the planets
+	 */
+	public static final int syncSteps = 1 << maxSuper;
+
+	/** the step of a particle is eta times its shortest orbital time */
+	private static final double eta = 0.01;
+
+	/** the planets of the last planet steps and the times of these steps */
+	private final BodyStore[] history = new BodyStore[(1 << maxSuper) + 1];
+	private final double[] historyTime = new double[history.length];
+
+	/** the first recorded planet step */
+	private static final long firstTick = 1;
+
+	/** the number of planet steps */
+	private long tick = 0;
+
+	/** the level of each particle, the step is time * 2^level */
+	private int[] level = new int[0];
+
+	/** the number of particles with a level, new particles start at level 0 */
+	private int known = 0;
+
+	/** the particles sorted by level and the start of each level */
+	private int[] order = new int[0];
+	private final int[] levelStart = new int[maxSub + maxSuper + 2], next = new int[levelStart.length];
+
+	/** true if the particles have to be sorted again */
+	private volatile boolean changed = true;
+
+	/** the interpolated planets */
+	private final BodyStore ghost = new BodyStore();
+
+	/** the current pass for the tasks */
+	private BodyStore particles, sources;
+	private SpatialHash planetHash;
+	private double step, eps2, planetStep;
+	private boolean last;
+
+	@Override
+	public void advance(BodyStore particles, BodyStore planets, SpatialHash planetHash, ForceSolver solver,
+			double time, ForkJoinPool pool) {
+		int n = particles.size();
+		if (hit.length < n)
+			hit = new boolean[particles.getX().length];
+		if (level.length < n) {
+			level = Arrays.copyOf(level, particles.getX().length);
+			order = new int[level.length];
+		}
+		if (known != n) {
+			if (known < n)
+				Arrays.fill(level, known, n, 0);
+			known = n;
+			changed = true;
+		}
+		Arrays.fill(hit, 0, n, false);
+		anyHit = false;
+
+		// record the planets after this planet step
+		tick++;
+		int slot = (int) (tick % history.length);
+		if (history[slot] == null)
+			history[slot] = new BodyStore();
+		history[slot].copyStateFrom(planets);
+		historyTime[slot] = tick == firstTick ? 0 : previousTime() + time;
+		double now = historyTime[slot];
+
+		// sort the particles by level, only after a level changed
+		if (changed) {
+			Arrays.fill(levelStart, 0);
+			for (int i = 0; i < n; i++)
+				levelStart[level[i] + maxSub + 1]++;
+			for (int l = 0; l < levelStart.length - 1; l++)
+				levelStart[l + 1] += levelStart[l];
+			System.arraycopy(levelStart, 0, next, 0, next.length);
+			for (int i = 0; i < n; i++)
+				order[next[level[i] + maxSub]++] = i;
+			changed = false;
+		}
+
+		this.particles = particles;
+		this.planetHash = planetHash;
+		this.planetStep = time;
+		this.eps2 = solver.getSoftening() * solver.getSoftening();
+
+		for (int l = -maxSub; l <= maxSuper; l++) {
+			int from = levelStart[l + maxSub], to = levelStart[l + maxSub + 1];
+			if (from == to || !isAligned(tick, l))
+				continue;
+
+			// the start of the step of this level and the number of steps
+			double start, dt;
+			int substeps;
+			if (l >= 0) {
+				start = timeAt(tick - (1L << l), now - (1L << l) * time);
+				dt = now - start;
+				substeps = 1;
+			} else {
+				start = now - time;
+				substeps = 1 << -l;
+				dt = time / substeps;
+			}
+
+			for (int k = 0; k < substeps; k++) {
+				sources = planetsAt(start + (k + 0.5) * dt);
+				step = dt;
+				last = k == substeps - 1;
+				if (pool != null && to - from > chunkSize)
+					pool.invoke(new GroupTask(from, to));
+				else
+					move(from, to);
+			}
+		}
+
+		this.particles = null;
+		this.sources = null;
+		this.planetHash = null;
+	}
+
+	/**
+	 * Moves the particles order[from] to order[to - 1] one step with the leapfrog
+	 * method. After the last step the particles are tested for impacts and get a
+	 * new level.
+	 */
+	private void move(int from, int to) {
+		double[] x = particles.getX();
+		double[] y = particles.getY();
+		double[] velX = particles.getVelX();
+		double[] velY = particles.getVelY();
+		double[] accX = particles.getAccX();
+		double[] accY = particles.getAccY();
+		double[] srcX = sources.getX();
+		double[] srcY = sources.getY();
+		double[] srcMass = sources.getMass();
+		int m = sources.size();
+		double h = step * 0.5;
+
+		boolean groupHit = false, groupChanged = false;
+		for (int k = from; k < to; k++) {
+			int i = order[k];
+
+			// drift
+			double xi = x[i] + velX[i] * h;
+			double yi = y[i] + velY[i] * h;
+
+			// kick with the planets in the middle of the step, tau2 is the square of the
+			// shortest orbital time around a planet, r^3 / (G * m)
+			double ax = 0, ay = 0, tau2 = Double.POSITIVE_INFINITY;
+			for (int j = 0; j < m; j++) {
+				double dx = srcX[j] - xi;
+				double dy = srcY[j] - yi;
+				double r2 = dx * dx + dy * dy + eps2;
+				double r3 = r2 * Math.sqrt(r2);
+				double gm = Utils.GRAV_CONST * srcMass[j];
+				ax += dx * gm / r3;
+				ay += dy * gm / r3;
+				if (r3 < tau2 * gm)
+					tau2 = r3 / gm;
+			}
+			accX[i] = ax;
+			accY[i] = ay;
+			velX[i] += ax * step;
+			velY[i] += ay * step;
+
+			// drift
+			xi += velX[i] * h;
+			yi += velY[i] * h;
+			x[i] = xi;
+			y[i] = yi;
+
+			if (last) {
+				// impact on a planet
+				boolean hi = planetHash.isInside(xi, yi);
+				hit[i] = hi;
+				groupHit |= hi;
+
+				int l = newLevel(tau2, level[i]);
+				groupChanged |= l != level[i];
+				level[i] = l;
+			}
+		}
+
+		if (groupHit)
+			anyHit = true;
+		if (groupChanged)
+			changed = true;
+	}
+
+	/**
+	 * A longer step is only taken one level at a time and when the planet step is
+	 * a multiple of it, a shorter step at once.
+	 *
+	 * @param tau2
+	 *            the square of the shortest orbital time around a planet
+	 * @param current
+	 *            the current level
+	 * @return the level of a particle for its next step
+	 */
+	private int newLevel(double tau2, int current) {
+		// floor(log2(ratio)) is the exponent of the floating point number
+		double ratio = eta * Math.sqrt(tau2) / planetStep;
+		int wanted = ratio >= 1 << maxSuper ? maxSuper : ratio > 0 ? Math.getExponent(ratio) : -maxSub;
+		wanted = Math.max(-maxSub, wanted);
+
+		if (wanted <= current)
+			return wanted;
+		return isAligned(tick, current + 1) ? current + 1 : current;
+	}
+
+	/**
+	 * @return true if a particle with a level is moved in a planet step
+	 */
+	private static boolean isAligned(long tick, int level) {
+		return level <= 0 || tick % (1L << level) == 0;
+	}
+
+	/**
+	 * @return the time of the planet step before the current one
+	 */
+	private double previousTime() {
+		return historyTime[(int) ((tick - 1) % history.length)];
+	}
+
+	/**
+	 * @param t
+	 *            a recorded planet step
+	 * @param fallback
+	 *            the time if the step is not recorded
+	 * @return the time of a planet step
+	 */
+	private double timeAt(long t, double fallback) {
+		return t >= firstTick ? historyTime[(int) (t % history.length)] : fallback;
+	}
+
+	/**
+	 * The planets at a time between the oldest recorded planet step and the
+	 * current one. Between two steps the planets are interpolated, if the planets
+	 * changed between the steps the nearer step is used.
+	 *
+	 * @param t
+	 * @return the planets at time t
+	 */
+	private BodyStore planetsAt(double t) {
+		// the last recorded step before t
+		long a = tick;
+		while (a > firstTick && a > tick - history.length + 1 && historyTime[(int) (a % history.length)] > t)
+			a--;
+		BodyStore pa = history[(int) (a % history.length)];
+		double ta = historyTime[(int) (a % history.length)];
+		if (a == tick || t <= ta)
+			return pa;
+
+		BodyStore pb = history[(int) ((a + 1) % history.length)];
+		double tb = historyTime[(int) ((a + 1) % history.length)];
+		if (pa.size() != pb.size())
+			return t - ta < tb - t ? pa : pb;
+
+		// cubic Hermite interpolation of the positions
+		double h = tb - ta;
+		double s = (t - ta) / h;
+		double h00 = (1 + 2 * s) * (1 - s) * (1 - s);
+		double h10 = s * (1 - s) * (1 - s);
+		double h01 = s * s * (3 - 2 * s);
+		double h11 = s * s * (s - 1);
+
+		ghost.copyStateFrom(pa);
+		double[] x = ghost.getX();
+		double[] y = ghost.getY();
+		double[] ax = pa.getX(), ay = pa.getY(), avx = pa.getVelX(), avy = pa.getVelY();
+		double[] bx = pb.getX(), by = pb.getY(), bvx = pb.getVelX(), bvy = pb.getVelY();
+		for (int j = 0; j < ghost.size(); j++) {
+			x[j] = h00 * ax[j] + h10 * h * avx[j] + h01 * bx[j] + h11 * h * bvx[j];
+			y[j] = h00 * ay[j] + h10 * h * avy[j] + h01 * by[j] + h11 * h * bvy[j];
+		}
+		return ghost;
+	}
+
+	/**
+	 * @param i
+	 * @return the level of the particle with index i
+	 */
+	public int getLevel(int i) {
+		return level[i];
+	}
+
+	/**
+	 * @return the number of particles with a level
+	 */
+	public int getKnown() {
+		return known;
+	}
+
+	/**
+	 * @return the number of planet steps since the stage started
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * Sets the levels of the first n particles, for example of particles that
+	 * were moved with time steps of their own before. All particles have to be at
+	 * the time of the planets.
+	 *
+	 * @param levels
+	 * @param n
+	 */
+	public void setLevels(int[] levels, int n) {
+		if (level.length < n) {
+			level = new int[n];
+			order = new int[n];
+		}
+		System.arraycopy(levels, 0, level, 0, n);
+		known = n;
+		changed = true;
+	}
+
+	@Override
+	public void removeHit(int n) {
+		int k = 0;
+		for (int i = 0; i < n; i++)
+			if (!hit[i])
+				level[k++] = level[i];
+		known = k;
+		changed = true;
+	}
+
+	/**
+	 * Writes the number of planet steps, the levels and the recorded planet steps,
+	 * so particles that are not at the time of the planets can be moved on.
+	 */
+	@Override
+	public void writeState(BinaryWriter out) throws IOException {
+		out.writeLong(tick);
+		out.writeInt(known);
+		out.writeInts(level, 0, known);
+		for (int s = 0; s < history.length; s++) {
+			out.writeBoolean(history[s] != null);
+			if (history[s] != null) {
+				out.writeDouble(historyTime[s]);
+				history[s].writeState(out);
+			}
+		}
+	}
+
+	@Override
+	public void readState(BinaryReader in) throws IOException {
+		tick = in.readLong();
+		known = in.readInt();
+		if (level.length < known) {
+			level = new int[known];
+			order = new int[known];
+		}
+		in.readInts(level, 0, known);
+		for (int s = 0; s < history.length; s++) {
+			history[s] = null;
+			if (in.readBoolean()) {
+				historyTime[s] = in.readDouble();
+				history[s] = new BodyStore();
+				history[s].readState(in);
+			}
+		}
+		changed = true;
+	}
+
+	/**
+	 * A task that splits a range of sorted particles in halves until it is not
+	 * longer than the chunk size.
+	 */
+	private class GroupTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from, to;
+
+		GroupTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= chunkSize) {
+				move(from, to);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new GroupTask(from, mid), new GroupTask(mid, to));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,189 @@
+package simulation;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import bodies.BodyStore;
+import simulation.gravity.ForceSolver;
+import utils.BinaryReader;
+import utils.BinaryWriter;
+
+/**
+ * Moves all particles one time step in a single pass. Particles only feel the
+ * planets and never each other, so the particles are split into chunks that are
+ * calculated independently, in parallel if a pool is given. For each chunk the
+ * acceleration by the planets, the update of velocity and position and the test
+ * for an impact on a planet are done together. The impacts are tested with the
+ * grid of the moved planets.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class ParticleStage {
+
+	/** number of particles that are moved in one task */
+	public static final int chunkSize = 1024;
+
+	/** true for all particles that hit a planet in the last step */
+	protected boolean[] hit = new boolean[0];
+
+	/** true if any particle hit a planet in the last step */
+	protected volatile boolean anyHit;
+
+	/**
+	 * Moves all particles one time step and marks the particles that hit a planet.
+	 *
+	 * @param particles
+	 * @param planets
+	 * @param planetHash
+	 *            the grid of the planets
+	 * @param solver
+	 * @param time
+	 *            the time step
+	 * @param pool
+	 *            the pool for the parallel calculation or null
+	 */
+	public void advance(BodyStore particles, BodyStore planets, SpatialHash planetHash, ForceSolver solver,
+			double time, ForkJoinPool pool) {
+		int n = particles.size();
+		if (hit.length < n)
+			hit = new boolean[particles.getX().length];
+		anyHit = false;
+
+		solver.prepare(planets);
+		if (pool != null && n > chunkSize)
+			pool.invoke(new ChunkTask(particles, planets, planetHash, solver, time, 0, n));
+		else
+			for (int from = 0; from < n; from += chunkSize)
+				advance(particles, planets, planetHash, solver, time, from, Math.min(from + chunkSize, n));
+	}
+
+	/**
+	 * Moves the particles from index from (inclusive) to index to (exclusive) one
+	 * time step.
+	 */
+	private void advance(BodyStore particles, BodyStore planets, SpatialHash planetHash, ForceSolver solver,
+			double t, int from, int to) {
+		solver.accelerate(particles, planets, from, to);
+
+		double[] x = particles.getX();
+		double[] y = particles.getY();
+		double[] velX = particles.getVelX();
+		double[] velY = particles.getVelY();
+		double[] accX = particles.getAccX();
+		double[] accY = particles.getAccY();
+
+		boolean chunkHit = false;
+		for (int i = from; i < to; i++) {
+			// r + v*t + 1/2*a*t^2
+			double xi = x[i] + velX[i] * t + accX[i] * t * t * 0.5;
+			double yi = y[i] + velY[i] * t + accY[i] * t * t * 0.5;
+			x[i] = xi;
+			y[i] = yi;
+
+			// v + a*t
+			velX[i] += accX[i] * t;
+			velY[i] += accY[i] * t;
+
+			// impact on a planet
+			boolean h = planetHash.isInside(xi, yi);
+			hit[i] = h;
+			chunkHit |= h;
+		}
+
+		if (chunkHit)
+			anyHit = true;
+	}
+
+	/**
+	 * @param i
+	 * @return true if the particle with index i hit a planet in the last step
+	 */
+	public boolean isHit(int i) {
+		return hit[i];
+	}
+
+	/**
+	 * @return true if any particle hit a planet in the last step
+	 */
+	public boolean isAnyHit() {
+		return anyHit;
+	}
+
+	/**
+	 * Brings the state of the particles in the store up to date before it is
+	 * read, for example for a snapshot, a recording or a checkpoint. This stage
+	 * moves the particles in the store itself, so there is nothing to do.
+	 *
+	 * @param particles
+	 */
+	public void gather(BodyStore particles) {
+	}
+
+	/**
+	 * Called after all particles that hit a planet were removed from the store, so
+	 * data that is kept for each particle can be removed as well.
+	 *
+	 * @param n
+	 *            the number of particles before the removal
+	 */
+	public void removeHit(int n) {
+	}
+
+	/**
+	 * Writes the data that is kept for the particles between two steps into a
+	 * checkpoint. This stage keeps nothing.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeState(BinaryWriter out) throws IOException {
+	}
+
+	/**
+	 * Reads what writeState wrote.
+	 *
+	 * @param in
+	 * @throws IOException
+	 */
+	public void readState(BinaryReader in) throws IOException {
+	}
+
+	/**
+	 * A task that splits a range of particles in halves until it is not longer
+	 * than the chunk size.
+	 */
+	private class ChunkTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final BodyStore particles, planets;
+		private final SpatialHash planetHash;
+		private final ForceSolver solver;
+		private final double time;
+		private final int from, to;
+
+		ChunkTask(BodyStore particles, BodyStore planets, SpatialHash planetHash, ForceSolver solver, double time,
+				int from, int to) {
+			this.particles = particles;
+			this.planets = planets;
+			this.planetHash = planetHash;
+			this.solver = solver;
+			this.time = time;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= chunkSize) {
+				advance(particles, planets, planetHash, solver, time, from, to);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new ChunkTask(particles, planets, planetHash, solver, time, from, mid),
+						new ChunkTask(particles, planets, planetHash, solver, time, mid, to));
+			}
+		}
+	}
+
+}
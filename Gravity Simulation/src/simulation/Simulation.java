@@ -1,33 +1,56 @@
 package simulation;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 import bodies.Body;
+import bodies.BodyStore;
 import bodies.Constellation;
+import bodies.EphemerisPlanet;
 import bodies.Particle;
 import bodies.Planet;
-import javafx.animation.Animation;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
-import javafx.event.ActionEvent;
-import javafx.event.EventHandler;
-import javafx.util.Duration;
+import simulation.gravity.ForceSolver;
+import simulation.gravity.ForceTask;
+import simulation.integrators.Acceleration;
+import simulation.integrators.Integrator;
+import simulation.recording.TrajectoryRecorder;
+import simulation.telemetry.TelemetryPublisher;
 import utils.Utils;
-import utils.Vec;
 
 /**
  * Simulates the movement of the planets and handles the current planets and
  * system.
  * 
+ * The simulation runs on its own thread with a fixed time step. The window
+ * never reads the bodies directly, it draws the snapshots that the simulation
+ * thread publishes. Changes from the window, like adding or removing a planet,
+ * are commands that the simulation thread runs between two steps.
+ * 
  * @author Jan Muskalla
  * 
  */
-public class Simulation {
+public class Simulation implements SnapshotSource {
+
+	/** the wall clock time after which the simulation thread publishes a snapshot and runs the commands */
+	private static final long frameNanos = 1_000_000_000L / 60;
 
 	/** a copy of the Constellation for this simulation */
 	private final Constellation constellation;
 
 	/** time step per simulation */
-	private double time;
+	private volatile double time;
 
 	/** all planets of the current simulation are saved here */
 	private ArrayList<Planet> planetList;
@@ -35,12 +58,103 @@ public class Simulation {
 	/** all particles of the current simulation */
 	private ArrayList<Particle> particleList;
 
-	/** the time line in which all calculations happen */
-	public Timeline timeline;
+	/** the state of all planets and particles in primitive arrays */
+	private BodyStore planetStore;
+	private BodyStore particleStore;
+
+	/** calculates the gravitational acceleration */
+	private ForceSolver solver;
+
+	/** the pool for the parallel calculation, null if it runs serial */
+	private ForkJoinPool pool;
+	private volatile int threads;
+	private volatile boolean parallel;
+
+	/** moves the planets one time step */
+	private Integrator integrator;
+
+	/**
+	 * the planets that the integrator moves while other planets follow an
+	 * ephemeris and the following planets, which are only sources, with their
+	 * indices in the planet store and their numbers, integratedCount is -1 before
+	 * the first step
+	 */
+	private final BodyStore integrated = new BodyStore(), following = new BodyStore();
+	private int[] integratedIndex = new int[0], followingIndex = new int[0];
+	private EphemerisPlanet[] followers = new EphemerisPlanet[0];
+	private int integratedCount = -1, followingCount = 0;
+
+	/** the simulated time at the start of the current step */
+	private double stepStart;
+
+	/** the accelerations of the integrated planets by each other */
+	private double[] ownAccX = new double[0], ownAccY = ownAccX;
+
+	/** the state of a following planet from its ephemeris */
+	private final double[] evaluated = new double[6];
+
+	/** calculates the accelerations of the planets for the integrator */
+	private final Acceleration planetAcceleration = new Acceleration() {
+
+		@Override
+		public void calculate(BodyStore planets, double dt) {
+			accelerate(planets, planets);
+			if (planets == integrated && followingCount > 0)
+				accelerateByFollowers(dt);
+		}
+
+		@Override
+		public double getSoftening() {
+			return solver.getSoftening();
+		}
+
+		@Override
+		public boolean isClosed() {
+			return followingCount == 0;
+		}
+	};
+
+	/** moves the particles and tests them for impacts */
+	private ParticleStage particleStage;
+
+	/** the grid of the moved planets for the collision tests */
+	private SpatialHash planetHash;
+
+	/** the times at which pairs of planets are tested for collisions */
+	private CollisionScheduler collisionScheduler;
+
+	/** false if all pairs of planets are tested in every step */
+	private boolean scheduleCollisions = true;
+
+	/** writes the trajectories of the bodies, null if nothing is recorded */
+	private TrajectoryRecorder recorder;
+
+	/** streams frames to subscribers or null */
+	private TelemetryPublisher publisher;
+
+	/** the thread in which all calculations happen */
+	private Thread thread;
+	private volatile boolean running, paused;
+
+	/** changes from other threads that are run between two steps */
+	private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<Runnable>();
+
+	/** the published snapshot, the snapshot the window draws and the free one */
+	private final AtomicReference<Snapshot> published = new AtomicReference<Snapshot>();
+	private final AtomicReference<Snapshot> free = new AtomicReference<Snapshot>();
+	private Snapshot drawn;
+
+	/** bodies that were removed since the last snapshot */
+	private final ArrayList<Body> removed = new ArrayList<Body>();
+	private final Map<Planet, Planet> merged = new HashMap<Planet, Planet>();
 
 	/** time counter */
-	private int spsCounter;
-	private double secondsCounter;
+	private final AtomicInteger spsCounter = new AtomicInteger();
+	private long steps;
+
+	/** the number of planet collisions and particle impacts since the start */
+	private long planetCollisions, particleImpacts;
+	private volatile double secondsCounter;
 
 	/**
 	 * Creates a new simulation with a given system.
@@ -48,7 +162,6 @@ public class Simulation {
 	 * @param constellation
 	 */
 	public Simulation(Constellation constellation) {
-		spsCounter = 0;
 		secondsCounter = 0;
 
 		// save a copy for later restarts
@@ -57,223 +170,754 @@ public class Simulation {
 		// the variable time step per simulation
 		time = constellation.getTime();
 
-		// copy the planets of the new system in the local array and save the
-		// first position for the trails
+		// copy the planets of the new system in the local array, the trails start
+		// at the first drawn position
 		planetList = constellation.getPlanetList();
-		for (Planet p : planetList)
-			p.getTrail().savePosition();
+		planetStore = constellation.getPlanetStore();
 
 		// copy the particles of the new system in the local array
 		particleList = constellation.getParticleList();
-
-		timeline = new Timeline();
+		particleStore = constellation.getParticleStore();
+
+		solver = constellation.getSolver();
+		integrator = constellation.getIntegrator();
+		threads = Runtime.getRuntime().availableProcessors();
+		particleStage = constellation.isMultiRate() ? new MultiRateParticleStage() : new ParticleStage();
+		planetHash = new SpatialHash();
+		collisionScheduler = new CollisionScheduler();
 	}
 
 	/**
-	 * Moves the planets SPS times per second and checks for collisions.
+	 * Starts the simulation thread that moves the planets SPS times per second and
+	 * checks for collisions.
 	 */
 	public void run() {
-		KeyFrame kf = new KeyFrame(Duration.seconds(1.0 / getSps()), new EventHandler<ActionEvent>() {
-			public void handle(ActionEvent event) {
-
-				moveBodies();
-				checkForCollisions();
+		running = true;
+		thread = new Thread(this::loop, "Simulation");
+		thread.setDaemon(true);
+		thread.start();
+	}
 
-				spsCounter++;
-				secondsCounter += time;
+	/**
+	 * The loop of the simulation thread. The steps that are due since the last
+	 * loop are collected in an accumulator, so the simulation runs with SPS steps
+	 * per second independent of the time of a single step. If the steps are
+	 * slower than the wall clock, the steps that can not be made up are dropped.
+	 */
+	private void loop() {
+		double accumulator = 0;
+		long last = System.nanoTime();
+
+		while (running) {
+			runCommands();
+
+			long now = System.nanoTime();
+			if (paused)
+				accumulator = 0;
+			else
+				accumulator += (now - last) * 1e-9 * getSps();
+			last = now;
+
+			// steps until all due steps are done or a frame is over
+			while (accumulator >= 1 && !paused && System.nanoTime() - now < frameNanos) {
+				step();
+				accumulator--;
 			}
-		});
+			accumulator = Math.min(accumulator, Math.max(getSps() * frameNanos * 1e-9, 1));
+
+			publish();
 
-		timeline.getKeyFrames().add(kf);
-		timeline.setCycleCount(Animation.INDEFINITE);
-		timeline.play();
+			// wait for the next step, but not longer than a millisecond to stay
+			// responsive to commands
+			long wait = paused ? 1_000_000 : (long) ((1 - accumulator) / getSps() * 1e9);
+			if (wait > 0)
+				LockSupport.parkNanos(Math.min(wait, 1_000_000));
+		}
 	}
 
 	/**
-	 * Calculate the sum of all acceleration vectors for each body at the same
-	 * simulation time and then moves all bodies one time step.
+	 * Moves the bodies one time step and checks for collisions.
 	 */
-	private void moveBodies() {
+	private void step() {
+		moveBodies();
+		checkForCollisions();
+
+		spsCounter.incrementAndGet();
+		steps++;
+		secondsCounter += time;
+
+		if (recorder != null && steps % recorder.getInterval() == 0)
+			record();
+		if (publisher != null && steps % publisher.getInterval() == 0) {
+			particleStage.gather(particleStore);
+			publisher.publish(this);
+		}
+	}
 
-		// add all acceleration vectors in one time step
-		for (Planet p1 : planetList)
-			for (Planet p2 : planetList)
-				if (p1 != p2)
-					p1.addAcc(getAccVec(p1, p2));
+	/**
+	 * Writes a frame of the trajectories. If the file can not grow, for example
+	 * because the disk is full, the recording stops and the simulation goes on.
+	 */
+	private void record() {
+		particleStage.gather(particleStore);
+		try {
+			recorder.record(this);
+		} catch (UncheckedIOException e) {
+			System.err.println("recording stopped: " + e.getCause());
+			try {
+				recorder.close();
+			} catch (IOException closeException) {
+				// the recording is lost anyway
+			}
+			recorder = null;
+		}
+	}
 
-		// update all planets
-		for (Planet planet : planetList)
-			updateBodyProps(planet);
+	/**
+	 * Runs a number of steps in the calling thread as fast as possible, for
+	 * example without a window. The removed bodies are not kept for a snapshot.
+	 * Must not be called while the simulation thread runs.
+	 * 
+	 * @param n
+	 *            the number of steps
+	 */
+	public void runSteps(long n) {
+		runCommands();
+		for (long i = 0; i < n; i++)
+			step();
+		removed.clear();
+		merged.clear();
+	}
 
-		// add all acceleration vectors in one time step
-		for (Particle particle : particleList) {
-			for (Planet planet : planetList)
-				particle.addAcc(getAccVec(particle, planet));
+	/**
+	 * Runs all commands that were added since the last loop.
+	 */
+	private void runCommands() {
+		Runnable command;
+		while ((command = commands.poll()) != null)
+			command.run();
+	}
 
-			// update all particles
-			updateBodyProps(particle);
-		}
+	/**
+	 * Runs a command in the simulation thread between two steps. All changes of
+	 * the bodies from other threads have to be commands.
+	 * 
+	 * @param command
+	 */
+	public void execute(Runnable command) {
+		commands.add(command);
+	}
+
+	/**
+	 * Writes the current state into the free snapshot and publishes it, if the
+	 * window has taken the last published snapshot.
+	 */
+	private void publish() {
+		if (published.get() != null)
+			return;
+
+		Snapshot snapshot = free.getAndSet(null);
+		if (snapshot == null)
+			snapshot = new Snapshot();
+		particleStage.gather(particleStore);
+		snapshot.capture(planetList, planetStore, particleList, particleStore, removed, merged, steps,
+				secondsCounter);
+		removed.clear();
+		merged.clear();
+		published.set(snapshot);
 	}
 
 	/**
-	 * returns the acceleration vector for a body in reference to a planet
+	 * Takes the latest snapshot of the simulation. The snapshot that was taken
+	 * before is given back to the simulation thread and must not be used anymore.
+	 * Only called by the thread of the window.
 	 * 
-	 * @param body
-	 * @param planet
-	 * @return the acceleration vector
+	 * @return the new snapshot or null if there is no new one
 	 */
-	private static Vec getAccVec(Body body, Planet planet) {
+	@Override
+	public Snapshot takeSnapshot() {
+		Snapshot snapshot = published.getAndSet(null);
+		if (snapshot == null)
+			return null;
+		if (drawn != null)
+			free.set(drawn);
+		drawn = snapshot;
+		return snapshot;
+	}
 
-		// direction of the acceleration vector
-		Vec r = (planet.getPos()).sub(body.getPos());
+	/**
+	 * Moves all planets one time step with the integrator and then all particles
+	 * in the field of the moved planets.
+	 */
+	private void moveBodies() {
 
-		// r * G * m / |r|^3
-		return r.mult(Utils.GRAV_CONST * planet.getMass() / Math.pow(r.getRadius(), 3));
+		// planets that follow an ephemeris during the whole step are not
+		// integrated, the integrator moves the other planets in a store of their
+		// own and the following planets are only sources at the times the
+		// integrator asks for
+		// the integrator calculates the accelerations as often as it needs them
+		double t = secondsCounter + time;
+		if (splitPlanets(secondsCounter, t))
+			integrator.reset();
+		if (followingCount == 0) {
+			integrator.step(planetStore, planetAcceleration, time);
+		} else {
+			if (integratedCount > 0) {
+				stepStart = secondsCounter;
+				loadSplit();
+				integrator.step(integrated, planetAcceleration, time);
+				storeIntegrated();
+			}
+			for (int k = 0; k < followingCount; k++)
+				followers[k].follow(t);
+		}
+
+		// the particles are only accelerated by the planets
+		// the grid of the moved planets is used for the impacts of the particles and
+		// the collisions of the planets
+		planetHash.build(planetStore);
+		particleStage.advance(particleStore, planetStore, planetHash, solver, time, pool);
 	}
 
 	/**
-	 * Updates the position and velocity of a body with its calculated acceleration
-	 * vector. The acceleration vector gets resetted for the next calculation
+	 * Splits the planets into the planets that the integrator moves and the
+	 * planets that follow an ephemeris during a whole step.
 	 * 
-	 * @param body
+	 * @param t0
+	 *            the time at the start of the step
+	 * @param t
+	 *            the time at the end of the step
+	 * @return true if the split is not the one of the last step, so the saved data
+	 *         of the integrator does not belong to its planets anymore
 	 */
-	private void updateBodyProps(Body body) {
-		Vec v = body.getVel();
-		Vec a = body.getAcc();
+	private boolean splitPlanets(double t0, double t) {
+		int n = planetList.size();
+		if (integratedIndex.length < n) {
+			integratedIndex = Arrays.copyOf(integratedIndex, n);
+			followingIndex = Arrays.copyOf(followingIndex, n);
+			followers = Arrays.copyOf(followers, n);
+		}
 
-		// v + a*t
-		body.setVel(v.add(a.mult(time)));
+		int ni = 0, nf = 0;
+		boolean changed = false;
+		for (Planet p : planetList) {
+			int i = p.getIndex();
+			if (p instanceof EphemerisPlanet && ((EphemerisPlanet) p).covers(t0)
+					&& ((EphemerisPlanet) p).covers(t)) {
+				changed |= nf >= followingCount || followingIndex[nf] != i;
+				followers[nf] = (EphemerisPlanet) p;
+				followingIndex[nf++] = i;
+			} else {
+				changed |= ni >= integratedCount || integratedIndex[ni] != i;
+				integratedIndex[ni++] = i;
+			}
+		}
+		Arrays.fill(followers, nf, followers.length, null);
 
-		// r + v*t + 1/2*a*t^2
-		body.setPos(body.getPos().add(v.mult(time)).add(a.mult(time * time * 0.5)));
+		// the first step only starts again if planets follow, so the data of an
+		// integrator from a checkpoint is kept
+		if (integratedCount < 0)
+			changed = nf > 0;
+		else
+			changed |= ni != integratedCount || nf != followingCount;
+		integratedCount = ni;
+		followingCount = nf;
+		if (nf > 0 && changed) {
+			integrated.resize(ni);
+			following.resize(nf);
+		}
+		return changed;
+	}
 
-		// reset acceleration
-		body.resetAcc();
+	/**
+	 * Copies the state of the integrated planets and the masses of the following
+	 * planets from the planet store into their stores. The accelerations in the
+	 * store of the integrated planets are kept for the next step.
+	 */
+	private void loadSplit() {
+		for (int k = 0; k < integratedCount; k++) {
+			int i = integratedIndex[k];
+			integrated.getX()[k] = planetStore.getX()[i];
+			integrated.getY()[k] = planetStore.getY()[i];
+			integrated.getVelX()[k] = planetStore.getVelX()[i];
+			integrated.getVelY()[k] = planetStore.getVelY()[i];
+			integrated.getMass()[k] = planetStore.getMass()[i];
+			integrated.getRadius()[k] = planetStore.getRadius()[i];
+			integrated.getId()[k] = planetStore.getId()[i];
+		}
+		for (int k = 0; k < followingCount; k++) {
+			int i = followingIndex[k];
+			following.getX()[k] = planetStore.getX()[i];
+			following.getY()[k] = planetStore.getY()[i];
+			following.getVelX()[k] = planetStore.getVelX()[i];
+			following.getVelY()[k] = planetStore.getVelY()[i];
+			following.getMass()[k] = planetStore.getMass()[i];
+			following.getRadius()[k] = planetStore.getRadius()[i];
+			following.getId()[k] = planetStore.getId()[i];
+		}
 	}
 
 	/**
-	 * Checks all bodies for collisions and removes all collided ones
+	 * Copies the moved integrated planets back into the planet store.
 	 */
-	private void checkForCollisions() {
-		ArrayList<Body> toRemove = new ArrayList<Body>();
+	private void storeIntegrated() {
+		for (int k = 0; k < integratedCount; k++) {
+			int i = integratedIndex[k];
+			planetStore.getX()[i] = integrated.getX()[k];
+			planetStore.getY()[i] = integrated.getY()[k];
+			planetStore.getVelX()[i] = integrated.getVelX()[k];
+			planetStore.getVelY()[i] = integrated.getVelY()[k];
+			planetStore.getAccX()[i] = integrated.getAccX()[k];
+			planetStore.getAccY()[i] = integrated.getAccY()[k];
+		}
+	}
 
-		// planets (collide with each other)
-		Planet p1, p2, bigP, smallP;
-		for (int i = 0; i < planetList.size(); i++) {
-			p1 = planetList.get(i);
+	/**
+	 * Sets the following planets to their ephemeris at a time of the current step
+	 * and adds their accelerations to the accelerations of the integrated planets.
+	 * 
+	 * @param dt
+	 *            the time since the start of the step
+	 */
+	private void accelerateByFollowers(double dt) {
+		for (int k = 0; k < followingCount; k++) {
+			EphemerisPlanet p = followers[k];
+			if (p.getEphemeris().evaluate(p.getBody(), stepStart + dt, evaluated)) {
+				following.getX()[k] = evaluated[0];
+				following.getY()[k] = evaluated[1];
+				following.getVelX()[k] = evaluated[2];
+				following.getVelY()[k] = evaluated[3];
+			}
+		}
+
+		// the solver sets the accelerations, so the accelerations by the
+		// integrated planets are put aside
+		int n = integratedCount;
+		if (ownAccX.length < n) {
+			ownAccX = new double[integrated.getAccX().length];
+			ownAccY = new double[ownAccX.length];
+		}
+		System.arraycopy(integrated.getAccX(), 0, ownAccX, 0, n);
+		System.arraycopy(integrated.getAccY(), 0, ownAccY, 0, n);
+		accelerate(integrated, following);
+		double[] accX = integrated.getAccX();
+		double[] accY = integrated.getAccY();
+		for (int k = 0; k < n; k++) {
+			accX[k] += ownAccX[k];
+			accY[k] += ownAccY[k];
+		}
+	}
 
-			for (int j = i + 1; j < planetList.size(); j++) {
-				p2 = planetList.get(j);
+	/**
+	 * Calculates the acceleration of all target bodies by the source bodies with
+	 * the solver of this simulation, in parallel if it is turned on.
+	 * 
+	 * @param targets
+	 * @param sources
+	 */
+	private void accelerate(BodyStore targets, BodyStore sources) {
+		solver.prepare(sources);
+		if (pool != null && targets.size() > ForceTask.chunkSize)
+			pool.invoke(new ForceTask(solver, targets, sources, 0, targets.size()));
+		else
+			solver.accelerate(targets, sources, 0, targets.size());
+	}
 
-				if (p1.getPos().sub(p2.getPos()).getRadius() < p1.getRadius() + p2.getRadius()) {
-					bigP = Utils.getBiggest(p1, p2);
-					smallP = Utils.getSmallest(p1, p2);
+	/**
+	 * Checks all planets for collisions and removes all collided planets and the
+	 * particles that hit a planet in the particle stage. The removed bodies are
+	 * only marked as dead and then removed from the stores and lists in one pass,
+	 * so the cost does not depend on the position in the lists. The removed bodies
+	 * are deleted from the window with the next snapshot.
+	 */
+	private void checkForCollisions() {
+		// planets (collide with each other), only pairs that could touch are tested,
+		// large systems use the grid
+		long[] overlaps;
+		if (scheduleCollisions && planetStore.size() <= CollisionScheduler.maxPlanets) {
+			overlaps = collisionScheduler.findOverlaps(planetStore, secondsCounter + time, time);
+		} else {
+			overlaps = planetHash.findOverlaps();
+			collisionScheduler.reset();
+		}
 
-					// velocity, mass and radius of the new planet
-					bigP.setVel(getCollisionVel(bigP, smallP));
-					bigP.setMass(bigP.getMass() + smallP.getMass(), bigP.getDensity());
+		Planet p1, p2, bigP, smallP;
+		for (long pair : overlaps) {
+			int i = (int) (pair >>> 32), j = (int) pair;
 
-					// check for selected planets
-					Planet sp = Main.win.getSelectedPlanet();
-					if (sp != null && sp.equals(smallP))
-						Main.win.selectPlanet(bigP);
+			// a planet that merged in this step can't take another planet
+			if (planetStore.isDead(i) || planetStore.isDead(j))
+				continue;
 
-					toRemove.add(smallP);
-				}
-			}
+			p1 = planetList.get(i);
+			p2 = planetList.get(j);
+			bigP = Utils.getBiggest(p1, p2);
+			smallP = Utils.getSmallest(p1, p2);
+
+			// velocity, mass and radius of the new planet
+			setCollisionVel(bigP, smallP);
+			bigP.setMass(bigP.getMass() + smallP.getMass(), bigP.getDensity());
+
+			// a selected planet is passed on to the planet it merged into
+			merged.put(smallP, bigP);
+
+			planetStore.markDead(smallP.getIndex());
+			removed.add(smallP);
+			planetCollisions++;
+			if (recorder != null)
+				recorder.merged(smallP.getId(), bigP.getId());
+		}
 
-			// particles (don't collide with each other)
-			for (Particle particle : particleList) {
-				if (particle.getPos().sub(p1.getPos()).getRadius() < p1.getRadius()) {
-					toRemove.add(particle);
+		// particles (don't collide with each other)
+		if (particleStage.isAnyHit()) {
+			for (int k = 0; k < particleStore.size(); k++) {
+				if (particleStage.isHit(k)) {
+					particleStore.markDead(k);
+					removed.add(particleList.get(k));
+					particleImpacts++;
+					if (recorder != null)
+						recorder.removed(particleStore.getId()[k]);
 				}
 			}
 		}
 
-		// remove all collided smaller planets and particles
-		for (Body body : toRemove) {
-			if (body instanceof Planet)
-				planetList.remove(body);
-			else if (body instanceof Particle)
-				particleList.remove(body);
-			body.delete();
+		// remove all collided smaller planets and particles, the lists keep the order
+		// of the stores
+		if (planetStore.compact() > 0) {
+			planetList.removeIf(planet -> planet.getStore() != planetStore);
+			integrator.reset();
+			collisionScheduler.reset();
+		}
+		int particles = particleStore.size();
+		if (particleStore.compact() > 0) {
+			particleStage.removeHit(particles);
+			particleList.removeIf(particle -> particle.getStore() != particleStore);
 		}
 	}
 
 	/**
-	 * Calculates the new velocity of a planet after a collision with momentum
-	 * conservation
+	 * Sets the velocity of a planet after a collision with momentum conservation.
+	 * The velocities are read from the store, so no vectors are created.
 	 * 
 	 * @param p1
+	 *            the planet that gets the new velocity
 	 * @param p2
-	 * @return the new velocity
+	 *            the other planet
 	 */
-	private static Vec getCollisionVel(Planet p1, Planet p2) {
-		double m1 = p1.getMass();
-		double m2 = p2.getMass();
-		Vec v1 = p1.getVel();
-		Vec v2 = p2.getVel();
-		double x = (m1 * v1.getX() + m2 * v2.getX()) / (m1 + m2);
-		double y = (m1 * v1.getY() + m2 * v2.getY()) / (m1 + m2);
-		return new Vec(x, y);
+	private void setCollisionVel(Planet p1, Planet p2) {
+		int i = p1.getIndex(), j = p2.getIndex();
+		double[] velX = planetStore.getVelX();
+		double[] velY = planetStore.getVelY();
+		double m1 = planetStore.getMass()[i];
+		double m2 = planetStore.getMass()[j];
+		velX[i] = (m1 * velX[i] + m2 * velX[j]) / (m1 + m2);
+		velY[i] = (m1 * velY[i] + m2 * velY[j]) / (m1 + m2);
 	}
 
 	/**
-	 * Adds a new planet to the simulation.
+	 * Adds a new planet to the simulation between two steps.
 	 * 
 	 * @param planet
 	 *            the new planet
 	 */
 	public void addNewPlanet(Planet planet) {
-		planet.getTrail().savePosition();
-		planetList.add(planet);
+		execute(() -> {
+			planetList.add(planet);
+			planetStore.add(planet);
+			integrator.reset();
+			collisionScheduler.reset();
+			if (recorder != null)
+				recorder.added(planet.getId());
+		});
+	}
+
+	/**
+	 * Removes a planet from the simulation between two steps. The planet is
+	 * deleted from the window with the next snapshot.
+	 * 
+	 * @param planet
+	 *            the removed planet
+	 */
+	public void removePlanet(Planet planet) {
+		execute(() -> {
+			if (planetList.remove(planet)) {
+				planetStore.remove(planet);
+				integrator.reset();
+				collisionScheduler.reset();
+				removed.add(planet);
+				if (recorder != null)
+					recorder.removed(planet.getId());
+			}
+		});
+	}
+
+	/**
+	 * Writes a checkpoint of the current state into a channel, see Checkpoint. If
+	 * the simulation thread runs, it writes the checkpoint between two steps and
+	 * this method waits until it is written.
+	 * 
+	 * @param channel
+	 * @throws IOException
+	 */
+	public void writeCheckpoint(WritableByteChannel channel) throws IOException {
+		executeAndWait(() -> Checkpoint.write(this, channel));
+	}
+
+	/**
+	 * A command that can fail with an IOException.
+	 */
+	private interface IOCommand {
+		void run() throws IOException;
+	}
+
+	/**
+	 * Runs a command in the simulation thread between two steps and waits until
+	 * it is done, an IOException of the command is thrown here. If the simulation
+	 * thread does not run, the command runs in the calling thread.
+	 */
+	private void executeAndWait(IOCommand command) throws IOException {
+		if (!running || Thread.currentThread() == thread) {
+			command.run();
+			return;
+		}
+
+		FutureTask<Void> task = new FutureTask<Void>(() -> {
+			command.run();
+			return null;
+		});
+		execute(task);
+		try {
+			task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for the simulation thread");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
 	}
 
 	/**
-	 * stops the simulation
+	 * Sets the time step, the simulated time and the counters of a simulation that
+	 * is created from a checkpoint.
+	 */
+	void restore(double time, double secondsCounter, long steps, long planetCollisions, long particleImpacts) {
+		this.time = time;
+		this.secondsCounter = secondsCounter;
+		this.steps = steps;
+		this.planetCollisions = planetCollisions;
+		this.particleImpacts = particleImpacts;
+	}
+
+	/**
+	 * Stops the simulation thread and waits until it is finished.
 	 */
 	public void stop() {
-		timeline.stop();
+		running = false;
+		if (thread != null) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		parallel = false;
+		updatePool();
 	}
 
 	/**
 	 * pauses the simulation
 	 */
+	@Override
 	public void setPause(boolean b) {
-		if (b)
-			timeline.pause();
-		else
-			timeline.play();
+		paused = b;
 	}
 
+	@Override
 	public boolean isPaused() {
-		return timeline.getStatus() == Animation.Status.PAUSED;
+		return paused;
 	}
 
 	public double getTime() {
 		return time;
 	}
 
+	@Override
 	public void multTime(double x) {
 		time *= x;
 	}
 
+	@Override
 	public void resetTime() {
 		time = constellation.getTime();
 	}
 
+	@Override
 	public int getSpsCounter() {
-		return spsCounter;
+		return spsCounter.get();
 	}
 
+	@Override
 	public void resetSpsCounter() {
-		spsCounter = 0;
+		spsCounter.set(0);
 	}
 
 	public double getSecondsCounter() {
 		return secondsCounter;
 	}
 
+	/**
+	 * @return the number of steps since the start
+	 */
+	public long getSteps() {
+		return steps;
+	}
+
+	/**
+	 * @return the number of collisions of two planets since the start
+	 */
+	public long getPlanetCollisions() {
+		return planetCollisions;
+	}
+
+	/**
+	 * @return the number of particles that hit a planet since the start
+	 */
+	public long getParticleImpacts() {
+		return particleImpacts;
+	}
+
+	/**
+	 * Turns the parallel calculation of the planet forces and the particle stage on
+	 * or off. The pool is changed between two steps.
+	 * 
+	 * @param b
+	 */
+	public void setParallel(boolean b) {
+		parallel = b;
+		execute(this::updatePool);
+	}
+
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * Sets the number of threads for the parallel force calculation.
+	 * 
+	 * @param threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(threads, 1);
+		execute(this::updatePool);
+	}
+
+	/**
+	 * Creates or shuts down the pool for the parallel calculation, so that it fits
+	 * the parallel flag and the number of threads.
+	 */
+	private void updatePool() {
+		if (pool != null && (!parallel || pool.getParallelism() != threads)) {
+			pool.shutdown();
+			pool = null;
+		}
+		if (parallel && pool == null)
+			pool = new ForkJoinPool(threads);
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Replaces the particle stage between two steps, for example with a stage that
+	 * moves the particles in other processes.
+	 * 
+	 * @param particleStage
+	 */
+	public void setParticleStage(ParticleStage particleStage) {
+		execute(() -> this.particleStage = particleStage);
+	}
+
+	/**
+	 * Replaces the recorder of the trajectories between two steps and waits
+	 * until it is replaced. The new recorder writes its header and the first
+	 * frame at once, the previous recorder is closed. Null stops the recording.
+	 * If the new recorder can not start, the simulation goes on without a
+	 * recorder and the exception is thrown here.
+	 * 
+	 * @param recorder
+	 * @throws IOException
+	 */
+	public void setRecorder(TrajectoryRecorder recorder) throws IOException {
+		executeAndWait(() -> {
+			TrajectoryRecorder previous = this.recorder;
+			this.recorder = null;
+			try {
+				if (previous != null)
+					previous.close();
+			} finally {
+				if (recorder != null) {
+					recorder.start(this);
+					this.recorder = recorder;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Turns the collision scheduler on or off. Without it all pairs of planets
+	 * are tested in every step, which is used to check the scheduler.
+	 * 
+	 * @param b
+	 */
+	void setScheduleCollisions(boolean b) {
+		scheduleCollisions = b;
+		collisionScheduler.reset();
+	}
+
+	public TrajectoryRecorder getRecorder() {
+		return recorder;
+	}
+
+	/**
+	 * Replaces the publisher of the telemetry between two steps and waits until
+	 * it is replaced. The new publisher publishes the first frame at once, a
+	 * different previous publisher is closed. Null stops the publishing. If the
+	 * previous publisher can not be closed, the new one is set anyway and the
+	 * exception is thrown here.
+	 *
+	 * @param publisher
+	 * @throws IOException
+	 */
+	public void setPublisher(TelemetryPublisher publisher) throws IOException {
+		executeAndWait(() -> {
+			TelemetryPublisher previous = this.publisher;
+			this.publisher = publisher;
+			if (publisher != null)
+				publisher.start(this);
+			if (previous != null && previous != publisher)
+				previous.close();
+		});
+	}
+
+	public TelemetryPublisher getPublisher() {
+		return publisher;
+	}
+
+	public ParticleStage getParticleStage() {
+		return particleStage;
+	}
+
+	public Integrator getIntegrator() {
+		return integrator;
+	}
+
+	public ForceSolver getSolver() {
+		return solver;
+	}
+
 	public Constellation getConstellation() {
 		return constellation;
 	}
@@ -286,10 +930,29 @@ public class Simulation {
 		return particleList;
 	}
 
+	public BodyStore getPlanetStore() {
+		return planetStore;
+	}
+
+	public BodyStore getParticleStore() {
+		return particleStore;
+	}
+
+	@Override
 	public double getScale() {
 		return constellation.getScale();
 	}
 
+	@Override
+	public double getSpeed() {
+		return time * getSps();
+	}
+
+	@Override
+	public String getMethodName() {
+		return integrator.getName();
+	}
+
 	public int getNumberOfObjects() {
 		return planetList.size() + particleList.size();
 	}
@@ -298,6 +961,7 @@ public class Simulation {
 		return constellation.getSps();
 	}
 
+	@Override
 	public String getName() {
 		return constellation.getName();
 	}
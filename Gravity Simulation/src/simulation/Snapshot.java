@@ -0,0 +1,296 @@
+package simulation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import bodies.Body;
+import bodies.BodyStore;
+import bodies.Particle;
+import bodies.Planet;
+import utils.Vec;
+
+/**
+ * The state of a simulation at the end of a step, as it is drawn by the window.
+ * A snapshot is written by the simulation thread and then handed to the window,
+ * which only reads it. The simulation uses two snapshots in turns: one that the
+ * window draws and one that is written next, so a snapshot is never changed
+ * while the window uses it.
+ *
+ * Besides the positions a snapshot holds all bodies that were removed since the
+ * last snapshot, so the window can delete their drawn objects.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class Snapshot {
+
+	/** the planets and their state */
+	private Planet[] planets = new Planet[0];
+	private double[] planetX = new double[0], planetY = planetX, planetVelX = planetX, planetVelY = planetX;
+	private double[] planetMass = planetX, planetRadius = planetX;
+	private int planetCount;
+
+	/** the particles and their positions */
+	private Particle[] particles = new Particle[0];
+	private double[] particleX = new double[0], particleY = particleX;
+	private int particleCount;
+
+	/** the bodies that were removed and the planets that smaller planets merged into */
+	private final List<Body> removed = new ArrayList<Body>();
+	private final Map<Planet, Planet> merged = new HashMap<Planet, Planet>();
+
+	/** number of steps and simulated seconds since the start */
+	private long steps;
+	private double seconds;
+
+	/**
+	 * Copies the current state of the simulation into this snapshot. Only called
+	 * by the simulation thread while the window does not use this snapshot.
+	 */
+	void capture(List<Planet> planetList, BodyStore planetStore, List<Particle> particleList,
+			BodyStore particleStore, List<Body> removedBodies, Map<Planet, Planet> mergedPlanets, long steps,
+			double seconds) {
+		planetCount = planetStore.size();
+		if (planets.length < planetCount) {
+			int capacity = planetStore.getX().length;
+			planets = new Planet[capacity];
+			planetX = new double[capacity];
+			planetY = new double[capacity];
+			planetVelX = new double[capacity];
+			planetVelY = new double[capacity];
+			planetMass = new double[capacity];
+			planetRadius = new double[capacity];
+		}
+		planets = planetList.toArray(planets);
+		System.arraycopy(planetStore.getX(), 0, planetX, 0, planetCount);
+		System.arraycopy(planetStore.getY(), 0, planetY, 0, planetCount);
+		System.arraycopy(planetStore.getVelX(), 0, planetVelX, 0, planetCount);
+		System.arraycopy(planetStore.getVelY(), 0, planetVelY, 0, planetCount);
+		System.arraycopy(planetStore.getMass(), 0, planetMass, 0, planetCount);
+		System.arraycopy(planetStore.getRadius(), 0, planetRadius, 0, planetCount);
+
+		particleCount = particleStore.size();
+		if (particles.length < particleCount) {
+			int capacity = particleStore.getX().length;
+			particles = new Particle[capacity];
+			particleX = new double[capacity];
+			particleY = new double[capacity];
+		}
+		particles = particleList.toArray(particles);
+		System.arraycopy(particleStore.getX(), 0, particleX, 0, particleCount);
+		System.arraycopy(particleStore.getY(), 0, particleY, 0, particleCount);
+
+		removed.clear();
+		removed.addAll(removedBodies);
+		merged.clear();
+		merged.putAll(mergedPlanets);
+
+		this.steps = steps;
+		this.seconds = seconds;
+	}
+
+	/**
+	 * Sets the number of bodies and the time of this snapshot for another source
+	 * than a simulation, for example a recording. The bodies are then set with
+	 * setPlanet and setParticle. The removed and merged bodies are cleared.
+	 *
+	 * @param planetCount
+	 * @param particleCount
+	 * @param steps
+	 * @param seconds
+	 */
+	public void reset(int planetCount, int particleCount, long steps, double seconds) {
+		this.planetCount = planetCount;
+		if (planets.length < planetCount) {
+			planets = new Planet[planetCount];
+			planetX = new double[planetCount];
+			planetY = new double[planetCount];
+			planetVelX = new double[planetCount];
+			planetVelY = new double[planetCount];
+			planetMass = new double[planetCount];
+			planetRadius = new double[planetCount];
+		}
+		this.particleCount = particleCount;
+		if (particles.length < particleCount) {
+			particles = new Particle[particleCount];
+			particleX = new double[particleCount];
+			particleY = new double[particleCount];
+		}
+		removed.clear();
+		merged.clear();
+		this.steps = steps;
+		this.seconds = seconds;
+	}
+
+	/**
+	 * Sets the planet at an index, see reset.
+	 */
+	public void setPlanet(int i, Planet planet, double x, double y, double velX, double velY, double mass,
+			double radius) {
+		planets[i] = planet;
+		planetX[i] = x;
+		planetY[i] = y;
+		planetVelX[i] = velX;
+		planetVelY[i] = velY;
+		planetMass[i] = mass;
+		planetRadius[i] = radius;
+	}
+
+	/**
+	 * Sets the particle at an index, see reset.
+	 */
+	public void setParticle(int i, Particle particle, double x, double y) {
+		particles[i] = particle;
+		particleX[i] = x;
+		particleY[i] = y;
+	}
+
+	/**
+	 * Adds a body that is not in this snapshot anymore, see reset.
+	 */
+	public void addRemoved(Body body) {
+		removed.add(body);
+	}
+
+	/**
+	 * Notes that a removed planet merged into another planet, see reset.
+	 */
+	public void addMerged(Planet planet, Planet into) {
+		merged.put(planet, into);
+	}
+
+	public int getPlanetCount() {
+		return planetCount;
+	}
+
+	/**
+	 * @return the planets of this snapshot, the array can be longer than the
+	 *         number of planets
+	 */
+	public Planet[] getPlanets() {
+		return planets;
+	}
+
+	/**
+	 * @param planet
+	 * @return the index of a planet in this snapshot or -1
+	 */
+	public int indexOf(Planet planet) {
+		return indexOf(planet, planetCount - 1);
+	}
+
+	/**
+	 * Finds a planet starting at the index it had in an earlier snapshot. Removed
+	 * bodies are compacted and new planets are added at the end, so the index of
+	 * a planet can only become smaller and the search goes down first.
+	 *
+	 * @param planet
+	 * @param hint
+	 *            the index of the planet in an earlier snapshot
+	 * @return the index of a planet in this snapshot or -1
+	 */
+	public int indexOf(Planet planet, int hint) {
+		int start = Math.min(Math.max(hint, 0), planetCount - 1);
+		for (int i = start; i >= 0; i--)
+			if (planets[i] == planet)
+				return i;
+		for (int i = start + 1; i < planetCount; i++)
+			if (planets[i] == planet)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * @param planet
+	 * @return the position of a planet or null if it is not in this snapshot
+	 */
+	public Vec getPos(Planet planet) {
+		int i = indexOf(planet);
+		return i < 0 ? null : new Vec(planetX[i], planetY[i]);
+	}
+
+	/**
+	 * @param planet
+	 * @return the velocity of a planet or null if it is not in this snapshot
+	 */
+	public Vec getVel(Planet planet) {
+		int i = indexOf(planet);
+		return i < 0 ? null : new Vec(planetVelX[i], planetVelY[i]);
+	}
+
+	public double getPlanetX(int i) {
+		return planetX[i];
+	}
+
+	public double getPlanetY(int i) {
+		return planetY[i];
+	}
+
+	public double getPlanetVelX(int i) {
+		return planetVelX[i];
+	}
+
+	public double getPlanetVelY(int i) {
+		return planetVelY[i];
+	}
+
+	public double getPlanetMass(int i) {
+		return planetMass[i];
+	}
+
+	public double getPlanetRadius(int i) {
+		return planetRadius[i];
+	}
+
+	public int getParticleCount() {
+		return particleCount;
+	}
+
+	/**
+	 * @return the particles of this snapshot, the array can be longer than the
+	 *         number of particles
+	 */
+	public Particle[] getParticles() {
+		return particles;
+	}
+
+	public double getParticleX(int i) {
+		return particleX[i];
+	}
+
+	public double getParticleY(int i) {
+		return particleY[i];
+	}
+
+	/**
+	 * @return all bodies that were removed since the last snapshot
+	 */
+	public List<Body> getRemoved() {
+		return removed;
+	}
+
+	/**
+	 * @param planet
+	 * @return the planet that a removed planet merged into, the planet itself if
+	 *         it was not merged
+	 */
+	public Planet getMergedPlanet(Planet planet) {
+		while (merged.containsKey(planet))
+			planet = merged.get(planet);
+		return planet;
+	}
+
+	public int getNumberOfObjects() {
+		return planetCount + particleCount;
+	}
+
+	public long getSteps() {
+		return steps;
+	}
+
+	public double getSeconds() {
+		return seconds;
+	}
+
+}
@@ -0,0 +1,59 @@
+package simulation;
+
+/**
+ * Everything the window draws from: the live simulation or a replay of a
+ * recorded run. The window takes a snapshot 60 times per second and controls
+ * the speed with the time buttons.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public interface SnapshotSource {
+
+	/**
+	 * Takes the latest snapshot. The snapshot that was taken before must not be
+	 * used anymore. Only called by the thread of the window.
+	 *
+	 * @return the new snapshot or null if there is no new one
+	 */
+	public Snapshot takeSnapshot();
+
+	public String getName();
+
+	/**
+	 * @return the scale of the drawn system in pixels per meter
+	 */
+	public double getScale();
+
+	/**
+	 * @return the simulated seconds per second of wall clock time
+	 */
+	public double getSpeed();
+
+	/**
+	 * @return the name of the method that calculates the shown state
+	 */
+	public String getMethodName();
+
+	/**
+	 * Multiplies the speed by a factor.
+	 *
+	 * @param x
+	 */
+	public void multTime(double x);
+
+	/** Sets the speed back to the speed at the start. */
+	public void resetTime();
+
+	public void setPause(boolean b);
+
+	public boolean isPaused();
+
+	/**
+	 * @return the number of steps or frames since the last reset of the counter
+	 */
+	public int getSpsCounter();
+
+	public void resetSpsCounter();
+
+}
@@ -0,0 +1,271 @@
+package simulation;
+
+import java.util.Arrays;
+import bodies.BodyStore;
+
+/**
+ * A uniform grid for the collision tests of bodies with a radius. The cells
+ * are twice as large as the mean radius, every body is entered in all cells
+ * that its bounding box overlaps and only bodies in the same cell are tested.
+ * The grid is stored as a hash table of the cells, so the size of the system
+ * does not matter. Bodies that overlap too many cells and all bodies of small
+ * systems are tested against every body.
+ *
+ * The grid is built again for each step, a query does not change it, so
+ * queries can run in parallel.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class SpatialHash {
+
+	/** systems with at most this many bodies are tested without a grid */
+	private static final int minBodies = 32;
+
+	/** bodies that overlap more cells are tested against every body */
+	private static final int maxCells = 64;
+
+	private static final long[] noOverlaps = new long[0];
+
+	/** the bodies of the grid */
+	private BodyStore bodies;
+	private int n;
+
+	/** the size of the cells */
+	private double cellSize;
+
+	/** the first cell of each body in both directions */
+	private long[] firstCellX = new long[0], firstCellY = firstCellX;
+
+	/** the entries of all cells, sorted by the buckets of the hash table */
+	private int[] entryBody = new int[0];
+	private long[] entryCellX = new long[0], entryCellY = entryCellX;
+	private int entries;
+
+	/** the first entry of each bucket, the last element is the number of entries */
+	private int[] bucketStart = new int[1];
+	private int mask;
+
+	/** bodies that are not in the grid */
+	private int[] large = new int[0];
+	private boolean[] isLarge = new boolean[0];
+	private int largeCount;
+
+	/** scratch arrays for the construction */
+	private int[] scratchBody = new int[0];
+	private long[] scratchCellX = new long[0], scratchCellY = scratchCellX;
+	private int[] scratchBucket = new int[0], scratchNext = scratchBucket;
+
+	/** the found overlaps */
+	private long[] overlaps = new long[16];
+
+	/**
+	 * Enters all bodies of a store in the grid.
+	 *
+	 * @param bodies
+	 */
+	public void build(BodyStore bodies) {
+		this.bodies = bodies;
+		n = bodies.size();
+		double[] x = bodies.getX();
+		double[] y = bodies.getY();
+		double[] radius = bodies.getRadius();
+
+		if (large.length < n) {
+			large = new int[bodies.getX().length];
+			isLarge = new boolean[large.length];
+			firstCellX = new long[large.length];
+			firstCellY = new long[large.length];
+		}
+		largeCount = 0;
+		entries = 0;
+		Arrays.fill(isLarge, 0, n, n <= minBodies);
+
+		// small systems are tested without a grid
+		if (n <= minBodies) {
+			for (int i = 0; i < n; i++)
+				large[largeCount++] = i;
+			mask = 0;
+			bucketStart[0] = 0;
+			return;
+		}
+
+		double meanRadius = 0;
+		for (int i = 0; i < n; i++)
+			meanRadius += radius[i];
+		meanRadius /= n;
+		cellSize = meanRadius > 0 ? 2 * meanRadius : 1;
+
+		// the cells of all bodies
+		for (int i = 0; i < n; i++) {
+			long x0 = cell(x[i] - radius[i]), x1 = cell(x[i] + radius[i]);
+			long y0 = cell(y[i] - radius[i]), y1 = cell(y[i] + radius[i]);
+			firstCellX[i] = x0;
+			firstCellY[i] = y0;
+
+			if ((x1 - x0 + 1) * (y1 - y0 + 1) > maxCells || x1 < x0 || y1 < y0) {
+				large[largeCount++] = i;
+				isLarge[i] = true;
+				continue;
+			}
+
+			for (long cx = x0; cx <= x1; cx++) {
+				for (long cy = y0; cy <= y1; cy++) {
+					if (entries == scratchBody.length)
+						growScratch();
+					scratchBody[entries] = i;
+					scratchCellX[entries] = cx;
+					scratchCellY[entries] = cy;
+					entries++;
+				}
+			}
+		}
+
+		// a hash table with at least twice as many buckets as entries
+		int buckets = Integer.highestOneBit(Math.max(entries, 1) * 2 - 1) << 1;
+		mask = buckets - 1;
+		if (bucketStart.length < buckets + 1)
+			bucketStart = new int[buckets + 1];
+		else
+			Arrays.fill(bucketStart, 0, buckets + 1, 0);
+		if (scratchBucket.length < entries)
+			scratchBucket = new int[scratchBody.length];
+
+		// sort the entries by bucket
+		for (int e = 0; e < entries; e++) {
+			int b = bucket(scratchCellX[e], scratchCellY[e]);
+			scratchBucket[e] = b;
+			bucketStart[b + 1]++;
+		}
+		for (int b = 0; b < buckets; b++)
+			bucketStart[b + 1] += bucketStart[b];
+
+		if (entryBody.length < entries) {
+			entryBody = new int[scratchBody.length];
+			entryCellX = new long[scratchBody.length];
+			entryCellY = new long[scratchBody.length];
+		}
+		if (scratchNext.length < buckets)
+			scratchNext = new int[buckets];
+		System.arraycopy(bucketStart, 0, scratchNext, 0, buckets);
+		for (int e = 0; e < entries; e++) {
+			int k = scratchNext[scratchBucket[e]]++;
+			entryBody[k] = scratchBody[e];
+			entryCellX[k] = scratchCellX[e];
+			entryCellY[k] = scratchCellY[e];
+		}
+	}
+
+	/**
+	 * Finds all pairs of bodies that overlap. A pair (i, j) with i < j is packed
+	 * in a long as i << 32 | j, the pairs are sorted.
+	 *
+	 * @return all overlapping pairs
+	 */
+	public long[] findOverlaps() {
+		double[] x = bodies.getX();
+		double[] y = bodies.getY();
+		double[] radius = bodies.getRadius();
+		int count = 0;
+
+		// bodies in the same cell, each pair is only tested in the first cell that
+		// both bodies have in common
+		for (int b = 0; b < mask + 1 && entries > 0; b++) {
+			for (int e1 = bucketStart[b]; e1 < bucketStart[b + 1]; e1++) {
+				int i = entryBody[e1];
+				long cx = entryCellX[e1], cy = entryCellY[e1];
+				for (int e2 = e1 + 1; e2 < bucketStart[b + 1]; e2++) {
+					int j = entryBody[e2];
+					if (entryCellX[e2] != cx || entryCellY[e2] != cy)
+						continue;
+					if (Math.max(firstCellX[i], firstCellX[j]) != cx || Math.max(firstCellY[i], firstCellY[j]) != cy)
+						continue;
+					if (overlap(x, y, radius, i, j))
+						count = addOverlap(count, i, j);
+				}
+			}
+		}
+
+		// bodies that are not in the grid with all other bodies
+		for (int l = 0; l < largeCount; l++) {
+			int i = large[l];
+			for (int j = 0; j < n; j++) {
+				if (j == i || (isLarge[j] && j < i))
+					continue;
+				if (overlap(x, y, radius, i, j))
+					count = addOverlap(count, i, j);
+			}
+		}
+
+		if (count == 0)
+			return noOverlaps;
+		long[] result = Arrays.copyOf(overlaps, count);
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * @param px
+	 * @param py
+	 * @return true if a point is inside any body of the grid
+	 */
+	public boolean isInside(double px, double py) {
+		double[] x = bodies.getX();
+		double[] y = bodies.getY();
+		double[] radius = bodies.getRadius();
+
+		if (entries > 0) {
+			long cx = cell(px), cy = cell(py);
+			int b = bucket(cx, cy);
+			for (int e = bucketStart[b]; e < bucketStart[b + 1]; e++) {
+				if (entryCellX[e] != cx || entryCellY[e] != cy)
+					continue;
+				int j = entryBody[e];
+				double dx = px - x[j];
+				double dy = py - y[j];
+				if (dx * dx + dy * dy < radius[j] * radius[j])
+					return true;
+			}
+		}
+
+		for (int l = 0; l < largeCount; l++) {
+			int j = large[l];
+			double dx = px - x[j];
+			double dy = py - y[j];
+			if (dx * dx + dy * dy < radius[j] * radius[j])
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean overlap(double[] x, double[] y, double[] radius, int i, int j) {
+		double dx = x[i] - x[j];
+		double dy = y[i] - y[j];
+		double r = radius[i] + radius[j];
+		return dx * dx + dy * dy < r * r;
+	}
+
+	private int addOverlap(int count, int i, int j) {
+		if (count == overlaps.length)
+			overlaps = Arrays.copyOf(overlaps, count * 2);
+		overlaps[count] = (long) Math.min(i, j) << 32 | Math.max(i, j);
+		return count + 1;
+	}
+
+	private long cell(double coordinate) {
+		return (long) Math.floor(coordinate / cellSize);
+	}
+
+	private int bucket(long cx, long cy) {
+		long h = cx * 0x9E3779B97F4A7C15L + cy * 0xC2B2AE3D27D4EB4FL;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	private void growScratch() {
+		int capacity = Math.max(16, scratchBody.length * 2);
+		scratchBody = Arrays.copyOf(scratchBody, capacity);
+		scratchCellX = Arrays.copyOf(scratchCellX, capacity);
+		scratchCellY = Arrays.copyOf(scratchCellY, capacity);
+	}
+
+}
@@ -0,0 +1,175 @@
+package simulation.distributed;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import utils.BinaryReader;
+import utils.BinaryWriter;
+
+/**
+ * A blocking connection between the coordinator and a worker with a buffer for
+ * each direction, see BinaryWriter and BinaryReader. Numbers are written in
+ * the order of Java (big endian), so coordinator and workers can run on
+ * different machines.
+ *
+ * An address is either host:port for TCP or unix:path for a Unix domain socket.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class Connection implements Closeable {
+
+	private static final int bufferSize = 1 << 16;
+
+	private final SocketChannel channel;
+	private final BinaryReader in;
+	private final BinaryWriter out;
+
+	/**
+	 * @param channel
+	 *            a connected channel in blocking mode
+	 * @throws IOException
+	 */
+	public Connection(SocketChannel channel) throws IOException {
+		this.channel = channel;
+		if (channel.getLocalAddress() instanceof InetSocketAddress)
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		in = new BinaryReader(channel, bufferSize);
+		out = new BinaryWriter(channel, bufferSize);
+	}
+
+	/**
+	 * Connects to an address.
+	 *
+	 * @param address
+	 *            host:port or unix:path
+	 * @return the connection
+	 * @throws IOException
+	 */
+	public static Connection connect(String address) throws IOException {
+		return new Connection(SocketChannel.open(parseAddress(address)));
+	}
+
+	/**
+	 * @param address
+	 *            host:port or unix:path
+	 * @return the socket address
+	 */
+	public static SocketAddress parseAddress(String address) {
+		if (address.startsWith("unix:"))
+			return UnixDomainSocketAddress.of(address.substring(5));
+		int colon = address.lastIndexOf(':');
+		if (colon < 0)
+			throw new IllegalArgumentException("address without port: " + address);
+		return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+	}
+
+	/**
+	 * Opens a server channel for an address, a file of an earlier Unix domain
+	 * socket is deleted. The channel is not bound yet.
+	 *
+	 * @param address
+	 * @return the server channel
+	 * @throws IOException
+	 */
+	public static ServerSocketChannel openServer(SocketAddress address) throws IOException {
+		if (address instanceof UnixDomainSocketAddress) {
+			Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+			return ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		}
+		return ServerSocketChannel.open();
+	}
+
+	public void writeByte(int b) throws IOException {
+		out.writeByte(b);
+	}
+
+	public void writeInt(int v) throws IOException {
+		out.writeInt(v);
+	}
+
+	public void writeDouble(double v) throws IOException {
+		out.writeDouble(v);
+	}
+
+	/**
+	 * Writes the elements from index from (inclusive) to index to (exclusive) of
+	 * an array.
+	 */
+	public void writeDoubles(double[] a, int from, int to) throws IOException {
+		out.writeDoubles(a, from, to);
+	}
+
+	/**
+	 * Writes the elements from index from (inclusive) to index to (exclusive) of
+	 * an array.
+	 */
+	public void writeInts(int[] a, int from, int to) throws IOException {
+		out.writeInts(a, from, to);
+	}
+
+	/**
+	 * Sends everything that was written.
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	public byte readByte() throws IOException {
+		return in.readByte();
+	}
+
+	public int readInt() throws IOException {
+		return in.readInt();
+	}
+
+	public double readDouble() throws IOException {
+		return in.readDouble();
+	}
+
+	/**
+	 * Reads the elements from index from (inclusive) to index to (exclusive) of
+	 * an array.
+	 */
+	public void readDoubles(double[] a, int from, int to) throws IOException {
+		in.readDoubles(a, from, to);
+	}
+
+	/**
+	 * Reads the elements from index from (inclusive) to index to (exclusive) of
+	 * an array.
+	 */
+	public void readInts(int[] a, int from, int to) throws IOException {
+		in.readInts(a, from, to);
+	}
+
+	/**
+	 * @return the writer of this connection, for data that writes itself like the
+	 *         state of a particle stage
+	 */
+	BinaryWriter getWriter() {
+		return out;
+	}
+
+	/**
+	 * @return the reader of this connection
+	 */
+	BinaryReader getReader() {
+		return in;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
@@ -0,0 +1,520 @@
+package simulation.distributed;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import bodies.BodyStore;
+import simulation.MultiRateParticleStage;
+import simulation.ParticleStage;
+import simulation.SpatialHash;
+import simulation.gravity.ForceSolver;
+import utils.BinaryWriter;
+
+/**
+ * Moves the particles in several worker processes, the coordinator side of a
+ * distributed simulation. The particles are split into strips along the
+ * longer side of the system, each worker gets the particles of one strip. In
+ * every step the moved planets are sent to all workers, the workers move their
+ * particles at the same time and answer the particles that hit a planet and the
+ * number of particles that left their strip.
+ *
+ * The workers own the state of their particles. The store of the simulation
+ * keeps the ids and the order of the particles, its positions and velocities
+ * are only collected from the workers when they are read, see gather, for
+ * example for a snapshot, a recording or a checkpoint. Particles never feel
+ * each other, so a particle stays with its worker when it leaves its strip,
+ * the strips only split the work. Every syncInterval steps the numbers of
+ * particles of the workers are compared. If one worker has more than
+ * imbalance times its share because of the particles that hit a planet, or if
+ * the simulation added particles, all particles are collected, the strips are
+ * chosen again and the particles are sent to their new workers. With time
+ * steps of their own the sync interval is a multiple of the steps after which
+ * all particles are at the time of the planets.
+ *
+ * A checkpoint gets the same data as from a MultiRateParticleStage in one
+ * process: the levels are collected with the particles, the planet steps are
+ * recorded by every worker alike and are taken from the first one. So a
+ * checkpoint can be continued in one process or, see continueFrom, by workers
+ * again.
+ *
+ * Every step is a round trip to all workers with the state of all planets,
+ * about 0.3 ms over the loopback interface. So the workers only pay off if
+ * every worker has processors of its own and moving its particles takes much
+ * longer than the round trip, that is from about 100000 particles per worker.
+ * For a ring of particles around one planet on a single processor one worker
+ * makes 1680 steps per second with 10000 particles (3165 in one process) and
+ * 138 with 400000 particles (124 in one process). Two workers on the same
+ * processor only share it and are slower than one.
+ *
+ * The workers connect over TCP or a Unix domain socket, so they can run on the
+ * same machine or on other machines. An IOException of a worker stops the
+ * simulation with an UncheckedIOException.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class DistributedParticleStage extends ParticleStage implements Closeable {
+
+	/** the number of particles that are used to choose the strips */
+	private static final int samples = 4096;
+
+	/**
+	 * the particles are distributed again if a worker has more than this times
+	 * its share
+	 */
+	private static final double imbalance = 1.25;
+
+	private final Connection[] workers;
+	private final boolean multiRate;
+
+	/** the number of steps between two checks of the balance */
+	private int syncInterval = MultiRateParticleStage.syncSteps;
+	private int stepsSinceSync;
+
+	/** the number of particles the workers know, -1 before the first sync */
+	private int known = -1;
+
+	/** the worker of each particle and the particles of each worker in order */
+	private int[] owner = new int[0];
+
+	/** the levels of the particles with time steps of their own */
+	private int[] levels = new int[0];
+	private int[][] members;
+	private int[] memberCount;
+
+	/** the strips, worker w gets the coordinates in [cuts[w - 1], cuts[w]) */
+	private int axis;
+	private double[] cuts;
+
+	/** the store of the simulation */
+	private BodyStore particles;
+
+	/** the stage of a checkpoint, sent to the workers with the first particles */
+	private MultiRateParticleStage resumed;
+
+	/** true if the workers moved the particles since they were collected */
+	private boolean moved;
+
+	/** the particles outside of their strip after the last step */
+	private int escapes;
+
+	/** buffers for the answers of one worker and the coordinates for the strips */
+	private int[] workerHits = new int[16];
+	private int[] workerLevels = new int[0];
+	private double[] buffer = new double[0];
+	private final double[] sample = new double[samples];
+
+	/**
+	 * Creates a stage with connected workers.
+	 *
+	 * @param workers
+	 * @param multiRate
+	 *            true if the workers move the particles with time steps of their
+	 *            own
+	 */
+	public DistributedParticleStage(Connection[] workers, boolean multiRate) {
+		this.workers = workers;
+		this.multiRate = multiRate;
+		members = new int[workers.length][0];
+		memberCount = new int[workers.length];
+		cuts = new double[workers.length];
+	}
+
+	/**
+	 * Waits until a number of workers connected to an address.
+	 *
+	 * @param address
+	 *            host:port or unix:path
+	 * @param count
+	 *            the number of workers
+	 * @param multiRate
+	 * @return the stage
+	 * @throws IOException
+	 */
+	public static DistributedParticleStage listen(String address, int count, boolean multiRate)
+			throws IOException {
+		SocketAddress socketAddress = Connection.parseAddress(address);
+		try (ServerSocketChannel server = Connection.openServer(socketAddress)) {
+			server.bind(socketAddress);
+			return new DistributedParticleStage(accept(server, count), multiRate);
+		}
+	}
+
+	/**
+	 * Starts a number of worker processes on this machine with the class path of
+	 * this process. They connect over the loopback interface.
+	 *
+	 * @param count
+	 *            the number of workers
+	 * @param threads
+	 *            the number of threads of each worker
+	 * @param multiRate
+	 * @return the stage
+	 * @throws IOException
+	 */
+	public static DistributedParticleStage startLocal(int count, int threads, boolean multiRate)
+			throws IOException {
+		try (ServerSocketChannel server = ServerSocketChannel.open()) {
+			server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			InetSocketAddress local = (InetSocketAddress) server.getLocalAddress();
+			String address = local.getHostString() + ":" + local.getPort();
+
+			String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+			for (int w = 0; w < count; w++)
+				new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Worker.class.getName(),
+						address, Integer.toString(threads)).inheritIO().start();
+
+			return new DistributedParticleStage(accept(server, count), multiRate);
+		}
+	}
+
+	private static Connection[] accept(ServerSocketChannel server, int count) throws IOException {
+		Connection[] workers = new Connection[count];
+		for (int w = 0; w < count; w++)
+			workers[w] = new Connection(server.accept());
+		return workers;
+	}
+
+	/**
+	 * Continues with the data of the stage that moved the particles before, for
+	 * example of a stage that was read from a checkpoint. Has to be called before
+	 * the first step.
+	 *
+	 * @param previous
+	 */
+	public void continueFrom(ParticleStage previous) {
+		if (multiRate && known < 0 && previous instanceof MultiRateParticleStage)
+			resumed = (MultiRateParticleStage) previous;
+	}
+
+	@Override
+	public void advance(BodyStore particles, BodyStore planets, SpatialHash planetHash, ForceSolver solver,
+			double time, ForkJoinPool pool) {
+		int n = particles.size();
+		if (hit.length < n)
+			hit = new boolean[particles.getX().length];
+		Arrays.fill(hit, 0, n, false);
+		anyHit = false;
+		this.particles = particles;
+
+		try {
+			if (known != n || (stepsSinceSync >= syncInterval && isUnbalanced())) {
+				if (known >= 0)
+					collect(particles);
+				distribute(particles, solver.getSoftening());
+			} else if (stepsSinceSync >= syncInterval) {
+				stepsSinceSync = 0;
+			}
+			step(planets, time);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		moved = true;
+		stepsSinceSync++;
+	}
+
+	/**
+	 * @return true if a worker has more than imbalance times its share of the
+	 *         particles
+	 */
+	private boolean isUnbalanced() {
+		int largest = 0;
+		for (int w = 0; w < workers.length; w++)
+			largest = Math.max(largest, memberCount[w]);
+		return largest > imbalance * known / workers.length + 1;
+	}
+
+	/**
+	 * Collects the state of the particles from the workers, if they moved the
+	 * particles since the last time.
+	 */
+	@Override
+	public void gather(BodyStore particles) {
+		if (!moved || known != particles.size())
+			return;
+		try {
+			collect(particles);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Sends the moved planets to all workers and collects the hits. All workers
+	 * get the planets before the first answer is read, so they work at the same
+	 * time.
+	 */
+	private void step(BodyStore planets, double time) throws IOException {
+		int m = planets.size();
+		for (Connection worker : workers) {
+			worker.writeByte(Worker.step);
+			worker.writeDouble(time);
+			worker.writeInt(m);
+			worker.writeDoubles(planets.getX(), 0, m);
+			worker.writeDoubles(planets.getY(), 0, m);
+			worker.writeDoubles(planets.getVelX(), 0, m);
+			worker.writeDoubles(planets.getVelY(), 0, m);
+			worker.writeDoubles(planets.getMass(), 0, m);
+			worker.writeDoubles(planets.getRadius(), 0, m);
+			worker.flush();
+		}
+
+		escapes = 0;
+		for (int w = 0; w < workers.length; w++) {
+			escapes += workers[w].readInt();
+			int count = workers[w].readInt();
+			if (workerHits.length < count)
+				workerHits = new int[count];
+			workers[w].readInts(workerHits, 0, count);
+			for (int k = 0; k < count; k++)
+				hit[members[w][workerHits[k]]] = true;
+			if (count > 0)
+				anyHit = true;
+		}
+	}
+
+	/**
+	 * Collects the state of all particles from the workers into the store.
+	 */
+	private void collect(BodyStore particles) throws IOException {
+		for (Connection worker : workers) {
+			worker.writeByte(Worker.gather);
+			worker.flush();
+		}
+
+		for (int w = 0; w < workers.length; w++) {
+			int count = workers[w].readInt();
+			if (count != memberCount[w])
+				throw new IOException("worker " + w + " has " + count + " particles, expected " + memberCount[w]);
+			if (buffer.length < count)
+				buffer = new double[count];
+			int[] index = members[w];
+			for (double[] state : new double[][] { particles.getX(), particles.getY(), particles.getVelX(),
+					particles.getVelY() }) {
+				workers[w].readDoubles(buffer, 0, count);
+				for (int k = 0; k < count; k++)
+					state[index[k]] = buffer[k];
+			}
+			if (multiRate) {
+				if (workerLevels.length < count)
+					workerLevels = new int[count];
+				workers[w].readInts(workerLevels, 0, count);
+				for (int k = 0; k < count; k++)
+					levels[index[k]] = workerLevels[k];
+			}
+		}
+		moved = false;
+	}
+
+	/**
+	 * Chooses the strips for the current positions and sends all particles to
+	 * their workers. The strips are chosen so that all workers get about the same
+	 * number of particles.
+	 */
+	private void distribute(BodyStore particles, double softening) throws IOException {
+		int n = particles.size();
+		int count = workers.length;
+
+		// the strips are cut along the longer side of the system
+		double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			minX = Math.min(minX, particles.getX()[i]);
+			maxX = Math.max(maxX, particles.getX()[i]);
+			minY = Math.min(minY, particles.getY()[i]);
+			maxY = Math.max(maxY, particles.getY()[i]);
+		}
+		axis = maxX - minX >= maxY - minY ? 0 : 1;
+		double[] c = axis == 0 ? particles.getX() : particles.getY();
+
+		// the cuts are quantiles of evenly spread samples
+		int s = Math.min(n, samples);
+		for (int k = 0; k < s; k++)
+			sample[k] = c[(int) ((long) k * n / s)];
+		Arrays.sort(sample, 0, s);
+		for (int w = 0; w < count - 1; w++)
+			cuts[w] = s > 0 ? sample[(w + 1) * s / count] : 0;
+		cuts[count - 1] = Double.POSITIVE_INFINITY;
+
+		// the worker of each particle, new particles start at level 0
+		if (owner.length < n) {
+			owner = new int[particles.getX().length];
+			levels = Arrays.copyOf(levels, owner.length);
+		}
+		int leveled = Math.max(known, 0);
+		if (resumed != null) {
+			leveled = Math.min(resumed.getKnown(), n);
+			for (int i = 0; i < leveled; i++)
+				levels[i] = resumed.getLevel(i);
+		}
+		if (leveled < n)
+			Arrays.fill(levels, leveled, n, 0);
+		Arrays.fill(memberCount, 0);
+		for (int i = 0; i < n; i++) {
+			int w = strip(c[i]);
+			owner[i] = w;
+			memberCount[w]++;
+		}
+		for (int w = 0; w < count; w++) {
+			if (members[w].length < memberCount[w])
+				members[w] = new int[memberCount[w]];
+			memberCount[w] = 0;
+		}
+		for (int i = 0; i < n; i++)
+			members[owner[i]][memberCount[owner[i]]++] = i;
+
+		for (int w = 0; w < count; w++) {
+			Connection worker = workers[w];
+			int[] index = members[w];
+			int size = memberCount[w];
+			worker.writeByte(Worker.load);
+			worker.writeByte(multiRate ? 1 : 0);
+			worker.writeDouble(softening);
+			worker.writeInt(axis);
+			worker.writeDouble(w == 0 ? Double.NEGATIVE_INFINITY : cuts[w - 1]);
+			worker.writeDouble(cuts[w]);
+			worker.writeInt(size);
+			for (double[] state : new double[][] { particles.getX(), particles.getY(), particles.getVelX(),
+					particles.getVelY() })
+				for (int k = 0; k < size; k++)
+					worker.writeDouble(state[index[k]]);
+			if (multiRate)
+				stageOf(w).writeState(worker.getWriter());
+			worker.flush();
+		}
+
+		known = n;
+		// the next sync has to be at a multiple of the sync steps of the stage
+		stepsSinceSync = resumed != null ? (int) (resumed.getTick() % MultiRateParticleStage.syncSteps) : 0;
+		resumed = null;
+	}
+
+	/**
+	 * @return the stage for the particles of a worker with their levels, a new
+	 *         stage or the planet steps of the stage of a checkpoint
+	 */
+	private MultiRateParticleStage stageOf(int w) {
+		int size = memberCount[w];
+		if (workerLevels.length < size)
+			workerLevels = new int[size];
+		for (int k = 0; k < size; k++)
+			workerLevels[k] = levels[members[w][k]];
+		MultiRateParticleStage stage = resumed != null ? resumed : new MultiRateParticleStage();
+		stage.setLevels(workerLevels, size);
+		return stage;
+	}
+
+	/**
+	 * @return the worker of a coordinate on the axis of the strips
+	 */
+	private int strip(double coordinate) {
+		int w = 0;
+		while (w < cuts.length - 1 && coordinate >= cuts[w])
+			w++;
+		return w;
+	}
+
+	/**
+	 * The removed particles are also removed from their workers, so the lists of
+	 * the workers are compacted in the same way as the store.
+	 */
+	@Override
+	public void removeHit(int n) {
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			if (!hit[i]) {
+				owner[k] = owner[i];
+				levels[k] = levels[i];
+				k++;
+			}
+		}
+		known = k;
+
+		Arrays.fill(memberCount, 0);
+		for (int i = 0; i < k; i++)
+			members[owner[i]][memberCount[owner[i]]++] = i;
+	}
+
+	/**
+	 * Writes the data of a MultiRateParticleStage with the levels in the order of
+	 * the store and the planet steps of the first worker. Without time steps of
+	 * their own there is nothing to write.
+	 */
+	@Override
+	public void writeState(BinaryWriter out) throws IOException {
+		if (!multiRate)
+			return;
+		MultiRateParticleStage stage = resumed != null ? resumed : new MultiRateParticleStage();
+		if (known >= 0) {
+			if (moved && known == particles.size())
+				collect(particles);
+			workers[0].writeByte(Worker.state);
+			workers[0].flush();
+			stage.readState(workers[0].getReader());
+			stage.setLevels(levels, known);
+		}
+		stage.writeState(out);
+	}
+
+	/**
+	 * @return the number of particles that were outside of their strip after the
+	 *         last step
+	 */
+	public int getEscapes() {
+		return escapes;
+	}
+
+	/**
+	 * @return true if the workers move the particles with time steps of their own
+	 */
+	public boolean isMultiRate() {
+		return multiRate;
+	}
+
+	public int getWorkers() {
+		return workers.length;
+	}
+
+	public int getSyncInterval() {
+		return syncInterval;
+	}
+
+	/**
+	 * Sets the number of steps between two checks of the balance of the workers.
+	 * If the workers move the particles with time steps of their own, the
+	 * interval is rounded up to a multiple of the steps after which all particles
+	 * are at the same time.
+	 *
+	 * @param syncInterval
+	 */
+	public void setSyncInterval(int syncInterval) {
+		int unit = multiRate ? MultiRateParticleStage.syncSteps : 1;
+		this.syncInterval = Math.max(unit, (syncInterval + unit - 1) / unit * unit);
+	}
+
+	/**
+	 * Collects the particles into the store of the simulation and stops all
+	 * workers.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (particles != null && moved && known == particles.size())
+			collect(particles);
+		for (Connection worker : workers) {
+			try {
+				worker.writeByte(Worker.stop);
+				worker.flush();
+			} finally {
+				worker.close();
+			}
+		}
+	}
+
+}
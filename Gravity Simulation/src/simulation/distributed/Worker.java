@@ -0,0 +1,217 @@
+package simulation.distributed;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import bodies.BodyStore;
+import simulation.MultiRateParticleStage;
+import simulation.ParticleStage;
+import simulation.SpatialHash;
+import simulation.gravity.DirectSum;
+
+/**
+ * A process that moves a part of the particles of a distributed simulation.
+ * The worker connects to the coordinator and then answers its commands until
+ * the coordinator stops it. Start with
+ *
+ * java simulation.distributed.Worker address [threads]
+ *
+ * The address is host:port or unix:path of the coordinator, without threads
+ * all processors are used.
+ *
+ * The worker only holds the particles of its domain and the planets of the
+ * current step. The particles are moved with the same particle stage as in a
+ * single process, the planets are only the sources of the forces.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class Worker {
+
+	/** the commands of the coordinator */
+	static final byte load = 1, step = 2, gather = 3, stop = 4, state = 5;
+
+	private final Connection connection;
+	private final ForkJoinPool pool;
+
+	private final BodyStore particles = new BodyStore();
+	private final BodyStore planets = new BodyStore();
+	private final SpatialHash planetHash = new SpatialHash();
+	private final DirectSum solver = new DirectSum();
+	private ParticleStage stage = new ParticleStage();
+
+	/** the domain of this worker, the coordinate on the axis is in [low, high) */
+	private int axis;
+	private double low, high;
+
+	/** the levels of the particles with time steps of their own */
+	private int[] levels = new int[0];
+
+	/** the indices of the particles that hit a planet in the last step */
+	private int[] hits = new int[16];
+
+	public static void main(String... args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: java simulation.distributed.Worker address [threads]");
+			return;
+		}
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+		try (Connection connection = Connection.connect(args[0])) {
+			new Worker(connection, threads).serve();
+		}
+	}
+
+	/**
+	 * @param connection
+	 *            the connection to the coordinator
+	 * @param threads
+	 *            the number of threads for the particles
+	 */
+	public Worker(Connection connection, int threads) {
+		this.connection = connection;
+		pool = threads > 1 ? new ForkJoinPool(threads) : null;
+	}
+
+	/**
+	 * Answers the commands of the coordinator until it sends stop.
+	 *
+	 * @throws IOException
+	 */
+	public void serve() throws IOException {
+		try {
+			while (true) {
+				byte command = connection.readByte();
+				switch (command) {
+				case load:
+					load();
+					break;
+				case step:
+					step();
+					break;
+				case gather:
+					gather();
+					break;
+				case state:
+					stage.writeState(connection.getWriter());
+					connection.flush();
+					break;
+				case stop:
+					return;
+				default:
+					throw new IOException("unknown command " + command);
+				}
+			}
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+		}
+	}
+
+	/**
+	 * Receives the domain and the particles of this worker. With time steps of
+	 * their own the state of the stage follows, the levels in the order of the
+	 * particles and the recorded planet steps. This is a new stage after a sync,
+	 * when all particles are at the time of the planets, or the stage of a
+	 * checkpoint.
+	 */
+	private void load() throws IOException {
+		boolean multiRate = connection.readByte() != 0;
+		solver.setSoftening(connection.readDouble());
+		axis = connection.readInt();
+		low = connection.readDouble();
+		high = connection.readDouble();
+
+		int n = connection.readInt();
+		particles.resize(n);
+		connection.readDoubles(particles.getX(), 0, n);
+		connection.readDoubles(particles.getY(), 0, n);
+		connection.readDoubles(particles.getVelX(), 0, n);
+		connection.readDoubles(particles.getVelY(), 0, n);
+
+		if (multiRate) {
+			MultiRateParticleStage multiRateStage = new MultiRateParticleStage();
+			multiRateStage.readState(connection.getReader());
+			if (multiRateStage.getKnown() != n)
+				throw new IOException("the stage has " + multiRateStage.getKnown() + " particles, expected " + n);
+			stage = multiRateStage;
+		} else {
+			stage = new ParticleStage();
+		}
+	}
+
+	/**
+	 * Receives the moved planets, moves the particles and answers the number of
+	 * particles that left the domain and the particles that hit a planet. The hit
+	 * particles are removed at once, the coordinator removes them in the same
+	 * order.
+	 */
+	private void step() throws IOException {
+		double time = connection.readDouble();
+		int m = connection.readInt();
+		planets.resize(m);
+		connection.readDoubles(planets.getX(), 0, m);
+		connection.readDoubles(planets.getY(), 0, m);
+		connection.readDoubles(planets.getVelX(), 0, m);
+		connection.readDoubles(planets.getVelY(), 0, m);
+		connection.readDoubles(planets.getMass(), 0, m);
+		connection.readDoubles(planets.getRadius(), 0, m);
+
+		planetHash.build(planets);
+		stage.advance(particles, planets, planetHash, solver, time, pool);
+
+		int n = particles.size();
+		int count = 0;
+		if (stage.isAnyHit()) {
+			for (int i = 0; i < n; i++) {
+				if (stage.isHit(i)) {
+					if (count == hits.length)
+						hits = Arrays.copyOf(hits, count * 2);
+					hits[count++] = i;
+					particles.markDead(i);
+				}
+			}
+			particles.compact();
+			stage.removeHit(n);
+		}
+
+		connection.writeInt(escapes());
+		connection.writeInt(count);
+		connection.writeInts(hits, 0, count);
+		connection.flush();
+	}
+
+	/**
+	 * @return the number of particles outside of the domain
+	 */
+	private int escapes() {
+		double[] c = axis == 0 ? particles.getX() : particles.getY();
+		int escapes = 0;
+		for (int i = 0; i < particles.size(); i++)
+			if (c[i] < low || c[i] >= high)
+				escapes++;
+		return escapes;
+	}
+
+	/**
+	 * Sends the state of all particles and their levels with time steps of their
+	 * own.
+	 */
+	private void gather() throws IOException {
+		int n = particles.size();
+		connection.writeInt(n);
+		connection.writeDoubles(particles.getX(), 0, n);
+		connection.writeDoubles(particles.getY(), 0, n);
+		connection.writeDoubles(particles.getVelX(), 0, n);
+		connection.writeDoubles(particles.getVelY(), 0, n);
+		if (stage instanceof MultiRateParticleStage) {
+			if (levels.length < n)
+				levels = new int[n];
+			for (int i = 0; i < n; i++)
+				levels[i] = ((MultiRateParticleStage) stage).getLevel(i);
+			connection.writeInts(levels, 0, n);
+		}
+		connection.flush();
+	}
+
+}
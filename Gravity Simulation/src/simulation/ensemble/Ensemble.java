@@ -0,0 +1,240 @@
+package simulation.ensemble;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import bodies.Constellation;
+import simulation.Simulation;
+import systems.Systems;
+import utils.Utils;
+
+/**
+ * Runs many independent simulations of a random system with different seeds,
+ * for example to count how often planets survive or collide. Each run creates
+ * its system with its own seed in its own thread, so the same seed always
+ * gives the same system, and runs until its stop condition is done. The runs
+ * share a pool with a fixed number of threads, each run is calculated serial,
+ * so the number of runs per second grows with the number of processors.
+ *
+ * Start from the command line with
+ *
+ * java simulation.ensemble.Ensemble [system] [options]
+ *
+ * The system is the name of a method in Systems, for example randomMoons. The
+ * options are -runs n, -seed s (the seed of the first run, the next runs count
+ * up), -seconds t (simulated seconds per run), -steps n, -planets n (stop if
+ * at most n planets are left), -threads n and -table (print every run).
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class Ensemble {
+
+	private static final double year = 31536000;
+
+	/** creates the system of a run, called after the seed is set */
+	private final Supplier<Constellation> scenario;
+
+	private long firstSeed = 0;
+	private int runs = 100;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private StopCondition stopCondition = StopCondition.afterSeconds(year);
+
+	/**
+	 * @param scenario
+	 *            creates the system of a run with the random numbers of
+	 *            utils.Utils, for example Systems::randomMoons
+	 */
+	public Ensemble(Supplier<Constellation> scenario) {
+		this.scenario = scenario;
+	}
+
+	/**
+	 * Runs all runs and waits until they are finished.
+	 *
+	 * @return the outcomes ordered by the seed
+	 * @throws InterruptedException
+	 */
+	public EnsembleResult run() throws InterruptedException {
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<RunResult>> futures = new ArrayList<Future<RunResult>>();
+			for (int i = 0; i < runs; i++) {
+				long seed = firstSeed + i;
+				futures.add(pool.submit(() -> runOne(seed)));
+			}
+
+			List<RunResult> results = new ArrayList<RunResult>();
+			for (Future<RunResult> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("a run failed", e.getCause());
+				}
+			}
+			return new EnsembleResult(results, (System.nanoTime() - start) * 1e-9);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Creates the system of a seed and simulates it until the stop condition is
+	 * done.
+	 *
+	 * @param seed
+	 * @return the outcome
+	 */
+	public RunResult runOne(long seed) {
+		long start = System.nanoTime();
+		Utils.setSeed(seed);
+		Constellation constellation = scenario.get();
+		int planets = constellation.getPlanetList().size();
+		int particles = constellation.getParticleList().size();
+
+		Simulation simulation = new Simulation(constellation);
+		while (!stopCondition.isDone(simulation))
+			simulation.runSteps(1);
+		simulation.stop();
+
+		return new RunResult(seed, simulation, planets, particles, (System.nanoTime() - start) * 1e-9);
+	}
+
+	public long getFirstSeed() {
+		return firstSeed;
+	}
+
+	/**
+	 * Sets the seed of the first run, the seeds of the next runs count up.
+	 *
+	 * @param firstSeed
+	 */
+	public void setFirstSeed(long firstSeed) {
+		this.firstSeed = firstSeed;
+	}
+
+	public int getRuns() {
+		return runs;
+	}
+
+	public void setRuns(int runs) {
+		this.runs = runs;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets the number of runs that are calculated at the same time.
+	 *
+	 * @param threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(threads, 1);
+	}
+
+	public StopCondition getStopCondition() {
+		return stopCondition;
+	}
+
+	/**
+	 * Sets the condition that ends each run. Every run tests it for its own
+	 * simulation, so runs can end at different times.
+	 *
+	 * @param stopCondition
+	 */
+	public void setStopCondition(StopCondition stopCondition) {
+		this.stopCondition = stopCondition;
+	}
+
+	public static void main(String... args) throws Exception {
+		String system = "randomMoons";
+		StopCondition stop = null;
+		double seconds = -1;
+		long steps = -1;
+		int planets = -1;
+		boolean table = false;
+		long seed = 0;
+		int runs = 100;
+		int threads = 0;
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-runs":
+				runs = Integer.parseInt(args[++i]);
+				break;
+			case "-seed":
+				seed = Long.parseLong(args[++i]);
+				break;
+			case "-seconds":
+				seconds = Double.parseDouble(args[++i]);
+				break;
+			case "-steps":
+				steps = Long.parseLong(args[++i]);
+				break;
+			case "-planets":
+				planets = Integer.parseInt(args[++i]);
+				break;
+			case "-threads":
+				threads = Integer.parseInt(args[++i]);
+				break;
+			case "-table":
+				table = true;
+				break;
+			default:
+				system = args[i];
+			}
+		}
+
+		Method method = Systems.class.getMethod(system);
+		Ensemble ensemble = new Ensemble(() -> invoke(method));
+		ensemble.setRuns(runs);
+		ensemble.setFirstSeed(seed);
+		if (threads > 0)
+			ensemble.setThreads(threads);
+
+		if (seconds >= 0)
+			stop = StopCondition.afterSeconds(seconds);
+		if (steps >= 0)
+			stop = stop == null ? StopCondition.afterSteps(steps) : stop.or(StopCondition.afterSteps(steps));
+		if (stop == null)
+			stop = StopCondition.afterSeconds(year);
+		if (planets >= 0)
+			stop = stop.or(StopCondition.planetsAtMost(planets));
+		ensemble.setStopCondition(stop);
+
+		System.out.println(system + ": " + runs + " runs from seed " + seed + " on " + ensemble.getThreads()
+				+ " threads");
+		EnsembleResult result = ensemble.run();
+		System.out.printf("%.3f s, %.2f runs/s%n%n", result.getWallSeconds(), result.getRunsPerSecond());
+
+		print(result, table);
+	}
+
+	private static void print(EnsembleResult result, boolean table) throws IOException {
+		if (table) {
+			result.writeRuns(System.out);
+			System.out.println();
+		}
+		result.writeSummary(System.out);
+		System.out.println();
+		result.writeCounts(System.out, "planets");
+	}
+
+	private static Constellation invoke(Method method) {
+		try {
+			return (Constellation) method.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
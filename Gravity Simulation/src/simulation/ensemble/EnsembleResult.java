@@ -0,0 +1,134 @@
+package simulation.ensemble;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/**
+ * The outcomes of all runs of an ensemble, ordered by the seed, and tables of
+ * them. The tables are separated by tabs, so they can be read by a spreadsheet
+ * or a plotting program.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class EnsembleResult {
+
+	private final List<RunResult> runs;
+	private final double wallSeconds;
+
+	/**
+	 * @param runs
+	 *            the outcomes ordered by the seed
+	 * @param wallSeconds
+	 *            the wall clock time of the whole ensemble
+	 */
+	public EnsembleResult(List<RunResult> runs, double wallSeconds) {
+		this.runs = Collections.unmodifiableList(new ArrayList<RunResult>(runs));
+		this.wallSeconds = wallSeconds;
+	}
+
+	/**
+	 * Writes one line for each run with all columns.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeRuns(Appendable out) throws IOException {
+		out.append(String.join("\t", RunResult.columns)).append('\n');
+		for (RunResult run : runs) {
+			for (int c = 0; c < RunResult.columns.length; c++) {
+				if (c > 0)
+					out.append('\t');
+				out.append(format(run.get(c)));
+			}
+			out.append('\n');
+		}
+	}
+
+	/**
+	 * Writes the mean, standard deviation, minimum and maximum of each column over
+	 * all runs.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeSummary(Appendable out) throws IOException {
+		out.append("column\tmean\tstd\tmin\tmax\n");
+		for (int c = 1; c < RunResult.columns.length; c++) {
+			double sum = 0, sum2 = 0;
+			double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+			for (RunResult run : runs) {
+				double v = run.get(c);
+				sum += v;
+				sum2 += v * v;
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+			}
+			int n = runs.size();
+			double mean = n > 0 ? sum / n : Double.NaN;
+			double std = n > 1 ? Math.sqrt(Math.max(0, (sum2 - n * mean * mean) / (n - 1))) : 0;
+			out.append(RunResult.columns[c]).append('\t').append(format(mean)).append('\t').append(format(std))
+					.append('\t').append(format(min)).append('\t').append(format(max)).append('\n');
+		}
+	}
+
+	/**
+	 * Writes how many runs ended with each value of a column, for example how
+	 * often a number of planets survived.
+	 *
+	 * @param out
+	 * @param column
+	 *            a name of RunResult.columns
+	 * @throws IOException
+	 */
+	public void writeCounts(Appendable out, String column) throws IOException {
+		int c = columnIndex(column);
+		TreeMap<Double, Integer> counts = new TreeMap<Double, Integer>();
+		for (RunResult run : runs)
+			counts.merge(run.get(c), 1, Integer::sum);
+
+		out.append(column).append("\truns\n");
+		for (double value : counts.keySet())
+			out.append(format(value)).append('\t').append(Integer.toString(counts.get(value))).append('\n');
+	}
+
+	private static int columnIndex(String column) {
+		for (int c = 0; c < RunResult.columns.length; c++)
+			if (RunResult.columns[c].equals(column))
+				return c;
+		throw new IllegalArgumentException("unknown column " + column);
+	}
+
+	/**
+	 * @return whole numbers without decimals, all others with six significant
+	 *         digits
+	 */
+	private static String format(double v) {
+		if (v == Math.rint(v) && Math.abs(v) < 1e15)
+			return Long.toString((long) v);
+		return String.format(Locale.ROOT, "%.6g", v);
+	}
+
+	public List<RunResult> getRuns() {
+		return runs;
+	}
+
+	/**
+	 * @return the wall clock time of the whole ensemble
+	 */
+	public double getWallSeconds() {
+		return wallSeconds;
+	}
+
+	/**
+	 * @return the number of finished runs per wall clock second
+	 */
+	public double getRunsPerSecond() {
+		return runs.size() / wallSeconds;
+	}
+
+}
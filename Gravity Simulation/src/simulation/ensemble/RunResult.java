@@ -0,0 +1,128 @@
+package simulation.ensemble;
+
+import simulation.Simulation;
+
+/**
+ * The outcome of one run of an ensemble.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class RunResult {
+
+	/** the names of the values of a run, in the order of get(column) */
+	public static final String[] columns = { "seed", "steps", "seconds", "planetsStart", "planets", "particlesStart",
+			"particles", "planetCollisions", "particleImpacts", "wallSeconds" };
+
+	private final long seed;
+	private final long steps;
+	private final double seconds;
+	private final int planetsStart, planets;
+	private final int particlesStart, particles;
+	private final long planetCollisions, particleImpacts;
+	private final double wallSeconds;
+
+	/**
+	 * Takes the outcome from a finished simulation.
+	 *
+	 * @param seed
+	 * @param simulation
+	 * @param planetsStart
+	 *            the number of planets at the start
+	 * @param particlesStart
+	 *            the number of particles at the start
+	 * @param wallSeconds
+	 *            the wall clock time of the run
+	 */
+	public RunResult(long seed, Simulation simulation, int planetsStart, int particlesStart, double wallSeconds) {
+		this.seed = seed;
+		this.steps = simulation.getSteps();
+		this.seconds = simulation.getSecondsCounter();
+		this.planetsStart = planetsStart;
+		this.planets = simulation.getPlanetList().size();
+		this.particlesStart = particlesStart;
+		this.particles = simulation.getParticleList().size();
+		this.planetCollisions = simulation.getPlanetCollisions();
+		this.particleImpacts = simulation.getParticleImpacts();
+		this.wallSeconds = wallSeconds;
+	}
+
+	/**
+	 * @param column
+	 *            an index of columns
+	 * @return the value of a column
+	 */
+	public double get(int column) {
+		switch (column) {
+		case 0:
+			return seed;
+		case 1:
+			return steps;
+		case 2:
+			return seconds;
+		case 3:
+			return planetsStart;
+		case 4:
+			return planets;
+		case 5:
+			return particlesStart;
+		case 6:
+			return particles;
+		case 7:
+			return planetCollisions;
+		case 8:
+			return particleImpacts;
+		case 9:
+			return wallSeconds;
+		default:
+			throw new IndexOutOfBoundsException(column);
+		}
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public long getSteps() {
+		return steps;
+	}
+
+	public double getSeconds() {
+		return seconds;
+	}
+
+	public int getPlanetsStart() {
+		return planetsStart;
+	}
+
+	/**
+	 * @return the number of planets at the end
+	 */
+	public int getPlanets() {
+		return planets;
+	}
+
+	public int getParticlesStart() {
+		return particlesStart;
+	}
+
+	/**
+	 * @return the number of particles at the end
+	 */
+	public int getParticles() {
+		return particles;
+	}
+
+	public long getPlanetCollisions() {
+		return planetCollisions;
+	}
+
+	public long getParticleImpacts() {
+		return particleImpacts;
+	}
+
+	public double getWallSeconds() {
+		return wallSeconds;
+	}
+
+}
@@ -0,0 +1,53 @@
+package simulation.ensemble;
+
+import simulation.Simulation;
+
+/**
+ * Decides when a run of an ensemble is finished. The condition is tested
+ * after every step of the run.
+ *
+ * @author Jan Muskalla
+ *
+ */
+@FunctionalInterface
+public interface StopCondition {
+
+	/**
+	 * @param simulation
+	 *            the simulation of the run
+	 * @return true if the run is finished
+	 */
+	public boolean isDone(Simulation simulation);
+
+	/**
+	 * @return a condition that is done if this or the other condition is done
+	 */
+	public default StopCondition or(StopCondition other) {
+		return simulation -> isDone(simulation) || other.isDone(simulation);
+	}
+
+	/**
+	 * @param seconds
+	 * @return a condition that is done after a simulated time
+	 */
+	public static StopCondition afterSeconds(double seconds) {
+		return simulation -> simulation.getSecondsCounter() >= seconds;
+	}
+
+	/**
+	 * @param steps
+	 * @return a condition that is done after a number of steps
+	 */
+	public static StopCondition afterSteps(long steps) {
+		return simulation -> simulation.getSteps() >= steps;
+	}
+
+	/**
+	 * @param planets
+	 * @return a condition that is done if at most a number of planets are left
+	 */
+	public static StopCondition planetsAtMost(int planets) {
+		return simulation -> simulation.getPlanetList().size() <= planets;
+	}
+
+}
@@ -0,0 +1,256 @@
+package simulation.ephemeris;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import javafx.scene.paint.Color;
+import utils.BinaryReader;
+
+/**
+ * Evaluates an ephemeris that was written by an EphemerisWriter. The whole file
+ * is read into memory. The segment of a time is found with a binary search, or
+ * directly if it is the segment of the last evaluation of the body, and the
+ * position and velocity are the value and the derivative of its series, which
+ * are summed in one pass.
+ *
+ * Between two segments of a body that are not connected, for example after a
+ * merge, the earlier segment is used.
+ *
+ * The last segment of every body is remembered, so an ephemeris must only be
+ * used by one thread.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class Ephemeris {
+
+	/** the file of this ephemeris */
+	private final Path path;
+
+	private final String name;
+	private final double scale;
+
+	/** the bodies */
+	private final long[] id;
+	private final String[] names;
+	private final Color[] colors;
+	private final int[] degree;
+
+	/** the start and end times, masses, radii and coefficients of the segments of each body */
+	private final double[][] start, end, mass, radius, coefficients;
+
+	/** the segment of the last evaluation of each body */
+	private final int[] lastSegment;
+
+	/**
+	 * Reads an ephemeris from a file.
+	 *
+	 * @param path
+	 * @throws IOException
+	 */
+	public Ephemeris(Path path) throws IOException {
+		this.path = path.toAbsolutePath();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			BinaryReader in = new BinaryReader(channel);
+			if (in.readInt() != EphemerisWriter.magic)
+				throw new IOException("not an ephemeris: " + path);
+			int version = in.readInt();
+			if (version != EphemerisWriter.version)
+				throw new IOException("unknown ephemeris version " + version);
+			name = in.readString();
+			scale = in.readDouble();
+
+			int n = in.readInt();
+			id = new long[n];
+			names = new String[n];
+			colors = new Color[n];
+			degree = new int[n];
+			start = new double[n][];
+			end = new double[n][];
+			mass = new double[n][];
+			radius = new double[n][];
+			coefficients = new double[n][];
+			lastSegment = new int[n];
+			for (int b = 0; b < n; b++) {
+				id[b] = in.readLong();
+				names[b] = in.readString();
+				if (in.readBoolean())
+					colors[b] = new Color(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+				degree[b] = in.readInt();
+				int s = in.readInt();
+				start[b] = new double[s];
+				end[b] = new double[s];
+				mass[b] = new double[s];
+				radius[b] = new double[s];
+				coefficients[b] = new double[2 * (degree[b] + 1) * s];
+				in.readDoubles(start[b], 0, s);
+				in.readDoubles(end[b], 0, s);
+				in.readDoubles(mass[b], 0, s);
+				in.readDoubles(radius[b], 0, s);
+				in.readDoubles(coefficients[b], 0, coefficients[b].length);
+			}
+		}
+	}
+
+	/**
+	 * Calculates the state of a body at a time.
+	 *
+	 * @param body
+	 *            the index of the body
+	 * @param t
+	 *            the time in seconds
+	 * @param state
+	 *            x, y, velX, velY, mass and radius are written from index 0 on
+	 * @return false if the time is outside of the ephemeris of the body, then the
+	 *         state is not changed
+	 */
+	public boolean evaluate(int body, double t, double[] state) {
+		int s = findSegment(body, t);
+		if (s < 0)
+			return false;
+
+		int n = degree[body];
+		int offset = 2 * (n + 1) * s;
+		double[] c = coefficients[body];
+		double half = (end[body][s] - start[body][s]) / 2;
+		if (half > 0) {
+			double tau = (t - start[body][s]) / half - 1;
+
+			// the polynomials and their derivatives are calculated once for x and y
+			double t0 = 1, t1 = tau, d0 = 0, d1 = 1;
+			int oy = offset + n + 1;
+			double x = c[offset] + c[offset + 1] * tau, y = c[oy] + c[oy + 1] * tau;
+			double vx = c[offset + 1], vy = c[oy + 1];
+			for (int k = 2; k <= n; k++) {
+				double tk = 2 * tau * t1 - t0;
+				double dk = 2 * t1 + 2 * tau * d1 - d0;
+				x += c[offset + k] * tk;
+				y += c[oy + k] * tk;
+				vx += c[offset + k] * dk;
+				vy += c[oy + k] * dk;
+				t0 = t1;
+				t1 = tk;
+				d0 = d1;
+				d1 = dk;
+			}
+			state[0] = x;
+			state[1] = y;
+			state[2] = vx / half;
+			state[3] = vy / half;
+		} else {
+			state[0] = c[offset];
+			state[1] = c[offset + n + 1];
+			state[2] = state[3] = 0;
+		}
+		state[4] = mass[body][s];
+		state[5] = radius[body][s];
+		return true;
+	}
+
+	/**
+	 * @return the index of the last segment of a body that starts at or before a
+	 *         time or -1 if the time is outside of the ephemeris of the body
+	 */
+	private int findSegment(int body, double t) {
+		double[] st = start[body];
+		int count = st.length;
+		if (count == 0 || t < st[0] || t > end[body][count - 1])
+			return -1;
+
+		// the segment of the last evaluation or the next one
+		int s = lastSegment[body];
+		if (st[s] <= t && (s + 1 == count || t < st[s + 1]))
+			return s;
+		if (s + 2 <= count && st[s + 1] <= t && (s + 2 == count || t < st[s + 2])) {
+			lastSegment[body] = s + 1;
+			return s + 1;
+		}
+
+		s = Arrays.binarySearch(st, t);
+		if (s < 0)
+			s = -s - 2;
+		lastSegment[body] = s;
+		return s;
+	}
+
+	/**
+	 * @param id
+	 *            the id of a body in the recorded simulation
+	 * @return the index of the body or -1
+	 */
+	public int indexOf(long id) {
+		for (int b = 0; b < this.id.length; b++)
+			if (this.id[b] == id)
+				return b;
+		return -1;
+	}
+
+	/**
+	 * @param name
+	 * @return the index of the first body with a name or -1
+	 */
+	public int indexOf(String name) {
+		for (int b = 0; b < names.length; b++)
+			if (name.equals(names[b]))
+				return b;
+		return -1;
+	}
+
+	public int getBodyCount() {
+		return id.length;
+	}
+
+	public long getId(int body) {
+		return id[body];
+	}
+
+	public String getBodyName(int body) {
+		return names[body];
+	}
+
+	/**
+	 * @return the color of a body or null for the body color of the theme
+	 */
+	public Color getColor(int body) {
+		return colors[body];
+	}
+
+	/**
+	 * @return the time of the first segment of a body
+	 */
+	public double getStartTime(int body) {
+		return start[body].length > 0 ? start[body][0] : Double.NaN;
+	}
+
+	/**
+	 * @return the time of the end of the last segment of a body
+	 */
+	public double getEndTime(int body) {
+		return end[body].length > 0 ? end[body][end[body].length - 1] : Double.NaN;
+	}
+
+	public int getSegments(int body) {
+		return start[body].length;
+	}
+
+	/**
+	 * @return the name of the system
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public double getScale() {
+		return scale;
+	}
+
+	/**
+	 * @return the absolute path of the file of this ephemeris
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+}
@@ -0,0 +1,411 @@
+package simulation.ephemeris;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import bodies.BodyStore;
+import bodies.Planet;
+import javafx.scene.paint.Color;
+import simulation.Simulation;
+import simulation.Snapshot;
+import simulation.recording.Recording;
+import utils.BinaryWriter;
+import utils.Chebyshev;
+
+/**
+ * Compresses the trajectories of planets into an ephemeris: every trajectory is
+ * split into segments and each segment is a Chebyshev series for x and y over
+ * its time, like the ephemeris files of the JPL. The series are fitted to the
+ * positions and velocities of the samples by least squares, so the velocity is
+ * the derivative of the position.
+ *
+ * The samples are added from a running simulation or from the frames of a
+ * recording, the samples of a planet in the order of time. A segment grows by
+ * doubling its number of samples as long as the fitted series is within the
+ * tolerance at all samples, the last fitting series is written when it does not
+ * fit anymore. So the segments are long where a trajectory is smooth and short
+ * around close encounters. A segment ends when the mass or the radius of the
+ * planet changes, for example when another planet merges into it.
+ *
+ * The file has a header with the magic number, the version, the name and the
+ * scale of the system and the number of bodies. It is followed by the bodies:
+ * id, name, color, degree, number of segments, then the start times, end times,
+ * masses and radii of the segments and the coefficients, the series for x and
+ * then y of each segment.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class EphemerisWriter {
+
+	/** "GEPH" */
+	static final int magic = 0x47455048;
+	static final int version = 1;
+
+	/** the largest number of samples in a segment */
+	private static final int maxSpan = 1 << 16;
+
+	private final double tolerance;
+	private final int degree;
+
+	private String name = "";
+	private double scale = 1;
+
+	/** the trajectories by id in the order of the first sample */
+	private final LinkedHashMap<Long, Track> tracks = new LinkedHashMap<Long, Track>();
+
+	/** the buffers of a fit */
+	private double[] tau = new double[16], dx = new double[16], dy = new double[16];
+	private final double[] cx, cy;
+
+	/**
+	 * @param tolerance
+	 *            the largest distance between a sample and the series in meters
+	 * @param degree
+	 *            the degree of the series, at least 3
+	 */
+	public EphemerisWriter(double tolerance, int degree) {
+		this.tolerance = tolerance;
+		this.degree = Math.max(degree, 3);
+		this.cx = new double[this.degree + 1];
+		this.cy = new double[this.degree + 1];
+	}
+
+	/**
+	 * Fits the trajectories of all planets in a recording.
+	 *
+	 * @param recording
+	 * @param tolerance
+	 *            the largest distance between a sample and the series in meters
+	 * @param degree
+	 *            the degree of the series, at least 3
+	 * @return the writer with the fitted trajectories
+	 * @throws IOException
+	 */
+	public static EphemerisWriter export(Recording recording, double tolerance, int degree) throws IOException {
+		EphemerisWriter writer = new EphemerisWriter(tolerance, degree);
+		writer.setSystem(recording.getName(), recording.getScale());
+
+		Snapshot snapshot = new Snapshot();
+		for (long frame = recording.getFirstFrame(); frame >= 0; frame = recording.nextFrame(frame)) {
+			recording.read(frame, snapshot);
+			double t = snapshot.getSeconds();
+			Planet[] planets = snapshot.getPlanets();
+			for (int i = 0; i < snapshot.getPlanetCount(); i++)
+				writer.add(recording.getId(planets[i]), planets[i].getName(), planets[i].getColor(), t,
+						snapshot.getPlanetX(i), snapshot.getPlanetY(i), snapshot.getPlanetVelX(i),
+						snapshot.getPlanetVelY(i), snapshot.getPlanetMass(i), snapshot.getPlanetRadius(i));
+
+			writer.finishMissing(t);
+		}
+		return writer;
+	}
+
+	/**
+	 * Adds the current state of all planets of a simulation as samples.
+	 *
+	 * @param simulation
+	 */
+	public void sample(Simulation simulation) {
+		ArrayList<Planet> planetList = simulation.getPlanetList();
+		BodyStore store = simulation.getPlanetStore();
+		long[] id = store.getId();
+		double[] x = store.getX(), y = store.getY(), velX = store.getVelX(), velY = store.getVelY();
+		double[] mass = store.getMass(), radius = store.getRadius();
+		double t = simulation.getSecondsCounter();
+		for (int i = 0; i < store.size(); i++) {
+			Planet p = planetList.get(i);
+			add(id[i], p.getName(), p.getColor(), t, x[i], y[i], velX[i], velY[i], mass[i], radius[i]);
+		}
+		finishMissing(t);
+	}
+
+	/**
+	 * Finishes the trajectories of the planets that have no sample at a time.
+	 */
+	private void finishMissing(double t) {
+		for (Track track : tracks.values())
+			if (track.count > 0 && track.lastTime < t)
+				finish(track);
+	}
+
+	/**
+	 * Sets the name and the scale that are written into the file.
+	 */
+	public void setSystem(String name, double scale) {
+		this.name = name;
+		this.scale = scale;
+	}
+
+	/**
+	 * Adds a sample of a planet. The samples of a planet must be added in the
+	 * order of time, a sample at the time of the last sample is ignored.
+	 *
+	 * @param id
+	 * @param name
+	 * @param color
+	 * @param t
+	 *            the time in seconds
+	 * @param x
+	 * @param y
+	 * @param velX
+	 * @param velY
+	 * @param mass
+	 * @param radius
+	 */
+	public void add(long id, String name, Color color, double t, double x, double y, double velX, double velY,
+			double mass, double radius) {
+		Track track = tracks.get(id);
+		if (track == null) {
+			track = new Track(id, name, color);
+			tracks.put(id, track);
+		}
+		if (track.count > 0 && t <= track.t[track.count - 1])
+			return;
+
+		// a new segment starts when the mass or radius changes
+		if (track.count > 0 && (mass != track.mass[track.count - 1] || radius != track.radius[track.count - 1]))
+			finish(track);
+
+		track.append(t, x, y, velX, velY, mass, radius);
+		while (track.count > track.target && step(track))
+			;
+	}
+
+	/**
+	 * Fits the first target + 1 samples of a trajectory. A fitting series is
+	 * kept and the next fit tries twice as many samples, if the series does not
+	 * fit the last fitting series is written or the number of samples is halved.
+	 *
+	 * @return false if more samples are needed for the next fit
+	 */
+	private boolean step(Track track) {
+		int m = track.target + 1;
+		if (fit(track, m)) {
+			track.keep(m, cx, cy);
+			if (track.target >= maxSpan)
+				track.writeKept();
+			else
+				track.target *= 2;
+		} else if (track.kept > 0)
+			track.writeKept();
+		else
+			track.target = Math.max(track.target / 2, 1);
+		return track.count > track.target;
+	}
+
+	/**
+	 * Writes all samples of a trajectory into segments, for example when the
+	 * planet merged into another planet.
+	 */
+	private void finish(Track track) {
+		while (track.count > 1) {
+			if (fit(track, track.count)) {
+				track.keep(track.count, cx, cy);
+				track.writeKept();
+			} else if (track.kept > 0)
+				track.writeKept();
+			else {
+				track.target = Math.max(Math.min(track.target, track.count - 1) / 2, 1);
+				if (fit(track, track.target + 1))
+					track.keep(track.target + 1, cx, cy);
+			}
+		}
+
+		// a planet with only one sample gets a segment without time
+		if (track.count == 1 && track.segments.isEmpty()) {
+			Arrays.fill(cx, 0);
+			Arrays.fill(cy, 0);
+			cx[0] = track.x[0];
+			cy[0] = track.y[0];
+			track.keep(1, cx, cy);
+			track.writeKept();
+		}
+		track.count = 0;
+		track.target = 16;
+	}
+
+	/**
+	 * Fits a series to the first samples of a trajectory into cx and cy.
+	 *
+	 * @return true if the series is within the tolerance at all samples
+	 */
+	private boolean fit(Track track, int m) {
+		if (tau.length < m) {
+			tau = new double[m];
+			dx = new double[m];
+			dy = new double[m];
+		}
+		double t0 = track.t[0], half = (track.t[m - 1] - t0) / 2;
+		for (int j = 0; j < m; j++) {
+			tau[j] = (track.t[j] - t0) / half - 1;
+			dx[j] = track.velX[j] * half;
+			dy[j] = track.velY[j] * half;
+		}
+
+		// a series of degree up to 2m - 1 is fitted, the rest is zero
+		int n = Math.min(degree, 2 * m - 1);
+		Arrays.fill(cx, 0);
+		Arrays.fill(cy, 0);
+		Chebyshev.fit(tau, track.x, dx, track.y, dy, m, n, cx, cy);
+
+		for (int j = 0; j < m; j++) {
+			double ex = Chebyshev.value(cx, 0, n, tau[j]) - track.x[j];
+			double ey = Chebyshev.value(cy, 0, n, tau[j]) - track.y[j];
+			if (!(ex * ex + ey * ey <= tolerance * tolerance))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the ephemeris into a file. The samples that are not in a segment yet
+	 * are fitted first.
+	 *
+	 * @param path
+	 * @throws IOException
+	 */
+	public void write(Path path) throws IOException {
+		for (Track track : tracks.values())
+			finish(track);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			BinaryWriter out = new BinaryWriter(channel);
+			out.writeInt(magic);
+			out.writeInt(version);
+			out.writeString(name);
+			out.writeDouble(scale);
+			out.writeInt(tracks.size());
+			for (Track track : tracks.values()) {
+				out.writeLong(track.id);
+				out.writeString(track.name);
+				out.writeBoolean(track.color != null);
+				if (track.color != null) {
+					out.writeDouble(track.color.getRed());
+					out.writeDouble(track.color.getGreen());
+					out.writeDouble(track.color.getBlue());
+					out.writeDouble(track.color.getOpacity());
+				}
+				out.writeInt(degree);
+				int s = track.segments.size();
+				out.writeInt(s);
+				for (int k = 0; k < 4; k++)
+					for (double[] segment : track.segments)
+						out.writeDouble(segment[k]);
+				for (double[] segment : track.segments)
+					out.writeDoubles(segment, 4, segment.length);
+			}
+			out.flush();
+		}
+	}
+
+	/**
+	 * @return the number of written segments of all planets
+	 */
+	public int getSegments() {
+		int n = 0;
+		for (Track track : tracks.values())
+			n += track.segments.size();
+		return n;
+	}
+
+	public int getBodyCount() {
+		return tracks.size();
+	}
+
+	/**
+	 * The samples of a planet that are not in a segment yet and the finished
+	 * segments.
+	 */
+	private class Track {
+
+		final long id;
+		final String name;
+		final Color color;
+
+		/** the samples */
+		double[] t = new double[32], x = new double[32], y = new double[32];
+		double[] velX = new double[32], velY = new double[32];
+		double[] mass = new double[32], radius = new double[32];
+		int count;
+		double lastTime = Double.NEGATIVE_INFINITY;
+
+		/** the number of samples of the next fit */
+		int target = 16;
+
+		/** the last fitting series and its number of samples */
+		final double[] keptX = new double[degree + 1], keptY = new double[degree + 1];
+		int kept;
+
+		/** start, end, mass, radius and the coefficients for x and y */
+		final ArrayList<double[]> segments = new ArrayList<double[]>();
+
+		Track(long id, String name, Color color) {
+			this.id = id;
+			this.name = name;
+			this.color = color;
+		}
+
+		void append(double t, double x, double y, double velX, double velY, double mass, double radius) {
+			if (count == this.t.length) {
+				int capacity = 2 * count;
+				this.t = Arrays.copyOf(this.t, capacity);
+				this.x = Arrays.copyOf(this.x, capacity);
+				this.y = Arrays.copyOf(this.y, capacity);
+				this.velX = Arrays.copyOf(this.velX, capacity);
+				this.velY = Arrays.copyOf(this.velY, capacity);
+				this.mass = Arrays.copyOf(this.mass, capacity);
+				this.radius = Arrays.copyOf(this.radius, capacity);
+			}
+			this.t[count] = t;
+			this.x[count] = x;
+			this.y[count] = y;
+			this.velX[count] = velX;
+			this.velY[count] = velY;
+			this.mass[count] = mass;
+			this.radius[count] = radius;
+			count++;
+			lastTime = t;
+		}
+
+		void keep(int m, double[] cx, double[] cy) {
+			System.arraycopy(cx, 0, keptX, 0, keptX.length);
+			System.arraycopy(cy, 0, keptY, 0, keptY.length);
+			kept = m;
+		}
+
+		/**
+		 * Writes the kept series as a segment and removes its samples except the
+		 * last one, which is the first sample of the next segment.
+		 */
+		void writeKept() {
+			int n = keptX.length;
+			double[] segment = new double[4 + 2 * n];
+			segment[0] = t[0];
+			segment[1] = t[kept - 1];
+			segment[2] = mass[kept - 1];
+			segment[3] = radius[kept - 1];
+			System.arraycopy(keptX, 0, segment, 4, n);
+			System.arraycopy(keptY, 0, segment, 4 + n, n);
+			segments.add(segment);
+
+			int drop = Math.max(kept - 1, 1);
+			count -= drop;
+			System.arraycopy(t, drop, t, 0, count);
+			System.arraycopy(x, drop, x, 0, count);
+			System.arraycopy(y, drop, y, 0, count);
+			System.arraycopy(velX, drop, velX, 0, count);
+			System.arraycopy(velY, drop, velY, 0, count);
+			System.arraycopy(mass, drop, mass, 0, count);
+			System.arraycopy(radius, drop, radius, 0, count);
+			target = Math.max(kept - 1, 1);
+			kept = 0;
+		}
+	}
+
+}
@@ -0,0 +1,333 @@
+package simulation.gravity;
+
+import java.io.IOException;
+import java.util.Arrays;
+import bodies.BodyStore;
+import utils.BinaryReader;
+import utils.BinaryWriter;
+import utils.Utils;
+
+/**
+ * Calculates the acceleration of the bodies with a Barnes-Hut quadtree. A cell
+ * of the tree is treated as one body in its center of mass if its size divided
+ * by the distance is smaller than the opening angle theta. With theta = 0 every
+ * cell is opened and the result is the direct sum.
+ *
+ * The tree is saved in primitive arrays that are reused for every step. After
+ * the tree is built, the tree walks for different targets are independent.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class BarnesHut implements ForceSolver {
+
+	private static final double defaultTheta = 0.5;
+
+	/** bodies closer than this many subdivisions share one leaf */
+	private static final int maxDepth = 48;
+
+	/** the opening angle */
+	private double theta;
+
+	/** the length of the Plummer softening */
+	private double softening;
+
+	/** the cells: center, half size, mass, center of mass and first child */
+	private double[] cellX, cellY, cellHalf, cellMass, comX, comY;
+	private int[] firstChild;
+
+	/** the first source body in a leaf and the next body in the same leaf */
+	private int[] firstBody;
+	private int[] nextBody;
+
+	/** number of cells in the current tree */
+	private int cells;
+
+	/**
+	 * Creates a new Barnes-Hut solver with a given opening angle.
+	 *
+	 * @param theta
+	 */
+	public BarnesHut(double theta) {
+		this.theta = theta;
+		allocateCells(64);
+		nextBody = new int[16];
+	}
+
+	/** Creates a new Barnes-Hut solver with the default opening angle. */
+	public BarnesHut() {
+		this(defaultTheta);
+	}
+
+	@Override
+	public void prepare(BodyStore sources) {
+		buildTree(sources);
+	}
+
+	@Override
+	public void accelerate(BodyStore targets, BodyStore sources, int from, int to) {
+		int[] stack = new int[4 * maxDepth + 4];
+		double[] x = targets.getX();
+		double[] y = targets.getY();
+		double[] accX = targets.getAccX();
+		double[] accY = targets.getAccY();
+		boolean self = targets == sources;
+
+		for (int i = from; i < to; i++)
+			accelerate(i, x[i], y[i], self ? i : -1, sources, accX, accY, stack);
+	}
+
+	/**
+	 * Walks the tree for one target body and sets its acceleration.
+	 *
+	 * @param i
+	 *            the index of the target
+	 * @param xi
+	 * @param yi
+	 * @param skip
+	 *            the source index that is the target itself or -1
+	 * @param stack
+	 *            the stack for walking the tree
+	 */
+	private void accelerate(int i, double xi, double yi, int skip, BodyStore sources, double[] accX, double[] accY,
+			int[] stack) {
+		double[] srcX = sources.getX();
+		double[] srcY = sources.getY();
+		double[] srcMass = sources.getMass();
+		double theta2 = theta * theta;
+		double eps2 = softening * softening;
+		double ax = 0;
+		double ay = 0;
+
+		int top = 0;
+		if (cells > 0 && cellMass[0] != 0)
+			stack[top++] = 0;
+
+		while (top > 0) {
+			int c = stack[--top];
+
+			if (firstChild[c] < 0) {
+				// leaf: direct sum over all bodies in it
+				for (int j = firstBody[c]; j >= 0; j = nextBody[j]) {
+					if (j == skip)
+						continue;
+					double dx = srcX[j] - xi;
+					double dy = srcY[j] - yi;
+					double r2 = dx * dx + dy * dy + eps2;
+					double f = Utils.GRAV_CONST * srcMass[j] / (r2 * Math.sqrt(r2));
+					ax += dx * f;
+					ay += dy * f;
+				}
+				continue;
+			}
+
+			double dx = comX[c] - xi;
+			double dy = comY[c] - yi;
+			double r2 = dx * dx + dy * dy;
+			double size = 2 * cellHalf[c];
+
+			// a cell that contains the target is always opened
+			boolean inside = Math.abs(xi - cellX[c]) <= cellHalf[c] && Math.abs(yi - cellY[c]) <= cellHalf[c];
+
+			if (!inside && size * size < theta2 * r2) {
+				double s2 = r2 + eps2;
+				double f = Utils.GRAV_CONST * cellMass[c] / (s2 * Math.sqrt(s2));
+				ax += dx * f;
+				ay += dy * f;
+			} else {
+				for (int k = firstChild[c]; k < firstChild[c] + 4; k++)
+					if (cellMass[k] != 0)
+						stack[top++] = k;
+			}
+		}
+
+		accX[i] = ax;
+		accY[i] = ay;
+	}
+
+	/**
+	 * Builds the quadtree of all source bodies and calculates mass and center of
+	 * mass of every cell.
+	 *
+	 * @param sources
+	 */
+	private void buildTree(BodyStore sources) {
+		int m = sources.size();
+		double[] x = sources.getX();
+		double[] y = sources.getY();
+		double[] mass = sources.getMass();
+
+		if (nextBody.length < m)
+			nextBody = new int[Math.max(m, nextBody.length * 2)];
+
+		// bounding square of all bodies
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for (int j = 0; j < m; j++) {
+			minX = Math.min(minX, x[j]);
+			minY = Math.min(minY, y[j]);
+			maxX = Math.max(maxX, x[j]);
+			maxY = Math.max(maxY, y[j]);
+		}
+
+		cells = 0;
+		if (m == 0)
+			return;
+
+		double half = Math.max(maxX - minX, maxY - minY) / 2 * 1.0001 + Double.MIN_NORMAL;
+		newCell((minX + maxX) / 2, (minY + maxY) / 2, half);
+
+		for (int j = 0; j < m; j++)
+			insert(j, x, y);
+
+		// children always have a higher index than their parent
+		for (int c = cells - 1; c >= 0; c--) {
+			double cm = 0, cx = 0, cy = 0;
+			if (firstChild[c] < 0) {
+				for (int j = firstBody[c]; j >= 0; j = nextBody[j]) {
+					cm += mass[j];
+					cx += mass[j] * x[j];
+					cy += mass[j] * y[j];
+				}
+			} else {
+				for (int k = firstChild[c]; k < firstChild[c] + 4; k++) {
+					cm += cellMass[k];
+					cx += cellMass[k] * comX[k];
+					cy += cellMass[k] * comY[k];
+				}
+			}
+			cellMass[c] = cm;
+			comX[c] = cm == 0 ? cellX[c] : cx / cm;
+			comY[c] = cm == 0 ? cellY[c] : cy / cm;
+		}
+	}
+
+	/**
+	 * Inserts a source body into the tree.
+	 *
+	 * @param j
+	 *            the index of the body
+	 */
+	private void insert(int j, double[] x, double[] y) {
+		int c = 0;
+		int depth = 0;
+
+		while (true) {
+			if (firstChild[c] >= 0) {
+				c = firstChild[c] + quadrant(c, x[j], y[j]);
+				depth++;
+			} else if (firstBody[c] < 0) {
+				firstBody[c] = j;
+				nextBody[j] = -1;
+				return;
+			} else if (depth >= maxDepth) {
+				nextBody[j] = firstBody[c];
+				firstBody[c] = j;
+				return;
+			} else {
+				// split the leaf and move its body to a child
+				int other = firstBody[c];
+				firstBody[c] = -1;
+				subdivide(c);
+				int child = firstChild[c] + quadrant(c, x[other], y[other]);
+				firstBody[child] = other;
+				nextBody[other] = -1;
+			}
+		}
+	}
+
+	/** returns the quadrant (0 to 3) of a position in a cell */
+	private int quadrant(int c, double px, double py) {
+		int q = 0;
+		if (px > cellX[c])
+			q += 1;
+		if (py > cellY[c])
+			q += 2;
+		return q;
+	}
+
+	/** creates the four children of a cell */
+	private void subdivide(int c) {
+		double h = cellHalf[c] / 2;
+		double cx = cellX[c];
+		double cy = cellY[c];
+		// newCell can grow the arrays, so firstChild is written afterwards
+		int first = newCell(cx - h, cy - h, h);
+		newCell(cx + h, cy - h, h);
+		newCell(cx - h, cy + h, h);
+		newCell(cx + h, cy + h, h);
+		firstChild[c] = first;
+	}
+
+	/** adds an empty leaf and returns its index */
+	private int newCell(double cx, double cy, double half) {
+		if (cells == cellX.length)
+			allocateCells(cells * 2);
+		cellX[cells] = cx;
+		cellY[cells] = cy;
+		cellHalf[cells] = half;
+		cellMass[cells] = 0;
+		firstChild[cells] = -1;
+		firstBody[cells] = -1;
+		return cells++;
+	}
+
+	/** grows the cell arrays */
+	private void allocateCells(int capacity) {
+		if (cellX == null) {
+			cellX = new double[capacity];
+			cellY = new double[capacity];
+			cellHalf = new double[capacity];
+			cellMass = new double[capacity];
+			comX = new double[capacity];
+			comY = new double[capacity];
+			firstChild = new int[capacity];
+			firstBody = new int[capacity];
+		} else {
+			cellX = Arrays.copyOf(cellX, capacity);
+			cellY = Arrays.copyOf(cellY, capacity);
+			cellHalf = Arrays.copyOf(cellHalf, capacity);
+			cellMass = Arrays.copyOf(cellMass, capacity);
+			comX = Arrays.copyOf(comX, capacity);
+			comY = Arrays.copyOf(comY, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			firstBody = Arrays.copyOf(firstBody, capacity);
+		}
+	}
+
+	public double getTheta() {
+		return theta;
+	}
+
+	public void setTheta(double theta) {
+		this.theta = theta;
+	}
+
+	@Override
+	public double getSoftening() {
+		return softening;
+	}
+
+	@Override
+	public void setSoftening(double softening) {
+		this.softening = softening;
+	}
+
+	@Override
+	public void writeState(BinaryWriter out) throws IOException {
+		out.writeDouble(theta);
+	}
+
+	@Override
+	public void readState(BinaryReader in) throws IOException {
+		theta = in.readDouble();
+	}
+
+	@Override
+	public BarnesHut clone() {
+		BarnesHut clone = new BarnesHut(theta);
+		clone.setSoftening(softening);
+		return clone;
+	}
+
+}
@@ -0,0 +1,77 @@
+package simulation.gravity;
+
+import bodies.BodyStore;
+import utils.Utils;
+
+/**
+ * Calculates the acceleration of each body as the direct sum over all source
+ * bodies.
+ * 
+ * @author Jan Muskalla
+ *
+ */
+public class DirectSum implements ForceSolver {
+
+	/** the length of the Plummer softening */
+	private double softening;
+
+	@Override
+	public void prepare(BodyStore sources) {
+	}
+
+	@Override
+	public void accelerate(BodyStore targets, BodyStore sources, int from, int to) {
+		int m = sources.size();
+		boolean self = targets == sources;
+		double eps2 = softening * softening;
+
+		double[] x = targets.getX();
+		double[] y = targets.getY();
+		double[] accX = targets.getAccX();
+		double[] accY = targets.getAccY();
+		double[] srcX = sources.getX();
+		double[] srcY = sources.getY();
+		double[] srcMass = sources.getMass();
+
+		for (int i = from; i < to; i++) {
+			double xi = x[i];
+			double yi = y[i];
+			double ax = 0;
+			double ay = 0;
+
+			for (int j = 0; j < m; j++) {
+				if (self && i == j)
+					continue;
+
+				// r * G * m / |r|^3
+				double dx = srcX[j] - xi;
+				double dy = srcY[j] - yi;
+				double r2 = dx * dx + dy * dy + eps2;
+				double f = Utils.GRAV_CONST * srcMass[j] / (r2 * Math.sqrt(r2));
+				ax += dx * f;
+				ay += dy * f;
+			}
+
+			accX[i] = ax;
+			accY[i] = ay;
+		}
+	}
+
+	@Override
+	public double getSoftening() {
+		return softening;
+	}
+
+	@Override
+	public void setSoftening(double softening) {
+		this.softening = softening;
+	}
+
+	@Override
+	public DirectSum clone() {
+		DirectSum clone = new DirectSum();
+		clone.setSoftening(softening);
+		return clone;
+	}
+
+}
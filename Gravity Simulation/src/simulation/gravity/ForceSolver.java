@@ -0,0 +1,84 @@
+package simulation.gravity;
+
+import java.io.IOException;
+import bodies.BodyStore;
+import utils.BinaryReader;
+import utils.BinaryWriter;
+
+/**
+ * Interface for the calculation of the gravitational acceleration of bodies.
+ * 
+ * @author Jan Muskalla
+ *
+ */
+public interface ForceSolver {
+
+	/**
+	 * Prepares the calculation for a set of source bodies, for example by building
+	 * a tree. Has to be called before accelerating a range of targets.
+	 * 
+	 * @param sources
+	 */
+	public void prepare(BodyStore sources);
+
+	/**
+	 * Sets the acceleration of the target bodies from index from (inclusive) to
+	 * index to (exclusive) to the sum of the accelerations by all source bodies. If
+	 * both stores are the same a body does not accelerate itself.
+	 * 
+	 * Only writes the accelerations of the given range, so different ranges can be
+	 * calculated at the same time after prepare was called.
+	 * 
+	 * @param targets
+	 * @param sources
+	 * @param from
+	 * @param to
+	 */
+	public void accelerate(BodyStore targets, BodyStore sources, int from, int to);
+
+	/**
+	 * Sets the acceleration of all bodies in the target store to the sum of the
+	 * accelerations by all bodies in the source store.
+	 * 
+	 * @param targets
+	 * @param sources
+	 */
+	public default void accelerate(BodyStore targets, BodyStore sources) {
+		prepare(sources);
+		accelerate(targets, sources, 0, targets.size());
+	}
+
+	/**
+	 * Sets the length of the Plummer softening. The acceleration by a body in the
+	 * distance r is calculated with r^2 + softening^2 instead of r^2, so it stays
+	 * finite in close encounters. A softening of 0 is Newtonian gravity.
+	 * 
+	 * @param softening
+	 */
+	public void setSoftening(double softening);
+
+	public double getSoftening();
+
+	/**
+	 * Writes the parameters of this solver into a checkpoint, the softening is
+	 * written by the checkpoint.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public default void writeState(BinaryWriter out) throws IOException {
+	}
+
+	/**
+	 * Reads what writeState wrote into a solver that was created with the
+	 * constructor without parameters.
+	 * 
+	 * @param in
+	 * @throws IOException
+	 */
+	public default void readState(BinaryReader in) throws IOException {
+	}
+
+	public ForceSolver clone();
+
+}
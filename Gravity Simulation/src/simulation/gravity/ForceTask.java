@@ -0,0 +1,58 @@
+package simulation.gravity;
+
+import java.util.concurrent.RecursiveAction;
+import bodies.BodyStore;
+
+/**
+ * A fork-join task that calculates the accelerations of a range of target
+ * bodies. The range is split in halves until it is not longer than a fixed
+ * chunk size, so the partitioning only depends on the number of targets.
+ * 
+ * Each task only writes the accelerations of its own targets and every target
+ * sums up the sources in the same order as the serial calculation, so the
+ * result is the same as the serial one bit for bit.
+ * 
+ * @author Jan Muskalla
+ *
+ */
+public class ForceTask extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	/** number of targets that are calculated in one task */
+	public static final int chunkSize = 64;
+
+	private final ForceSolver solver;
+	private final BodyStore targets, sources;
+	private final int from, to;
+
+	/**
+	 * Creates a task for the targets from index from (inclusive) to index to
+	 * (exclusive). The solver has to be prepared for the sources.
+	 * 
+	 * @param solver
+	 * @param targets
+	 * @param sources
+	 * @param from
+	 * @param to
+	 */
+	public ForceTask(ForceSolver solver, BodyStore targets, BodyStore sources, int from, int to) {
+		this.solver = solver;
+		this.targets = targets;
+		this.sources = sources;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	protected void compute() {
+		if (to - from <= chunkSize) {
+			solver.accelerate(targets, sources, from, to);
+		} else {
+			int mid = (from + to) >>> 1;
+			invokeAll(new ForceTask(solver, targets, sources, from, mid),
+					new ForceTask(solver, targets, sources, mid, to));
+		}
+	}
+
+}
@@ -0,0 +1,152 @@
+package simulation.gravity;
+
+import java.util.ArrayList;
+import java.util.Random;
+import bodies.BodyStore;
+import bodies.Particle;
+import utils.Utils;
+import utils.Vec;
+
+/**
+ * Compares the time of the path with Vec objects that was used before the
+ * stores, the scalar DirectSum and the VectorSum for planets with planets and
+ * particles with planets. Start with
+ *
+ * java --add-modules jdk.incubator.vector simulation.gravity.KernelBenchmark
+ * [planets] [particles]
+ *
+ * with the classes of the source folder vector on the class path. Without the
+ * module the VectorSum falls back to the scalar kernel.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class KernelBenchmark {
+
+	/** the time of the warm up in nanoseconds, until the JIT compiled the kernels */
+	private static final long warmUp = 1_000_000_000L;
+
+	/** the measured calculations and their least time in nanoseconds */
+	private static final int runs = 20;
+	private static final long minTime = 200_000_000L;
+
+	public static void main(String... args) {
+		int planets = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int particles = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+		System.out.println("vector API: " + (VectorSum.isAvailable() ? VectorSum.getLanes() + " lanes" : "not available"));
+
+		// planets with planets
+		BodyStore scalarPlanets = randomStore(planets, 1);
+		BodyStore vectorPlanets = randomStore(planets, 1);
+		compare("planet-planet (" + planets + ")", scalarPlanets, scalarPlanets, vectorPlanets, vectorPlanets);
+
+		// particles with a few planets
+		BodyStore fewPlanets = randomStore(10, 2);
+		BodyStore scalarParticles = randomStore(particles, 3);
+		BodyStore vectorParticles = randomStore(particles, 3);
+		compare("particle-planet (" + particles + " x 10)", scalarParticles, fewPlanets, vectorParticles, fewPlanets);
+	}
+
+	/**
+	 * Times the solvers and prints the times, the speedups and the largest
+	 * relative difference of the accelerations.
+	 */
+	private static void compare(String name, BodyStore scalarTargets, BodyStore scalarSources,
+			BodyStore vectorTargets, BodyStore vectorSources) {
+		double boxedTime = timeBoxed(scalarTargets, scalarSources);
+		double scalarTime = time(new DirectSum(), scalarTargets, scalarSources);
+		double vectorTime = time(new VectorSum(), vectorTargets, vectorSources);
+
+		double maxDiff = 0;
+		for (int i = 0; i < scalarTargets.size(); i++) {
+			double ax = scalarTargets.getAccX()[i];
+			double ay = scalarTargets.getAccY()[i];
+			double dx = vectorTargets.getAccX()[i] - ax;
+			double dy = vectorTargets.getAccY()[i] - ay;
+			maxDiff = Math.max(maxDiff, Math.sqrt((dx * dx + dy * dy) / (ax * ax + ay * ay)));
+		}
+
+		System.out.printf(
+				"%s: Vec %.3f ms, scalar %.3f ms, vector %.3f ms, speedup %.2f against Vec, %.2f against scalar, max rel. difference %.1e%n",
+				name, boxedTime, scalarTime, vectorTime, boxedTime / vectorTime, scalarTime / vectorTime, maxDiff);
+	}
+
+	/**
+	 * The calculation before the stores: every body has its position in a Vec
+	 * and every pair creates new vectors, r * G * m / |r|^3.
+	 *
+	 * @return the average time of one calculation in milliseconds
+	 */
+	private static double timeBoxed(BodyStore targets, BodyStore sources) {
+		Vec[] targetPos = positions(targets), sourcePos = positions(sources);
+		double[] mass = sources.getMass();
+		Vec[] acc = new Vec[targets.size()];
+		boolean self = targets == sources;
+
+		return time(() -> {
+			for (int i = 0; i < targetPos.length; i++) {
+				Vec a = new Vec(0, 0);
+				for (int j = 0; j < sourcePos.length; j++) {
+					if (self && i == j)
+						continue;
+					Vec r = sourcePos[j].sub(targetPos[i]);
+					a = a.add(r.mult(Utils.GRAV_CONST * mass[j] / Math.pow(r.getRadius(), 3)));
+				}
+				acc[i] = a;
+			}
+		});
+	}
+
+	private static Vec[] positions(BodyStore store) {
+		Vec[] pos = new Vec[store.size()];
+		for (int i = 0; i < pos.length; i++)
+			pos[i] = new Vec(store.getX()[i], store.getY()[i]);
+		return pos;
+	}
+
+	/**
+	 * @return the average time of one calculation in milliseconds
+	 */
+	private static double time(ForceSolver solver, BodyStore targets, BodyStore sources) {
+		return time(() -> solver.accelerate(targets, sources));
+	}
+
+	/**
+	 * Runs a calculation until it is compiled and then at least runs times and
+	 * for at least minTime.
+	 *
+	 * @return the average time of one calculation in milliseconds
+	 */
+	private static double time(Runnable calculation) {
+		long start = System.nanoTime();
+		while (System.nanoTime() - start < warmUp)
+			calculation.run();
+
+		start = System.nanoTime();
+		long count = 0;
+		long elapsed;
+		do {
+			calculation.run();
+			count++;
+			elapsed = System.nanoTime() - start;
+		} while (count < runs || elapsed < minTime);
+		return elapsed / 1e6 / count;
+	}
+
+	/**
+	 * @return a store with bodies at random positions and with random masses
+	 */
+	private static BodyStore randomStore(int number, long seed) {
+		Random random = new Random(seed);
+		ArrayList<Particle> bodies = new ArrayList<>();
+		for (int i = 0; i < number; i++)
+			bodies.add(new Particle(random.nextGaussian() * 1e9, random.nextGaussian() * 1e9, 0, 0));
+
+		BodyStore store = new BodyStore(bodies);
+		for (int i = 0; i < number; i++)
+			store.getMass()[i] = random.nextDouble() * 1e22;
+		return store;
+	}
+
+}
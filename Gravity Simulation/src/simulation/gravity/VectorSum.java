@@ -0,0 +1,137 @@
+package simulation.gravity;
+
+import bodies.BodyStore;
+
+/**
+ * Calculates the direct sum like DirectSum, but with the vector API of the JDK
+ * (jdk.incubator.vector), so several bodies are calculated in one instruction.
+ * With many sources the sources are calculated in lanes, with few sources (like
+ * particles and planets) the targets are calculated in lanes. Few targets and
+ * few planets with each other are calculated by DirectSum.
+ * 
+ * The kernels are in VectorKernel in the source folder vector, which is only
+ * compiled with --add-modules jdk.incubator.vector. If the class or the module
+ * is not available (the application is not started with --add-modules
+ * jdk.incubator.vector) the scalar DirectSum is used.
+ * 
+ * The order of the additions is different from DirectSum, so the results can
+ * differ in the last bits.
+ * 
+ * @author Jan Muskalla
+ *
+ */
+public class VectorSum implements ForceSolver {
+
+	/** the kernels on the vector API, null if they are not available */
+	private static final Kernel kernel = loadKernel();
+
+	/** the least number of sources and targets in vectors for the kernels */
+	private static final int minSources = 8, minTargets = 4;
+
+	/** the fallback if the vector API is not available and for small problems */
+	private final DirectSum scalar = new DirectSum();
+
+	/** the length of the Plummer softening */
+	private double softening;
+
+	@Override
+	public void prepare(BodyStore sources) {
+	}
+
+	@Override
+	public void accelerate(BodyStore targets, BodyStore sources, int from, int to) {
+		if (kernel == null) {
+			scalar.accelerate(targets, sources, from, to);
+			return;
+		}
+
+		int m = sources.size();
+		boolean self = targets == sources;
+		double eps2 = softening * softening;
+
+		// small problems are faster without vectors, few planets with each other too
+		int lanes = kernel.getLanes();
+		if (m >= minSources * lanes)
+			kernel.accelerateBySources(targets.getX(), targets.getY(), targets.getAccX(), targets.getAccY(),
+					from, to, sources.getX(), sources.getY(), sources.getMass(), m, self, eps2);
+		else if (!self && to - from >= minTargets * lanes)
+			kernel.accelerateTargets(targets.getX(), targets.getY(), targets.getAccX(), targets.getAccY(), from,
+					to, sources.getX(), sources.getY(), sources.getMass(), m, self, eps2);
+		else
+			scalar.accelerate(targets, sources, from, to);
+	}
+
+	/**
+	 * @return the kernels or null if the module or the class VectorKernel is
+	 *         missing
+	 */
+	private static Kernel loadKernel() {
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty())
+			return null;
+		try {
+			return (Kernel) Class.forName("simulation.gravity.VectorKernel").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the vector API is used, false if the scalar fallback is used
+	 */
+	public static boolean isAvailable() {
+		return kernel != null;
+	}
+
+	/**
+	 * @return the number of doubles in one vector, 1 for the scalar fallback
+	 */
+	public static int getLanes() {
+		return kernel != null ? kernel.getLanes() : 1;
+	}
+
+	@Override
+	public double getSoftening() {
+		return softening;
+	}
+
+	@Override
+	public void setSoftening(double softening) {
+		this.softening = softening;
+		scalar.setSoftening(softening);
+	}
+
+	@Override
+	public VectorSum clone() {
+		VectorSum clone = new VectorSum();
+		clone.setSoftening(softening);
+		return clone;
+	}
+
+	/**
+	 * The gravity kernels of VectorKernel. eps2 is the squared softening length,
+	 * self is true if the targets are the sources.
+	 */
+	interface Kernel {
+
+		/**
+		 * @return the number of doubles in one vector
+		 */
+		int getLanes();
+
+		/**
+		 * Sets the acceleration of the targets from index from to index to. The
+		 * sources are calculated in lanes, so this is used for many sources.
+		 */
+		void accelerateBySources(double[] x, double[] y, double[] accX, double[] accY, int from, int to,
+				double[] srcX, double[] srcY, double[] srcMass, int m, boolean self, double eps2);
+
+		/**
+		 * Sets the acceleration of the targets from index from to index to. The
+		 * targets are calculated in lanes, so this is used for few sources and
+		 * many targets, like particles and planets.
+		 */
+		void accelerateTargets(double[] x, double[] y, double[] accX, double[] accY, int from, int to,
+				double[] srcX, double[] srcY, double[] srcMass, int m, boolean self, double eps2);
+	}
+
+}
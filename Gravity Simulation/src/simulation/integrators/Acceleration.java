@@ -0,0 +1,40 @@
+package simulation.integrators;
+
+import bodies.BodyStore;
+
+/**
+ * Calculates the accelerations of all planets at their current positions and
+ * saves them in the store.
+ * 
+ * @author Jan Muskalla
+ *
+ */
+@FunctionalInterface
+public interface Acceleration {
+
+	/**
+	 * @param planets
+	 * @param dt
+	 *            the time since the start of the step at which the planets are at
+	 *            their current positions, for sources outside of the store that
+	 *            move on a given trajectory
+	 */
+	public void calculate(BodyStore planets, double dt);
+
+	/**
+	 * @return the length of the Plummer softening that the calculation uses
+	 */
+	public default double getSoftening() {
+		return 0;
+	}
+
+	/**
+	 * @return true if only the planets in the store attract each other, false if
+	 *         bodies outside of the store are sources as well, for example planets
+	 *         that follow an ephemeris
+	 */
+	public default boolean isClosed() {
+		return true;
+	}
+
+}
@@ -0,0 +1,324 @@
+package simulation.integrators;
+
+import java.io.IOException;
+import bodies.BodyStore;
+import utils.BinaryReader;
+import utils.BinaryWriter;
+import utils.Utils;
+
+/**
+ * A fourth order Hermite method with individual block time steps. The time step
+ * of the simulation is the largest step, every planet moves with this step
+ * divided by a power of two that is chosen from its acceleration and jerk
+ * (eta * |a| / |jerk|). In each sub step only the planets whose step ends
+ * get new accelerations, all other planets are only predicted to the current
+ * time. Close moons take many small steps while the rest of the system takes
+ * the large one.
+ *
+ * The accelerations are calculated with a direct sum for the active planets
+ * only, so the force solver of the constellation is not used, but its
+ * softening is used in the accelerations and the jerks. The sum only
+ * contains the planets in the store, so steps with sources outside of the store,
+ * like planets that follow an ephemeris, are leapfrog steps with the force
+ * solver.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class BlockTimeStep implements Integrator {
+
+	private static final double defaultEta = 0.02;
+	private static final int defaultMaxLevel = 16;
+
+	/** accuracy parameter of the time step criterion */
+	private double eta;
+
+	/** the smallest step is the time step divided by 2^maxLevel */
+	private int maxLevel;
+
+	/** true if accelerations, jerks and levels belong to the current state */
+	private boolean primed = false;
+
+	/** the jerk of each planet at its last update */
+	private double[] jerkX = new double[0], jerkY = jerkX;
+
+	/** predicted position and velocity of each planet at the current sub step */
+	private double[] predX = jerkX, predY = jerkX, predVelX = jerkX, predVelY = jerkX;
+
+	/** the level of each planet and the tick of its last update */
+	private int[] level = new int[0], lastTick = level;
+
+	/** the squared softening length of the last step */
+	private double eps2;
+
+	/** number of calculated pair interactions since the start */
+	private long interactions = 0;
+
+	/** the method for the steps with sources outside of the store */
+	private final Leapfrog leapfrog = new Leapfrog();
+
+	/**
+	 * Creates a block time step integrator with a given accuracy parameter and
+	 * number of levels.
+	 *
+	 * @param eta
+	 * @param maxLevel
+	 */
+	public BlockTimeStep(double eta, int maxLevel) {
+		this.eta = eta;
+		this.maxLevel = Math.min(Math.max(maxLevel, 0), 30);
+	}
+
+	/** Creates a block time step integrator with default values. */
+	public BlockTimeStep() {
+		this(defaultEta, defaultMaxLevel);
+	}
+
+	/**
+	 * Moves all planets one time step. The acceleration is only used if there are
+	 * other sources than the planets, because only the active planets are
+	 * calculated in each sub step.
+	 */
+	@Override
+	public void step(BodyStore planets, Acceleration acceleration, double t) {
+		if (!acceleration.isClosed()) {
+			// the accelerations and jerks have to be calculated again afterwards
+			primed = false;
+			leapfrog.step(planets, acceleration, t);
+			return;
+		}
+		leapfrog.reset();
+		eps2 = acceleration.getSoftening() * acceleration.getSoftening();
+
+		int n = planets.size();
+		if (level.length < n)
+			allocate(planets.getX().length);
+
+		int end = 1 << maxLevel;
+		double tickTime = t / end;
+
+		if (!primed) {
+			for (int i = 0; i < n; i++) {
+				predX[i] = planets.getX()[i];
+				predY[i] = planets.getY()[i];
+				predVelX[i] = planets.getVelX()[i];
+				predVelY[i] = planets.getVelY()[i];
+			}
+			for (int i = 0; i < n; i++) {
+				calculate(planets, i, n);
+				level[i] = newLevel(planets, i, t);
+			}
+			primed = true;
+		}
+
+		for (int i = 0; i < n; i++)
+			lastTick[i] = 0;
+
+		int tick = 0;
+		while (tick < end) {
+
+			// the next time at which the step of a planet ends
+			int next = end;
+			for (int i = 0; i < n; i++)
+				next = Math.min(next, lastTick[i] + (end >> level[i]));
+			tick = next;
+
+			predict(planets, tick, tickTime, n);
+
+			// correct all planets whose step ends now
+			for (int i = 0; i < n; i++)
+				if (lastTick[i] + (end >> level[i]) == tick)
+					correct(planets, i, n, t, tickTime, tick);
+		}
+	}
+
+	/**
+	 * Predicts the positions and velocities of all planets at a tick with a third
+	 * order Taylor series.
+	 */
+	private void predict(BodyStore planets, int tick, double tickTime, int n) {
+		double[] x = planets.getX();
+		double[] y = planets.getY();
+		double[] velX = planets.getVelX();
+		double[] velY = planets.getVelY();
+		double[] accX = planets.getAccX();
+		double[] accY = planets.getAccY();
+
+		for (int i = 0; i < n; i++) {
+			double dt = (tick - lastTick[i]) * tickTime;
+			double dt2 = dt * dt / 2;
+			double dt3 = dt2 * dt / 3;
+			predX[i] = x[i] + velX[i] * dt + accX[i] * dt2 + jerkX[i] * dt3;
+			predY[i] = y[i] + velY[i] * dt + accY[i] * dt2 + jerkY[i] * dt3;
+			predVelX[i] = velX[i] + accX[i] * dt + jerkX[i] * dt2;
+			predVelY[i] = velY[i] + accY[i] * dt + jerkY[i] * dt2;
+		}
+	}
+
+	/**
+	 * Calculates the new acceleration and jerk of an active planet at the
+	 * predicted state, corrects position and velocity with the Hermite scheme and
+	 * chooses the next level.
+	 */
+	private void correct(BodyStore planets, int i, int n, double t, double tickTime, int tick) {
+		int end = 1 << maxLevel;
+		double dt = (end >> level[i]) * tickTime;
+
+		double[] x = planets.getX();
+		double[] y = planets.getY();
+		double[] velX = planets.getVelX();
+		double[] velY = planets.getVelY();
+		double[] accX = planets.getAccX();
+		double[] accY = planets.getAccY();
+
+		double oldAccX = accX[i], oldAccY = accY[i];
+		double oldJerkX = jerkX[i], oldJerkY = jerkY[i];
+
+		calculate(planets, i, n);
+
+		double dt2 = dt * dt / 12;
+		double newVelX = velX[i] + (oldAccX + accX[i]) * dt / 2 + (oldJerkX - jerkX[i]) * dt2;
+		double newVelY = velY[i] + (oldAccY + accY[i]) * dt / 2 + (oldJerkY - jerkY[i]) * dt2;
+		x[i] += (velX[i] + newVelX) * dt / 2 + (oldAccX - accX[i]) * dt2;
+		y[i] += (velY[i] + newVelY) * dt / 2 + (oldAccY - accY[i]) * dt2;
+		velX[i] = newVelX;
+		velY[i] = newVelY;
+		predX[i] = x[i];
+		predY[i] = y[i];
+		predVelX[i] = newVelX;
+		predVelY[i] = newVelY;
+
+		lastTick[i] = tick;
+
+		// a smaller step is always possible, a larger step only by a factor of two
+		// and only if the current time is a multiple of the larger step
+		int newLevel = newLevel(planets, i, t);
+		if (newLevel > level[i])
+			level[i] = newLevel;
+		else if (newLevel < level[i] && tick % (end >> (level[i] - 1)) == 0)
+			level[i]--;
+	}
+
+	/**
+	 * Calculates acceleration and jerk of a planet from the predicted state of all
+	 * other planets, with r^2 + eps^2 instead of r^2 like the force solvers.
+	 */
+	private void calculate(BodyStore planets, int i, int n) {
+		double[] mass = planets.getMass();
+		double xi = predX[i], yi = predY[i];
+		double vxi = predVelX[i], vyi = predVelY[i];
+		double ax = 0, ay = 0, jx = 0, jy = 0;
+
+		for (int j = 0; j < n; j++) {
+			if (j == i)
+				continue;
+
+			double dx = predX[j] - xi;
+			double dy = predY[j] - yi;
+			double dvx = predVelX[j] - vxi;
+			double dvy = predVelY[j] - vyi;
+			double r2 = dx * dx + dy * dy + eps2;
+			double f = Utils.GRAV_CONST * mass[j] / (r2 * Math.sqrt(r2));
+			double rv = 3 * (dx * dvx + dy * dvy) / r2;
+
+			ax += dx * f;
+			ay += dy * f;
+			jx += (dvx - rv * dx) * f;
+			jy += (dvy - rv * dy) * f;
+		}
+
+		planets.getAccX()[i] = ax;
+		planets.getAccY()[i] = ay;
+		jerkX[i] = jx;
+		jerkY[i] = jy;
+		interactions += n - 1;
+	}
+
+	/**
+	 * @return the smallest level whose step is not larger than eta * |a| /
+	 *         |jerk|
+	 */
+	private int newLevel(BodyStore planets, int i, double t) {
+		double a = Math.hypot(planets.getAccX()[i], planets.getAccY()[i]);
+		double j = Math.hypot(jerkX[i], jerkY[i]);
+		if (j == 0 || a == 0)
+			return 0;
+
+		// ratio of the largest step to the wanted step
+		double ratio = t / (eta * a / j);
+		if (ratio <= 1)
+			return 0;
+		return (int) Math.min(Math.ceil(Math.log(ratio) / Math.log(2)), maxLevel);
+	}
+
+	private void allocate(int capacity) {
+		jerkX = new double[capacity];
+		jerkY = new double[capacity];
+		predX = new double[capacity];
+		predY = new double[capacity];
+		predVelX = new double[capacity];
+		predVelY = new double[capacity];
+		level = new int[capacity];
+		lastTick = new int[capacity];
+	}
+
+	/**
+	 * @return the number of calculated pair interactions since the start
+	 */
+	public long getInteractions() {
+		return interactions;
+	}
+
+	@Override
+	public void reset() {
+		primed = false;
+	}
+
+	/**
+	 * Writes the parameters and, if the planets were moved since the last reset,
+	 * the jerks and levels of the planets.
+	 */
+	@Override
+	public void writeState(BinaryWriter out) throws IOException {
+		out.writeDouble(eta);
+		out.writeInt(maxLevel);
+		out.writeLong(interactions);
+		out.writeBoolean(primed);
+		if (!primed)
+			return;
+
+		// the predicted state equals the corrected state after a full step
+		int n = level.length;
+		out.writeInt(n);
+		out.writeDoubles(jerkX, 0, n);
+		out.writeDoubles(jerkY, 0, n);
+		out.writeInts(level, 0, n);
+	}
+
+	@Override
+	public void readState(BinaryReader in) throws IOException {
+		eta = in.readDouble();
+		maxLevel = in.readInt();
+		interactions = in.readLong();
+		primed = in.readBoolean();
+		if (!primed)
+			return;
+
+		int n = in.readInt();
+		allocate(n);
+		in.readDoubles(jerkX, 0, n);
+		in.readDoubles(jerkY, 0, n);
+		in.readInts(level, 0, n);
+	}
+
+	@Override
+	public String getName() {
+		return "Block time steps";
+	}
+
+	@Override
+	public BlockTimeStep clone() {
+		return new BlockTimeStep(eta, maxLevel);
+	}
+
+}
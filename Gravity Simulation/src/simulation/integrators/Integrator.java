@@ -0,0 +1,58 @@
+package simulation.integrators;
+
+import java.io.IOException;
+import bodies.BodyStore;
+import utils.BinaryReader;
+import utils.BinaryWriter;
+
+/**
+ * Interface for the numerical methods that move the planets one time step.
+ * 
+ * @author Jan Muskalla
+ *
+ */
+public interface Integrator {
+
+	/**
+	 * Moves all planets in the store one time step. The accelerations are
+	 * calculated with the given acceleration as often as the method needs them.
+	 * 
+	 * @param planets
+	 * @param acceleration
+	 * @param time
+	 *            the time step
+	 */
+	public void step(BodyStore planets, Acceleration acceleration, double time);
+
+	/**
+	 * Forgets all saved data of the last steps. Called when planets were added,
+	 * removed or merged.
+	 */
+	public void reset();
+
+	/**
+	 * Writes the parameters and the saved data of the last steps into a
+	 * checkpoint. Methods that only keep the accelerations in the store write
+	 * nothing, they calculate them again after a reset.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public default void writeState(BinaryWriter out) throws IOException {
+	}
+
+	/**
+	 * Reads what writeState wrote into an integrator that was created with the
+	 * constructor without parameters.
+	 * 
+	 * @param in
+	 * @throws IOException
+	 */
+	public default void readState(BinaryReader in) throws IOException {
+	}
+
+	public String getName();
+
+	public Integrator clone();
+
+}
@@ -0,0 +1,66 @@
+package simulation.integrators;
+
+import bodies.BodyStore;
+
+/**
+ * The symplectic leapfrog method in kick-drift-kick form. The acceleration at
+ * the end of a step is the acceleration at the start of the next one, so only
+ * one acceleration is calculated per step.
+ * 
+ * @author Jan Muskalla
+ *
+ */
+public class Leapfrog implements Integrator {
+
+	/** true if the accelerations in the store belong to the current positions */
+	private boolean primed = false;
+
+	@Override
+	public void step(BodyStore planets, Acceleration acceleration, double t) {
+		if (!primed)
+			acceleration.calculate(planets, 0);
+
+		int n = planets.size();
+		double[] x = planets.getX();
+		double[] y = planets.getY();
+		double[] velX = planets.getVelX();
+		double[] velY = planets.getVelY();
+		double[] accX = planets.getAccX();
+		double[] accY = planets.getAccY();
+		double h = t * 0.5;
+
+		// kick and drift
+		for (int i = 0; i < n; i++) {
+			velX[i] += accX[i] * h;
+			velY[i] += accY[i] * h;
+			x[i] += velX[i] * t;
+			y[i] += velY[i] * t;
+		}
+
+		acceleration.calculate(planets, t);
+
+		// kick
+		for (int i = 0; i < n; i++) {
+			velX[i] += accX[i] * h;
+			velY[i] += accY[i] * h;
+		}
+
+		primed = true;
+	}
+
+	@Override
+	public void reset() {
+		primed = false;
+	}
+
+	@Override
+	public String getName() {
+		return "Leapfrog";
+	}
+
+	@Override
+	public Leapfrog clone() {
+		return new Leapfrog();
+	}
+
+}
@@ -0,0 +1,220 @@
+package simulation.integrators;
+
+import java.io.IOException;
+import bodies.BodyStore;
+import utils.BinaryReader;
+import utils.BinaryWriter;
+import utils.LeviCivita;
+import utils.Utils;
+
+/**
+ * The leapfrog method with regularized close encounters. Two planets that are
+ * closer than the encounter radius and each other's nearest neighbor form a
+ * pair. The center of mass of a pair drifts like a single planet, but the
+ * relative motion is moved on the exact two-body orbit with the Levi-Civita
+ * regularization (the Kustaanheimo-Stiefel regularization in two dimensions).
+ * The kicks only contain the accelerations by all other planets, so the
+ * perturbations of a pair are still included.
+ *
+ * A close pass therefore does not need a small time step, only the rest of the
+ * system limits the step. The pairs are searched with all pairs of planets, so
+ * this is meant for systems with few planets.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class RegularizedLeapfrog implements Integrator {
+
+	/** planets closer than this form a regularized pair */
+	private double encounterRadius;
+
+	/** the other planet of the pair of each planet or -1 */
+	private int[] partner = new int[0];
+	private int[] nearest = new int[0];
+
+	/** relative position and velocity of a pair */
+	private final double[] relative = new double[4];
+
+	/** true if the accelerations in the store belong to the current positions */
+	private boolean primed = false;
+
+	/**
+	 * Creates a new regularized leapfrog method.
+	 *
+	 * @param encounterRadius
+	 *            planets closer than this are moved as a regularized pair
+	 */
+	public RegularizedLeapfrog(double encounterRadius) {
+		this.encounterRadius = encounterRadius;
+	}
+
+	/** Creates the method for a checkpoint, the radius is read with readState. */
+	private RegularizedLeapfrog() {
+		this(0);
+	}
+
+	@Override
+	public void step(BodyStore planets, Acceleration acceleration, double t) {
+		if (!primed)
+			acceleration.calculate(planets, 0);
+
+		findPairs(planets);
+		double softening = acceleration.getSoftening();
+
+		kick(planets, softening, t * 0.5);
+		drift(planets, t);
+		acceleration.calculate(planets, t);
+		kick(planets, softening, t * 0.5);
+
+		primed = true;
+	}
+
+	/**
+	 * Pairs all planets that are each other's nearest neighbor and closer than the
+	 * encounter radius.
+	 */
+	private void findPairs(BodyStore planets) {
+		int n = planets.size();
+		if (partner.length < n) {
+			partner = new int[planets.getX().length];
+			nearest = new int[partner.length];
+		}
+		double[] x = planets.getX();
+		double[] y = planets.getY();
+		double[] mass = planets.getMass();
+		double r2Max = encounterRadius * encounterRadius;
+
+		for (int i = 0; i < n; i++) {
+			nearest[i] = -1;
+			double best = r2Max;
+			for (int j = 0; j < n; j++) {
+				if (j == i)
+					continue;
+				double dx = x[j] - x[i];
+				double dy = y[j] - y[i];
+				double r2 = dx * dx + dy * dy;
+				if (r2 < best) {
+					best = r2;
+					nearest[i] = j;
+				}
+			}
+		}
+
+		for (int i = 0; i < n; i++) {
+			int j = nearest[i];
+			partner[i] = j >= 0 && nearest[j] == i && mass[i] + mass[j] > 0 ? j : -1;
+		}
+	}
+
+	/**
+	 * Adds the accelerations to the velocities without the attraction within a
+	 * pair. The attraction is subtracted as the solver calculated it, with the
+	 * softening.
+	 */
+	private void kick(BodyStore planets, double softening, double dt) {
+		int n = planets.size();
+		double[] x = planets.getX();
+		double[] y = planets.getY();
+		double[] velX = planets.getVelX();
+		double[] velY = planets.getVelY();
+		double[] accX = planets.getAccX();
+		double[] accY = planets.getAccY();
+		double[] mass = planets.getMass();
+		double eps2 = softening * softening;
+
+		for (int i = 0; i < n; i++) {
+			double ax = accX[i];
+			double ay = accY[i];
+
+			int j = partner[i];
+			if (j >= 0) {
+				double dx = x[j] - x[i];
+				double dy = y[j] - y[i];
+				double r2 = dx * dx + dy * dy + eps2;
+				double f = Utils.GRAV_CONST * mass[j] / (r2 * Math.sqrt(r2));
+				ax -= dx * f;
+				ay -= dy * f;
+			}
+
+			velX[i] += ax * dt;
+			velY[i] += ay * dt;
+		}
+	}
+
+	/**
+	 * Moves single planets on straight lines and pairs on their two-body orbit
+	 * around the moving center of mass.
+	 */
+	private void drift(BodyStore planets, double dt) {
+		int n = planets.size();
+		double[] x = planets.getX();
+		double[] y = planets.getY();
+		double[] velX = planets.getVelX();
+		double[] velY = planets.getVelY();
+		double[] mass = planets.getMass();
+
+		for (int i = 0; i < n; i++) {
+			int j = partner[i];
+			if (j < 0) {
+				x[i] += velX[i] * dt;
+				y[i] += velY[i] * dt;
+				continue;
+			}
+
+			// every pair is moved once
+			if (j < i)
+				continue;
+
+			double mi = mass[i], mj = mass[j], m = mi + mj;
+			double cmX = (mi * x[i] + mj * x[j]) / m + (mi * velX[i] + mj * velX[j]) / m * dt;
+			double cmY = (mi * y[i] + mj * y[j]) / m + (mi * velY[i] + mj * velY[j]) / m * dt;
+			double cmVelX = (mi * velX[i] + mj * velX[j]) / m;
+			double cmVelY = (mi * velY[i] + mj * velY[j]) / m;
+
+			relative[0] = x[j] - x[i];
+			relative[1] = y[j] - y[i];
+			relative[2] = velX[j] - velX[i];
+			relative[3] = velY[j] - velY[i];
+			LeviCivita.drift(Utils.GRAV_CONST * m, relative, dt);
+
+			x[i] = cmX - mj / m * relative[0];
+			y[i] = cmY - mj / m * relative[1];
+			velX[i] = cmVelX - mj / m * relative[2];
+			velY[i] = cmVelY - mj / m * relative[3];
+			x[j] = cmX + mi / m * relative[0];
+			y[j] = cmY + mi / m * relative[1];
+			velX[j] = cmVelX + mi / m * relative[2];
+			velY[j] = cmVelY + mi / m * relative[3];
+		}
+	}
+
+	public double getEncounterRadius() {
+		return encounterRadius;
+	}
+
+	@Override
+	public void reset() {
+		primed = false;
+	}
+
+	@Override
+	public void writeState(BinaryWriter out) throws IOException {
+		out.writeDouble(encounterRadius);
+	}
+
+	@Override
+	public void readState(BinaryReader in) throws IOException {
+		encounterRadius = in.readDouble();
+	}
+
+	@Override
+	public String getName() {
+		return "Regularized leapfrog";
+	}
+
+	@Override
+	public RegularizedLeapfrog clone() {
+		return new RegularizedLeapfrog(encounterRadius);
+	}
+
+}
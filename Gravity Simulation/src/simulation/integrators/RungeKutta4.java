@@ -0,0 +1,121 @@
+package simulation.integrators;
+
+import bodies.BodyStore;
+
+/**
+ * The classical Runge-Kutta method of fourth order. It calculates four
+ * accelerations per step at trial positions and is very accurate for smooth
+ * orbits, but it is not symplectic, so the energy still drifts slowly.
+ * 
+ * @author Jan Muskalla
+ *
+ */
+public class RungeKutta4 implements Integrator {
+
+	/** position and velocity at the start of the step */
+	private double[] x0 = new double[0], y0 = x0, velX0 = x0, velY0 = x0;
+
+	/** the weighted sums of the velocities and accelerations of all stages */
+	private double[] sumVelX = x0, sumVelY = x0, sumAccX = x0, sumAccY = x0;
+
+	@Override
+	public void step(BodyStore planets, Acceleration acceleration, double t) {
+		int n = planets.size();
+		if (x0.length < n)
+			allocate(planets.getX().length);
+
+		double[] x = planets.getX();
+		double[] y = planets.getY();
+		double[] velX = planets.getVelX();
+		double[] velY = planets.getVelY();
+		double[] accX = planets.getAccX();
+		double[] accY = planets.getAccY();
+
+		System.arraycopy(x, 0, x0, 0, n);
+		System.arraycopy(y, 0, y0, 0, n);
+		System.arraycopy(velX, 0, velX0, 0, n);
+		System.arraycopy(velY, 0, velY0, 0, n);
+
+		// stage 1 at the start
+		acceleration.calculate(planets, 0);
+		for (int i = 0; i < n; i++) {
+			sumVelX[i] = velX[i];
+			sumVelY[i] = velY[i];
+			sumAccX[i] = accX[i];
+			sumAccY[i] = accY[i];
+		}
+
+		// stages 2 and 3 in the middle, stage 4 at the end of the step
+		stage(planets, acceleration, t * 0.5, 2, n);
+		stage(planets, acceleration, t * 0.5, 2, n);
+		stage(planets, acceleration, t, 1, n);
+
+		for (int i = 0; i < n; i++) {
+			x[i] = x0[i] + sumVelX[i] * t / 6;
+			y[i] = y0[i] + sumVelY[i] * t / 6;
+			velX[i] = velX0[i] + sumAccX[i] * t / 6;
+			velY[i] = velY0[i] + sumAccY[i] * t / 6;
+		}
+	}
+
+	/**
+	 * Moves the planets from the start of the step with the velocity and
+	 * acceleration of the last stage, calculates the new acceleration and adds the
+	 * stage to the sums.
+	 * 
+	 * @param dt
+	 *            the time from the start of the step
+	 * @param weight
+	 *            the weight of this stage in the sums
+	 */
+	private void stage(BodyStore planets, Acceleration acceleration, double dt, double weight, int n) {
+		double[] x = planets.getX();
+		double[] y = planets.getY();
+		double[] velX = planets.getVelX();
+		double[] velY = planets.getVelY();
+		double[] accX = planets.getAccX();
+		double[] accY = planets.getAccY();
+
+		for (int i = 0; i < n; i++) {
+			x[i] = x0[i] + velX[i] * dt;
+			y[i] = y0[i] + velY[i] * dt;
+			velX[i] = velX0[i] + accX[i] * dt;
+			velY[i] = velY0[i] + accY[i] * dt;
+		}
+
+		acceleration.calculate(planets, dt);
+
+		for (int i = 0; i < n; i++) {
+			sumVelX[i] += weight * velX[i];
+			sumVelY[i] += weight * velY[i];
+			sumAccX[i] += weight * accX[i];
+			sumAccY[i] += weight * accY[i];
+		}
+	}
+
+	private void allocate(int capacity) {
+		x0 = new double[capacity];
+		y0 = new double[capacity];
+		velX0 = new double[capacity];
+		velY0 = new double[capacity];
+		sumVelX = new double[capacity];
+		sumVelY = new double[capacity];
+		sumAccX = new double[capacity];
+		sumAccY = new double[capacity];
+	}
+
+	@Override
+	public void reset() {
+	}
+
+	@Override
+	public String getName() {
+		return "Runge-Kutta 4";
+	}
+
+	@Override
+	public RungeKutta4 clone() {
+		return new RungeKutta4();
+	}
+
+}
@@ -0,0 +1,51 @@
+package simulation.integrators;
+
+import bodies.BodyStore;
+
+/**
+ * The first order method with one acceleration per step: r + v*t + 1/2*a*t^2
+ * and v + a*t. The energy drifts quickly, so small time steps are needed.
+ * 
+ * @author Jan Muskalla
+ *
+ */
+public class Taylor implements Integrator {
+
+	@Override
+	public void step(BodyStore planets, Acceleration acceleration, double t) {
+		acceleration.calculate(planets, 0);
+
+		int n = planets.size();
+		double[] x = planets.getX();
+		double[] y = planets.getY();
+		double[] velX = planets.getVelX();
+		double[] velY = planets.getVelY();
+		double[] accX = planets.getAccX();
+		double[] accY = planets.getAccY();
+
+		for (int i = 0; i < n; i++) {
+			// r + v*t + 1/2*a*t^2
+			x[i] += velX[i] * t + accX[i] * t * t * 0.5;
+			y[i] += velY[i] * t + accY[i] * t * t * 0.5;
+
+			// v + a*t
+			velX[i] += accX[i] * t;
+			velY[i] += accY[i] * t;
+		}
+	}
+
+	@Override
+	public void reset() {
+	}
+
+	@Override
+	public String getName() {
+		return "Taylor";
+	}
+
+	@Override
+	public Taylor clone() {
+		return new Taylor();
+	}
+
+}
@@ -0,0 +1,73 @@
+package simulation.integrators;
+
+import bodies.BodyStore;
+
+/**
+ * The velocity Verlet method: r + v*t + 1/2*a*t^2 and v + 1/2*(a + a_new)*t.
+ * Like the leapfrog method only one acceleration is calculated per step.
+ * 
+ * @author Jan Muskalla
+ *
+ */
+public class VelocityVerlet implements Integrator {
+
+	/** true if the accelerations in the store belong to the current positions */
+	private boolean primed = false;
+
+	/** the accelerations at the start of the step */
+	private double[] oldAccX = new double[0];
+	private double[] oldAccY = new double[0];
+
+	@Override
+	public void step(BodyStore planets, Acceleration acceleration, double t) {
+		if (!primed)
+			acceleration.calculate(planets, 0);
+
+		int n = planets.size();
+		if (oldAccX.length < n) {
+			oldAccX = new double[planets.getX().length];
+			oldAccY = new double[planets.getX().length];
+		}
+
+		double[] x = planets.getX();
+		double[] y = planets.getY();
+		double[] velX = planets.getVelX();
+		double[] velY = planets.getVelY();
+		double[] accX = planets.getAccX();
+		double[] accY = planets.getAccY();
+
+		// r + v*t + 1/2*a*t^2
+		for (int i = 0; i < n; i++) {
+			x[i] += velX[i] * t + accX[i] * t * t * 0.5;
+			y[i] += velY[i] * t + accY[i] * t * t * 0.5;
+		}
+		System.arraycopy(accX, 0, oldAccX, 0, n);
+		System.arraycopy(accY, 0, oldAccY, 0, n);
+
+		acceleration.calculate(planets, t);
+
+		// v + 1/2*(a + a_new)*t
+		for (int i = 0; i < n; i++) {
+			velX[i] += (oldAccX[i] + accX[i]) * t * 0.5;
+			velY[i] += (oldAccY[i] + accY[i]) * t * 0.5;
+		}
+
+		primed = true;
+	}
+
+	@Override
+	public void reset() {
+		primed = false;
+	}
+
+	@Override
+	public String getName() {
+		return "Velocity Verlet";
+	}
+
+	@Override
+	public VelocityVerlet clone() {
+		return new VelocityVerlet();
+	}
+
+}
@@ -0,0 +1,223 @@
+package simulation.integrators;
+
+import bodies.BodyStore;
+import utils.Kepler;
+import utils.Utils;
+
+/**
+ * The symplectic mapping of Wisdom and Holman in democratic heliocentric
+ * coordinates for systems with one dominant mass, like the solar system or a
+ * planet with moons. Every other planet is moved analytically on its Kepler
+ * orbit around the dominant mass, the interactions between the other planets
+ * are added as kicks. Because the Kepler orbits are exact, the time step can be
+ * a large part of the shortest orbital period.
+ *
+ * One step is: half kick by the interactions, half drift of the dominant mass,
+ * Kepler drift, half drift of the dominant mass, half kick. The interactions
+ * are calculated with the force solver while the mass of the dominant planet is
+ * set to zero.
+ *
+ * The split only holds if the planets only attract each other, so a step with
+ * fewer than two planets or with sources outside of the store, like planets
+ * that follow an ephemeris, is a leapfrog step.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class WisdomHolman implements Integrator {
+
+	/** the index of the dominant mass, -1 if it has to be searched */
+	private int central = -1;
+
+	/** true if the accelerations in the store are the interactions */
+	private boolean primed = false;
+
+	/** the method for the steps that can not be split */
+	private final Leapfrog leapfrog = new Leapfrog();
+	private boolean split = false;
+
+	@Override
+	public void step(BodyStore planets, Acceleration acceleration, double t) {
+		int n = planets.size();
+		if (n < 2 || !acceleration.isClosed()) {
+			// the accelerations in the store change their meaning
+			if (split)
+				reset();
+			split = false;
+			leapfrog.step(planets, acceleration, t);
+			return;
+		}
+		if (!split)
+			reset();
+		split = true;
+		if (central < 0 || central >= n)
+			central = findCentral(planets);
+
+		int c = central;
+		double[] x = planets.getX();
+		double[] y = planets.getY();
+		double[] velX = planets.getVelX();
+		double[] velY = planets.getVelY();
+		double[] accX = planets.getAccX();
+		double[] accY = planets.getAccY();
+		double[] mass = planets.getMass();
+		double mc = mass[c];
+		double mu = Utils.GRAV_CONST * mc;
+
+		// center of mass
+		double totalMass = 0, cmX = 0, cmY = 0, cmVelX = 0, cmVelY = 0;
+		for (int i = 0; i < n; i++) {
+			totalMass += mass[i];
+			cmX += mass[i] * x[i];
+			cmY += mass[i] * y[i];
+			cmVelX += mass[i] * velX[i];
+			cmVelY += mass[i] * velY[i];
+		}
+		cmX /= totalMass;
+		cmY /= totalMass;
+		cmVelX /= totalMass;
+		cmVelY /= totalMass;
+
+		// positions relative to the dominant mass, velocities relative to the
+		// center of mass
+		double xc = x[c], yc = y[c];
+		for (int i = 0; i < n; i++) {
+			x[i] -= xc;
+			y[i] -= yc;
+			velX[i] -= cmVelX;
+			velY[i] -= cmVelY;
+		}
+
+		kick(planets, acceleration, 0, t * 0.5, !primed);
+		drift(planets, t * 0.5);
+		for (int i = 0; i < n; i++)
+			if (i != c)
+				Kepler.drift(mu, x, y, velX, velY, i, t);
+		drift(planets, t * 0.5);
+		kick(planets, acceleration, t, t * 0.5, true);
+		primed = true;
+
+		// back to the original coordinates, the center of mass moves uniformly
+		cmX += cmVelX * t;
+		cmY += cmVelY * t;
+		double sumX = 0, sumY = 0, sumVelX = 0, sumVelY = 0;
+		for (int i = 0; i < n; i++) {
+			if (i == c)
+				continue;
+			sumX += mass[i] * x[i];
+			sumY += mass[i] * y[i];
+			sumVelX += mass[i] * velX[i];
+			sumVelY += mass[i] * velY[i];
+		}
+		xc = cmX - sumX / totalMass;
+		yc = cmY - sumY / totalMass;
+		for (int i = 0; i < n; i++) {
+			if (i == c)
+				continue;
+			x[i] += xc;
+			y[i] += yc;
+			velX[i] += cmVelX;
+			velY[i] += cmVelY;
+		}
+		x[c] = xc;
+		y[c] = yc;
+		velX[c] = cmVelX - sumVelX / mc;
+		velY[c] = cmVelY - sumVelY / mc;
+
+		// the accelerations in the store are the interactions, not the gravity
+		accX[c] = 0;
+		accY[c] = 0;
+	}
+
+	/**
+	 * Adds the accelerations by all planets except the dominant one to the
+	 * velocities.
+	 *
+	 * @param at
+	 *            the time of the kick since the start of the step
+	 * @param calculate
+	 *            false if the accelerations in the store can be used
+	 */
+	private void kick(BodyStore planets, Acceleration acceleration, double at, double dt, boolean calculate) {
+		int n = planets.size();
+		double[] mass = planets.getMass();
+		double[] velX = planets.getVelX();
+		double[] velY = planets.getVelY();
+		double[] accX = planets.getAccX();
+		double[] accY = planets.getAccY();
+
+		if (calculate) {
+			double mc = mass[central];
+			mass[central] = 0;
+			acceleration.calculate(planets, at);
+			mass[central] = mc;
+		}
+
+		for (int i = 0; i < n; i++) {
+			if (i == central)
+				continue;
+			velX[i] += accX[i] * dt;
+			velY[i] += accY[i] * dt;
+		}
+	}
+
+	/**
+	 * Moves all planets with the momentum of the other planets divided by the
+	 * dominant mass.
+	 */
+	private void drift(BodyStore planets, double dt) {
+		int n = planets.size();
+		double[] mass = planets.getMass();
+		double[] x = planets.getX();
+		double[] y = planets.getY();
+		double[] velX = planets.getVelX();
+		double[] velY = planets.getVelY();
+
+		double px = 0, py = 0;
+		for (int i = 0; i < n; i++) {
+			if (i == central)
+				continue;
+			px += mass[i] * velX[i];
+			py += mass[i] * velY[i];
+		}
+		px *= dt / mass[central];
+		py *= dt / mass[central];
+
+		for (int i = 0; i < n; i++) {
+			if (i == central)
+				continue;
+			x[i] += px;
+			y[i] += py;
+		}
+	}
+
+	/**
+	 * @return the index of the most massive planet
+	 */
+	private static int findCentral(BodyStore planets) {
+		int c = 0;
+		double[] mass = planets.getMass();
+		for (int i = 1; i < planets.size(); i++)
+			if (mass[i] > mass[c])
+				c = i;
+		return c;
+	}
+
+	@Override
+	public void reset() {
+		central = -1;
+		primed = false;
+		leapfrog.reset();
+	}
+
+	@Override
+	public String getName() {
+		return "Wisdom-Holman";
+	}
+
+	@Override
+	public WisdomHolman clone() {
+		return new WisdomHolman();
+	}
+
+}
@@ -0,0 +1,75 @@
+package simulation.integrators;
+
+import bodies.BodyStore;
+
+/**
+ * The symplectic method of fourth order by Yoshida. It is made of three
+ * leapfrog steps with the weights w1, w0 and w1 and calculates three
+ * accelerations per step.
+ * 
+ * @author Jan Muskalla
+ *
+ */
+public class Yoshida4 implements Integrator {
+
+	private static final double w1 = 1 / (2 - Math.cbrt(2));
+	private static final double w0 = -Math.cbrt(2) * w1;
+
+	/** the weights of the drifts and the kicks */
+	private static final double[] c = { w1 / 2, (w0 + w1) / 2, (w0 + w1) / 2, w1 / 2 };
+	private static final double[] d = { w1, w0, w1 };
+
+	@Override
+	public void step(BodyStore planets, Acceleration acceleration, double t) {
+		int n = planets.size();
+		double[] x = planets.getX();
+		double[] y = planets.getY();
+		double[] velX = planets.getVelX();
+		double[] velY = planets.getVelY();
+		double[] accX = planets.getAccX();
+		double[] accY = planets.getAccY();
+
+		// the time of the positions since the start of the step
+		double s = 0;
+		for (int k = 0; k < 3; k++) {
+			// drift
+			double ct = c[k] * t;
+			for (int i = 0; i < n; i++) {
+				x[i] += velX[i] * ct;
+				y[i] += velY[i] * ct;
+			}
+			s += ct;
+
+			acceleration.calculate(planets, s);
+
+			// kick
+			double dt = d[k] * t;
+			for (int i = 0; i < n; i++) {
+				velX[i] += accX[i] * dt;
+				velY[i] += accY[i] * dt;
+			}
+		}
+
+		// last drift
+		double ct = c[3] * t;
+		for (int i = 0; i < n; i++) {
+			x[i] += velX[i] * ct;
+			y[i] += velY[i] * ct;
+		}
+	}
+
+	@Override
+	public void reset() {
+	}
+
+	@Override
+	public String getName() {
+		return "Yoshida 4";
+	}
+
+	@Override
+	public Yoshida4 clone() {
+		return new Yoshida4();
+	}
+
+}
@@ -0,0 +1,458 @@
+package simulation.recording;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import bodies.BodyStore;
+import bodies.Particle;
+import bodies.Planet;
+import javafx.scene.paint.Color;
+import simulation.Snapshot;
+import utils.BinaryReader;
+
+/**
+ * Reads a file that was written by a TrajectoryRecorder. Any frame can be read
+ * into a snapshot, so a recorded run can be drawn without calculating it
+ * again.
+ *
+ * A frame at a given time is found with the sparse index of the file. The
+ * index is spread over a table of equal time intervals, so the indexed frame
+ * before a time is found with one lookup and the frame itself with at most a
+ * few frame headers after it. Seeking therefore takes the same time anywhere in
+ * a recording of any size. If the recorder was not closed, the index is built
+ * from the frame headers when the file is opened.
+ *
+ * The planets and particles of the recording are created once, so the same
+ * body is the same object in all frames.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class Recording implements Closeable {
+
+	private final FileChannel channel;
+
+	/** the system of the recording */
+	private final String name;
+	private final double scale, timeStep;
+	private final int sps, interval;
+
+	/** the number of frames and the end of the last frame */
+	private long frames;
+	private long end;
+
+	/** the sparse index of the frames */
+	private double[] indexTime;
+	private long[] indexPosition;
+	private int indexCount;
+
+	/** the last index entry at the start of each time interval */
+	private int[] bucket;
+	private double bucketWidth;
+
+	/** the planets by id and the particles in the order of the header */
+	private final HashMap<Long, Planet> planets = new HashMap<Long, Planet>();
+	private final IdentityHashMap<Planet, Long> planetIds = new IdentityHashMap<Planet, Long>();
+	private final long[] particleIds;
+	private final Particle[] particles;
+	private HashMap<Long, Integer> particleIndex;
+
+	/** the buffers for a frame header and a whole frame */
+	private final ByteBuffer frameHeader = ByteBuffer.allocate(TrajectoryRecorder.frameHeaderSize);
+	private ByteBuffer frame = ByteBuffer.allocateDirect(1 << 16);
+
+	/** the bodies of the last read frame */
+	private final IdentityHashMap<Planet, Integer> planetStamp = new IdentityHashMap<Planet, Integer>();
+	private Planet[] lastPlanets = new Planet[0];
+	private int lastPlanetCount;
+	private int[] lastParticles = new int[0], currentParticles = new int[0];
+	private int lastParticleCount;
+	private final int[] particleStamp;
+	private int stamp;
+
+	/**
+	 * Opens a recording and reads its header and index.
+	 *
+	 * @param path
+	 * @throws IOException
+	 */
+	public Recording(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			BinaryReader in = new BinaryReader(channel);
+			if (in.readInt() != TrajectoryRecorder.magic)
+				throw new IOException("not a recording: " + path);
+			int version = in.readInt();
+			if (version != TrajectoryRecorder.version)
+				throw new IOException("unknown recording version " + version);
+			frames = in.readLong();
+			long index = in.readLong();
+			long firstFrame = in.readLong();
+			interval = in.readInt();
+			name = in.readString();
+			scale = in.readDouble();
+			timeStep = in.readDouble();
+			sps = in.readInt();
+
+			int planetCount = in.readInt();
+			for (int i = 0; i < planetCount; i++) {
+				long id = in.readLong();
+				String planetName = in.readString();
+				Color color = null;
+				if (in.readBoolean())
+					color = new Color(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+				Planet p = new Planet(0, 0, color, planetName);
+				planets.put(id, p);
+				planetIds.put(p, id);
+			}
+
+			// the particles are views on one store, so they are created fast
+			int particleCount = in.readInt();
+			particleIds = new long[particleCount];
+			in.readLongs(particleIds, 0, particleCount);
+			BodyStore store = new BodyStore(particleCount);
+			store.resize(particleCount);
+			particles = new Particle[particleCount];
+			for (int i = 0; i < particleCount; i++)
+				particles[i] = new Particle(store, i);
+			particleStamp = new int[particleCount];
+
+			if (firstFrame <= 0)
+				throw new EOFException("the recording has no frames: " + path);
+			if (index > 0)
+				readIndex(index);
+			else
+				scanFrames(firstFrame);
+			if (indexCount == 0)
+				throw new EOFException("the recording has no frames: " + path);
+			buildBuckets();
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the index after the last frame.
+	 */
+	private void readIndex(long index) throws IOException {
+		channel.position(index);
+		BinaryReader in = new BinaryReader(channel);
+		indexCount = in.readInt();
+		indexTime = new double[indexCount];
+		indexPosition = new long[indexCount];
+		in.readDoubles(indexTime, 0, indexCount);
+		in.readLongs(indexPosition, 0, indexCount);
+		end = index;
+	}
+
+	/**
+	 * Builds the index from the frame headers of a recording that was not closed.
+	 * The frames end before the first header whose step is not larger than the
+	 * step before, the rest of the file was never written.
+	 */
+	private void scanFrames(long position) throws IOException {
+		indexTime = new double[64];
+		indexPosition = new long[64];
+		long size = channel.size();
+		long lastStep = -1, lastIndexed = 0;
+		frames = 0;
+		while (position + TrajectoryRecorder.frameHeaderSize <= size) {
+			readFrameHeader(position);
+			long step = frameHeader.getLong(0);
+			long length = frameLength();
+			if (step <= lastStep || position + length > size)
+				break;
+
+			if (indexCount == 0 || frames - lastIndexed >= 64 || position - indexPosition[indexCount - 1] >= 1 << 20) {
+				if (indexCount == indexTime.length) {
+					indexTime = Arrays.copyOf(indexTime, 2 * indexCount);
+					indexPosition = Arrays.copyOf(indexPosition, 2 * indexCount);
+				}
+				indexTime[indexCount] = frameHeader.getDouble(8);
+				indexPosition[indexCount] = position;
+				indexCount++;
+				lastIndexed = frames;
+			}
+			lastStep = step;
+			position += length;
+			frames++;
+		}
+		end = position;
+	}
+
+	/**
+	 * Spreads the index over a table with one entry for each equal time interval
+	 * between the first and the last indexed frame.
+	 */
+	private void buildBuckets() {
+		bucket = new int[indexCount];
+		double span = indexTime[indexCount - 1] - indexTime[0];
+		bucketWidth = span > 0 ? span / indexCount : 1;
+		int e = 0;
+		for (int b = 0; b < indexCount; b++) {
+			double t = indexTime[0] + b * bucketWidth;
+			while (e + 1 < indexCount && indexTime[e + 1] <= t)
+				e++;
+			bucket[b] = e;
+		}
+	}
+
+	/**
+	 * Finds the last frame at or before a time, or the first frame if the time is
+	 * before the start.
+	 *
+	 * @param seconds
+	 *            the simulated time
+	 * @return the position of the frame in the file
+	 * @throws IOException
+	 */
+	public long seek(double seconds) throws IOException {
+		// the last indexed frame before the time
+		int e = 0;
+		if (seconds > indexTime[0]) {
+			int b = (int) Math.min((seconds - indexTime[0]) / bucketWidth, indexCount - 1);
+			e = bucket[b];
+			while (e + 1 < indexCount && indexTime[e + 1] <= seconds)
+				e++;
+		}
+
+		// the following frames up to the time
+		long position = indexPosition[e];
+		readFrameHeader(position);
+		while (true) {
+			long next = position + frameLength();
+			if (next >= end)
+				break;
+			readFrameHeader(next);
+			if (frameHeader.getDouble(8) > seconds) {
+				readFrameHeader(position);
+				break;
+			}
+			position = next;
+		}
+		return position;
+	}
+
+	/**
+	 * @return the position of the first frame
+	 */
+	public long getFirstFrame() {
+		return indexPosition[0];
+	}
+
+	/**
+	 * @param position
+	 *            the position of a frame
+	 * @return the position of the next frame or -1 after the last frame
+	 * @throws IOException
+	 */
+	public long nextFrame(long position) throws IOException {
+		readFrameHeader(position);
+		long next = position + frameLength();
+		return next < end ? next : -1;
+	}
+
+	/**
+	 * @param position
+	 *            the position of a frame
+	 * @return the simulated time of the frame
+	 * @throws IOException
+	 */
+	public double getTime(long position) throws IOException {
+		readFrameHeader(position);
+		return frameHeader.getDouble(8);
+	}
+
+	/**
+	 * Reads a frame into a snapshot. The bodies of the last read frame that are
+	 * not in this frame are the removed bodies of the snapshot, the planets that
+	 * merged since the frame before are taken from the events.
+	 *
+	 * @param position
+	 *            the position of a frame
+	 * @param snapshot
+	 * @throws IOException
+	 */
+	public void read(long position, Snapshot snapshot) throws IOException {
+		readFrameHeader(position);
+		int length = (int) frameLength();
+		if (frame.capacity() < length)
+			frame = ByteBuffer.allocateDirect(length);
+		frame.clear().limit(length);
+		while (frame.hasRemaining())
+			if (channel.read(frame, position + frame.position()) < 0)
+				throw new EOFException("frame after the end of the recording");
+		frame.flip();
+
+		long step = frame.getLong();
+		double seconds = frame.getDouble();
+		int np = frame.getInt(), nq = frame.getInt(), ne = frame.getInt();
+		frame.getInt();
+		snapshot.reset(np, nq, step, seconds);
+		stamp++;
+
+		for (int e = 0; e < ne; e++) {
+			long type = frame.getLong(), id = frame.getLong(), other = frame.getLong();
+			if (type == TrajectoryRecorder.mergedEvent)
+				snapshot.addMerged(planet(id), planet(other));
+		}
+
+		if (lastPlanets.length < np)
+			lastPlanets = Arrays.copyOf(lastPlanets, np);
+		Planet[] current = new Planet[np];
+		for (int i = 0; i < np; i++) {
+			Planet p = planet(frame.getLong());
+			snapshot.setPlanet(i, p, frame.getDouble(), frame.getDouble(), frame.getDouble(), frame.getDouble(),
+					frame.getDouble(), frame.getDouble());
+			planetStamp.put(p, stamp);
+			current[i] = p;
+		}
+
+		if (currentParticles.length < nq)
+			currentParticles = new int[nq];
+		int hint = 0;
+		for (int i = 0; i < nq; i++) {
+			int h = particleIndex(frame.getLong(), hint);
+			double x = frame.getDouble(), y = frame.getDouble();
+			frame.position(frame.position() + 2 * Double.BYTES);
+			snapshot.setParticle(i, particles[h], x, y);
+			particleStamp[h] = stamp;
+			currentParticles[i] = h;
+			hint = h + 1;
+		}
+
+		// the bodies that are not in this frame anymore
+		for (int k = 0; k < lastPlanetCount; k++)
+			if (planetStamp.get(lastPlanets[k]) != stamp)
+				snapshot.addRemoved(lastPlanets[k]);
+		for (int k = 0; k < lastParticleCount; k++)
+			if (particleStamp[lastParticles[k]] != stamp)
+				snapshot.addRemoved(particles[lastParticles[k]]);
+
+		System.arraycopy(current, 0, lastPlanets, 0, np);
+		lastPlanetCount = np;
+		int[] swap = lastParticles;
+		lastParticles = currentParticles;
+		currentParticles = swap;
+		lastParticleCount = nq;
+	}
+
+	/**
+	 * @return the planet with an id, a new anonymous planet for a planet that was
+	 *         added after the start of the recording
+	 */
+	private Planet planet(long id) {
+		Planet p = planets.get(id);
+		if (p == null) {
+			p = new Planet(0, 0, null, "");
+			planets.put(id, p);
+			planetIds.put(p, id);
+		}
+		return p;
+	}
+
+	/**
+	 * @param planet
+	 *            a planet of this recording
+	 * @return the id of the planet in the recorded simulation
+	 */
+	public long getId(Planet planet) {
+		return planetIds.get(planet);
+	}
+
+	/**
+	 * The particles of a frame are in the order of the header, because particles
+	 * are only removed, so the next particle is usually found at the hint.
+	 *
+	 * @return the index of a particle in the header
+	 */
+	private int particleIndex(long id, int hint) throws IOException {
+		if (hint < particleIds.length && particleIds[hint] == id)
+			return hint;
+
+		if (particleIndex == null) {
+			particleIndex = new HashMap<Long, Integer>();
+			for (int i = 0; i < particleIds.length; i++)
+				particleIndex.put(particleIds[i], i);
+		}
+		Integer i = particleIndex.get(id);
+		if (i == null)
+			throw new IOException("unknown particle id " + id);
+		return i;
+	}
+
+	private void readFrameHeader(long position) throws IOException {
+		frameHeader.clear();
+		while (frameHeader.hasRemaining())
+			if (channel.read(frameHeader, position + frameHeader.position()) < 0)
+				throw new EOFException("frame after the end of the recording");
+	}
+
+	/**
+	 * @return the length of the frame in the frame header buffer
+	 */
+	private long frameLength() {
+		int np = frameHeader.getInt(16), nq = frameHeader.getInt(20), ne = frameHeader.getInt(24);
+		return TrajectoryRecorder.frameHeaderSize + (long) ne * TrajectoryRecorder.eventSize
+				+ (long) np * TrajectoryRecorder.planetRecordSize + (long) nq * TrajectoryRecorder.particleRecordSize;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public double getScale() {
+		return scale;
+	}
+
+	/**
+	 * @return the time step at the start of the recording
+	 */
+	public double getTimeStep() {
+		return timeStep;
+	}
+
+	public int getSps() {
+		return sps;
+	}
+
+	/**
+	 * @return the number of steps between two frames
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * @return the simulated time of the first frame
+	 */
+	public double getStartTime() {
+		return indexTime[0];
+	}
+
+	/**
+	 * @return the simulated time of the last frame
+	 * @throws IOException
+	 */
+	public double getEndTime() throws IOException {
+		return getTime(seek(Double.POSITIVE_INFINITY));
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
@@ -0,0 +1,183 @@
+package simulation.recording;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import simulation.Snapshot;
+import simulation.SnapshotSource;
+
+/**
+ * Plays a recording in the window instead of a running simulation. Every time
+ * the window takes a snapshot, the replay moves forward or backward by the
+ * simulated time that passed since the last snapshot and reads the frame at
+ * that time. Nothing is calculated, so the speed is only limited by reading the
+ * frames.
+ *
+ * A replay is only used by the thread of the window.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class Replay implements SnapshotSource, Closeable {
+
+	private final Recording recording;
+	private final double startTime, endTime;
+
+	/** the two snapshots that are handed to the window in turns */
+	private final Snapshot[] snapshots = { new Snapshot(), new Snapshot() };
+	private int nextSnapshot;
+
+	/** the shown simulated time and the simulated seconds per second */
+	private double seconds;
+	private double speed;
+	private final double defaultSpeed;
+	private boolean reversed, paused;
+
+	/** the time of the last snapshot in nanoseconds and the last read frame */
+	private long lastNanos;
+	private long lastFrame = -1;
+	private int framesCounter;
+
+	/**
+	 * Creates a replay that starts at the first frame with the speed of the
+	 * recorded system.
+	 *
+	 * @param recording
+	 * @throws IOException
+	 */
+	public Replay(Recording recording) throws IOException {
+		this.recording = recording;
+		this.startTime = recording.getStartTime();
+		this.endTime = recording.getEndTime();
+		this.defaultSpeed = recording.getTimeStep() * recording.getSps();
+		this.speed = defaultSpeed;
+		this.seconds = startTime;
+	}
+
+	/**
+	 * Moves the shown time and reads the frame at that time.
+	 *
+	 * @return the snapshot of the frame or null if it is the frame of the last
+	 *         snapshot
+	 */
+	@Override
+	public Snapshot takeSnapshot() {
+		long now = System.nanoTime();
+		if (!paused && lastNanos != 0)
+			seconds += (reversed ? -speed : speed) * (now - lastNanos) * 1e-9;
+		lastNanos = now;
+		seconds = Math.min(Math.max(seconds, startTime), endTime);
+
+		try {
+			long frame = recording.seek(seconds);
+			if (frame == lastFrame)
+				return null;
+			Snapshot snapshot = snapshots[nextSnapshot];
+			nextSnapshot ^= 1;
+			recording.read(frame, snapshot);
+			lastFrame = frame;
+			framesCounter++;
+			return snapshot;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Jumps to a simulated time.
+	 *
+	 * @param seconds
+	 */
+	public void seek(double seconds) {
+		this.seconds = Math.min(Math.max(seconds, startTime), endTime);
+	}
+
+	/**
+	 * Jumps forward or backward by a part of the whole recording.
+	 *
+	 * @param part
+	 *            for example 0.05 for 5 percent forward
+	 */
+	public void skip(double part) {
+		seek(seconds + part * (endTime - startTime));
+	}
+
+	/** Changes the direction of the replay. */
+	public void reverse() {
+		reversed = !reversed;
+	}
+
+	public boolean isReversed() {
+		return reversed;
+	}
+
+	/**
+	 * @return the shown simulated time
+	 */
+	public double getSeconds() {
+		return seconds;
+	}
+
+	public Recording getRecording() {
+		return recording;
+	}
+
+	@Override
+	public String getName() {
+		return recording.getName();
+	}
+
+	@Override
+	public double getScale() {
+		return recording.getScale();
+	}
+
+	@Override
+	public double getSpeed() {
+		return reversed ? -speed : speed;
+	}
+
+	@Override
+	public String getMethodName() {
+		return "Replay";
+	}
+
+	@Override
+	public void multTime(double x) {
+		speed *= x;
+	}
+
+	@Override
+	public void resetTime() {
+		speed = defaultSpeed;
+	}
+
+	@Override
+	public void setPause(boolean b) {
+		paused = b;
+	}
+
+	@Override
+	public boolean isPaused() {
+		return paused;
+	}
+
+	/**
+	 * @return the number of read frames since the last reset
+	 */
+	@Override
+	public int getSpsCounter() {
+		return framesCounter;
+	}
+
+	@Override
+	public void resetSpsCounter() {
+		framesCounter = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		recording.close();
+	}
+
+}
@@ -0,0 +1,359 @@
+package simulation.recording;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import bodies.BodyStore;
+import bodies.Constellation;
+import bodies.Planet;
+import javafx.scene.paint.Color;
+import simulation.Simulation;
+import utils.BinaryWriter;
+
+/**
+ * Writes the positions and velocities of all bodies every few steps into a
+ * memory mapped file. The file is mapped in large regions, so a frame is
+ * written with plain memory accesses and the operating system writes the pages
+ * to the disk in the background.
+ *
+ * The file starts with a header that describes the system and the bodies at
+ * the start of the recording: magic number, version, number of frames,
+ * position of the index, position of the first frame, step interval, name,
+ * scale, time step and steps per second of the system, the planets with id,
+ * name and color and the ids of the particles. It is followed by frames of
+ * fixed width records:
+ *
+ * frame: step (long), simulated time (double), planets, particles, events
+ * (int) and a reserved int, then the events, the planets and the particles
+ *
+ * event: type, id of the body, id of the other body or -1 (long)
+ *
+ * planet: id (long), x, y, velX, velY, mass, radius (double)
+ *
+ * particle: id (long), x, y, velX, velY (double)
+ *
+ * After the last frame follows a sparse index of the frames: the number of
+ * entries, the times and the positions of the indexed frames. A frame is
+ * indexed every 64 frames or every megabyte, so a frame at any time is found
+ * with one jump and a few frame headers, see Recording.
+ *
+ * Bodies are identified by their ids, so a body that merged into another planet
+ * or was removed simply is not part of the following frames. The events of a
+ * frame tell what happened to them since the last frame. Particles that are
+ * moved with time steps of their own are written at the time of their last
+ * step.
+ *
+ * The recorder is only used by the simulation thread, see
+ * Simulation.setRecorder.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class TrajectoryRecorder implements Closeable {
+
+	/** "GTRJ" */
+	static final int magic = 0x4754524A;
+	static final int version = 2;
+
+	/** the sizes of the parts of a frame in bytes */
+	static final int frameHeaderSize = 32;
+	static final int eventSize = 24;
+	static final int planetRecordSize = 56;
+	static final int particleRecordSize = 40;
+
+	/** the positions of the number of frames, the index and the first frame in the header */
+	static final int framesOffset = 8, indexOffset = 16, firstFrameOffset = 24;
+
+	/** a frame is indexed after this number of frames or bytes */
+	private static final int indexFrames = 64;
+	private static final long indexBytes = 1 << 20;
+
+	/** the types of the events */
+	public static final int mergedEvent = 1, removedEvent = 2, addedEvent = 3;
+
+	/** the size of a mapped region of the file */
+	private static final long regionSize = 1 << 26;
+
+	private final FileChannel channel;
+	private final int interval;
+
+	/** the mapped region and its position in the file */
+	private MappedByteBuffer region;
+	private long regionStart;
+
+	/** the position of the next frame in the file */
+	private long position;
+	private long frames;
+
+	/** the events since the last frame, three values each */
+	private long[] events = new long[3 * 16];
+	private int eventCount;
+
+	/** the times and positions of the indexed frames */
+	private double[] indexTime = new double[64];
+	private long[] indexPosition = new long[64];
+	private int indexCount;
+	private long lastIndexedFrame;
+
+	private boolean started, closed;
+
+	/**
+	 * Creates a recorder that writes into a file. An existing file is replaced.
+	 *
+	 * @param path
+	 * @param interval
+	 *            a frame is written every interval steps
+	 * @throws IOException
+	 */
+	public TrajectoryRecorder(Path path, int interval) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.interval = Math.max(interval, 1);
+	}
+
+	/**
+	 * Writes the header with the current bodies of a simulation and the first
+	 * frame.
+	 *
+	 * @param simulation
+	 * @throws IOException
+	 */
+	public void start(Simulation simulation) throws IOException {
+		if (started)
+			throw new IllegalStateException("the recorder was already started");
+		started = true;
+
+		Constellation constellation = simulation.getConstellation();
+		BinaryWriter out = new BinaryWriter(channel);
+		out.writeInt(magic);
+		out.writeInt(version);
+		out.writeLong(0);
+		out.writeLong(0);
+		out.writeLong(0);
+		out.writeInt(interval);
+		out.writeString(constellation.getName());
+		out.writeDouble(constellation.getScale());
+		out.writeDouble(simulation.getTime());
+		out.writeInt(constellation.getSps());
+
+		ArrayList<Planet> planetList = simulation.getPlanetList();
+		out.writeInt(planetList.size());
+		for (Planet p : planetList) {
+			out.writeLong(p.getId());
+			out.writeString(p.getName());
+			Color color = p.getColor();
+			out.writeBoolean(color != null);
+			if (color != null) {
+				out.writeDouble(color.getRed());
+				out.writeDouble(color.getGreen());
+				out.writeDouble(color.getBlue());
+				out.writeDouble(color.getOpacity());
+			}
+		}
+		BodyStore particles = simulation.getParticleStore();
+		out.writeInt(particles.size());
+		out.writeLongs(particles.getId(), 0, particles.size());
+		out.flush();
+
+		position = channel.position();
+		writeLong(firstFrameOffset, position);
+		record(simulation);
+	}
+
+	/**
+	 * Writes a frame with the current state of all bodies and the events since the
+	 * last frame.
+	 *
+	 * @param simulation
+	 */
+	public void record(Simulation simulation) {
+		BodyStore planets = simulation.getPlanetStore();
+		BodyStore particles = simulation.getParticleStore();
+		int np = planets.size(), nq = particles.size(), ne = eventCount;
+		long size = frameHeaderSize + (long) ne * eventSize + (long) np * planetRecordSize
+				+ (long) nq * particleRecordSize;
+
+		if (indexCount == 0 || frames - lastIndexedFrame >= indexFrames
+				|| position - indexPosition[indexCount - 1] >= indexBytes)
+			addIndex(simulation.getSecondsCounter());
+
+		ByteBuffer b = reserve(size);
+		b.putLong(simulation.getSteps());
+		b.putDouble(simulation.getSecondsCounter());
+		b.putInt(np);
+		b.putInt(nq);
+		b.putInt(ne);
+		b.putInt(0);
+
+		for (int e = 0; e < 3 * ne; e++)
+			b.putLong(events[e]);
+		eventCount = 0;
+
+		long[] id = planets.getId();
+		double[] x = planets.getX(), y = planets.getY();
+		double[] velX = planets.getVelX(), velY = planets.getVelY();
+		double[] mass = planets.getMass(), radius = planets.getRadius();
+		for (int i = 0; i < np; i++) {
+			b.putLong(id[i]);
+			b.putDouble(x[i]);
+			b.putDouble(y[i]);
+			b.putDouble(velX[i]);
+			b.putDouble(velY[i]);
+			b.putDouble(mass[i]);
+			b.putDouble(radius[i]);
+		}
+
+		id = particles.getId();
+		x = particles.getX();
+		y = particles.getY();
+		velX = particles.getVelX();
+		velY = particles.getVelY();
+		for (int i = 0; i < nq; i++) {
+			b.putLong(id[i]);
+			b.putDouble(x[i]);
+			b.putDouble(y[i]);
+			b.putDouble(velX[i]);
+			b.putDouble(velY[i]);
+		}
+
+		position += size;
+		frames++;
+	}
+
+	/**
+	 * Notes that a planet merged into another one.
+	 *
+	 * @param id
+	 *            the id of the smaller planet
+	 * @param into
+	 *            the id of the planet that takes its mass
+	 */
+	public void merged(long id, long into) {
+		addEvent(mergedEvent, id, into);
+	}
+
+	/**
+	 * Notes that a body was removed, for example a particle that hit a planet.
+	 *
+	 * @param id
+	 */
+	public void removed(long id) {
+		addEvent(removedEvent, id, -1);
+	}
+
+	/**
+	 * Notes that a body was added after the start of the recording.
+	 *
+	 * @param id
+	 */
+	public void added(long id) {
+		addEvent(addedEvent, id, -1);
+	}
+
+	private void addEvent(int type, long id, long other) {
+		if (3 * eventCount + 3 > events.length)
+			events = Arrays.copyOf(events, events.length * 2);
+		events[3 * eventCount] = type;
+		events[3 * eventCount + 1] = id;
+		events[3 * eventCount + 2] = other;
+		eventCount++;
+	}
+
+	private void addIndex(double seconds) {
+		if (indexCount == indexTime.length) {
+			indexTime = Arrays.copyOf(indexTime, 2 * indexCount);
+			indexPosition = Arrays.copyOf(indexPosition, 2 * indexCount);
+		}
+		indexTime[indexCount] = seconds;
+		indexPosition[indexCount] = position;
+		indexCount++;
+		lastIndexedFrame = frames;
+	}
+
+	/**
+	 * Maps a new region of the file if the current region has no space for a
+	 * number of bytes.
+	 *
+	 * @return the mapped region at the position of the next frame
+	 */
+	private ByteBuffer reserve(long size) {
+		if (region == null || position + size > regionStart + region.capacity()) {
+			try {
+				regionStart = position;
+				region = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(regionSize, size));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		region.position((int) (position - regionStart));
+		return region;
+	}
+
+	/**
+	 * @return the number of steps between two frames
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * @return the number of written frames
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * Writes the index after the last frame and the number of frames and the
+	 * position of the index into the header, cuts the file after the index and
+	 * closes it. Does nothing if the recorder is already closed.
+	 *
+	 * The last region stays mapped until it is garbage collected, and some
+	 * systems (Windows) can not cut a mapped file. Then the file keeps the
+	 * unused rest of the region, which Recording does not read because the
+	 * frames end at the index.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+
+		region = null;
+		if (started) {
+			channel.position(position);
+			BinaryWriter out = new BinaryWriter(channel);
+			out.writeInt(indexCount);
+			out.writeDoubles(indexTime, 0, indexCount);
+			out.writeLongs(indexPosition, 0, indexCount);
+			out.flush();
+			long end = channel.position();
+
+			writeLong(framesOffset, frames);
+			writeLong(indexOffset, position);
+			try {
+				channel.truncate(end);
+			} catch (IOException e) {
+				// the file is complete without the cut
+			}
+		}
+		channel.close();
+	}
+
+	/**
+	 * Writes a number into the header.
+	 */
+	private void writeLong(int offset, long value) throws IOException {
+		ByteBuffer b = ByteBuffer.allocate(Long.BYTES);
+		b.putLong(0, value);
+		channel.write(b, offset);
+	}
+
+}
@@ -0,0 +1,210 @@
+package simulation.telemetry;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.HashSet;
+import simulation.distributed.Connection;
+import utils.BinaryReader;
+
+/**
+ * Subscribes to a TelemetryPublisher and reads its frames. The positions and
+ * velocities are kept in arrays that are reused for every frame, the masses and
+ * radii of the planets are kept in a map that is updated by the mass changes
+ * of the frames. Bodies that are not in a frame anymore were removed by a
+ * collision, a merge or by hand.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class TelemetryClient implements Closeable {
+
+	private final SocketChannel channel;
+	private final BinaryReader in;
+
+	private long step;
+	private double time;
+	private final Bodies planets = new Bodies(), particles = new Bodies();
+
+	/** the mass and radius of every planet by id */
+	private final HashMap<Long, double[]> masses = new HashMap<Long, double[]>();
+
+	private TelemetryClient(SocketChannel channel) {
+		this.channel = channel;
+		this.in = new BinaryReader(channel);
+	}
+
+	/**
+	 * Connects to a publisher.
+	 *
+	 * @param address
+	 *            host:port or unix:path
+	 * @return the client
+	 * @throws IOException
+	 */
+	public static TelemetryClient connect(String address) throws IOException {
+		return new TelemetryClient(SocketChannel.open(Connection.parseAddress(address)));
+	}
+
+	/**
+	 * Waits for the next frame and reads it.
+	 *
+	 * @return false if the publisher closed the connection
+	 * @throws IOException
+	 */
+	public boolean readFrame() throws IOException {
+		while (true) {
+			int magic;
+			try {
+				magic = in.readInt();
+			} catch (EOFException e) {
+				return false;
+			}
+			if (magic != TelemetryPublisher.magic)
+				throw new IOException("not a telemetry message");
+			int type = in.readInt();
+			int length = in.readInt();
+			if (type == TelemetryPublisher.frameMessage) {
+				readFrameMessage();
+				return true;
+			} else if (type == TelemetryPublisher.massesMessage)
+				readMassesMessage();
+			else
+				for (int i = 0; i < length; i++)
+					in.readByte();
+		}
+	}
+
+	private void readFrameMessage() throws IOException {
+		step = in.readLong();
+		time = in.readDouble();
+		int np = in.readInt();
+		int nq = in.readInt();
+		int nc = in.readInt();
+		in.readInt();
+		for (int c = 0; c < nc; c++)
+			masses.put(in.readLong(), new double[] { in.readDouble(), in.readDouble() });
+		planets.read(in, np);
+		particles.read(in, nq);
+
+		// forget the masses of removed planets
+		if (masses.size() > np) {
+			HashSet<Long> ids = new HashSet<Long>();
+			for (int i = 0; i < np; i++)
+				ids.add(planets.id[i]);
+			masses.keySet().retainAll(ids);
+		}
+	}
+
+	/**
+	 * Replaces the masses of all planets, sent after missed mass changes.
+	 */
+	private void readMassesMessage() throws IOException {
+		in.readLong();
+		int np = in.readInt();
+		in.readInt();
+		masses.clear();
+		for (int i = 0; i < np; i++)
+			masses.put(in.readLong(), new double[] { in.readDouble(), in.readDouble() });
+	}
+
+	/**
+	 * @return the step of the simulation of the last frame
+	 */
+	public long getStep() {
+		return step;
+	}
+
+	/**
+	 * @return the simulated time of the last frame in seconds
+	 */
+	public double getTime() {
+		return time;
+	}
+
+	public Bodies getPlanets() {
+		return planets;
+	}
+
+	public Bodies getParticles() {
+		return particles;
+	}
+
+	/**
+	 * @return the mass of a planet or NaN if the planet is unknown
+	 */
+	public double getMass(long id) {
+		double[] mass = masses.get(id);
+		return mass != null ? mass[0] : Double.NaN;
+	}
+
+	/**
+	 * @return the radius of a planet or NaN if the planet is unknown
+	 */
+	public double getRadius(long id) {
+		double[] mass = masses.get(id);
+		return mass != null ? mass[1] : Double.NaN;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * The ids, positions and velocities of the planets or particles of a frame,
+	 * valid until the next frame is read.
+	 */
+	public static class Bodies {
+
+		private int count;
+		private long[] id = new long[0];
+		private double[] x = new double[0], y = new double[0], velX = new double[0], velY = new double[0];
+
+		private void read(BinaryReader in, int n) throws IOException {
+			if (id.length < n) {
+				int capacity = n + n / 4;
+				id = new long[capacity];
+				x = new double[capacity];
+				y = new double[capacity];
+				velX = new double[capacity];
+				velY = new double[capacity];
+			}
+			for (int i = 0; i < n; i++) {
+				id[i] = in.readLong();
+				x[i] = in.readDouble();
+				y[i] = in.readDouble();
+				velX[i] = in.readDouble();
+				velY[i] = in.readDouble();
+			}
+			count = n;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public long[] getId() {
+			return id;
+		}
+
+		public double[] getX() {
+			return x;
+		}
+
+		public double[] getY() {
+			return y;
+		}
+
+		public double[] getVelX() {
+			return velX;
+		}
+
+		public double[] getVelY() {
+			return velY;
+		}
+	}
+
+}
@@ -0,0 +1,523 @@
+package simulation.telemetry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import bodies.BodyStore;
+import simulation.Simulation;
+import simulation.distributed.Connection;
+
+/**
+ * Streams the state of a simulation to any number of subscribers over a TCP or
+ * Unix domain socket. Every few steps the simulation thread writes a frame into
+ * a buffer and hands it to the sending thread, which writes it to all
+ * subscribers with non-blocking channels. The simulation thread never waits for
+ * the network: a frame that the sending thread did not take before the next
+ * one is dropped, and a subscriber that is still busy with an earlier frame
+ * only gets the newest frame after it. So slow subscribers miss frames but
+ * never slow down the simulation or the other subscribers.
+ *
+ * The stream is a sequence of messages in the order of Java (big endian). Each
+ * message starts with the magic number, the type and the length of the rest of
+ * the message (int).
+ *
+ * frame: step (long), simulated time (double), planets, particles, mass
+ * changes (int) and a reserved int, then the mass changes (id, mass, radius),
+ * the planets and the particles (id, x, y, velX, velY)
+ *
+ * masses: step (long), number of planets and a reserved int, then id, mass and
+ * radius of every planet of the following frame
+ *
+ * A frame holds the planets whose mass or radius changed since an earlier
+ * frame, the first frame holds all planets. A subscriber that missed a frame
+ * with mass changes gets a masses message before its next frame, so it always
+ * knows the masses of all planets. Bodies that are not in a frame anymore were
+ * removed, see TelemetryClient.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class TelemetryPublisher implements Closeable {
+
+	/** "GTLM" */
+	static final int magic = 0x47544C4D;
+
+	/** the types of the messages */
+	public static final int frameMessage = 1, massesMessage = 2;
+
+	/** the sizes of the parts of a message in bytes */
+	static final int messageHeaderSize = 12;
+	static final int frameHeaderSize = 32;
+	static final int massRecordSize = 24;
+	static final int bodyRecordSize = 40;
+
+	private final ServerSocketChannel server;
+	private final Selector selector;
+	private final Thread thread;
+	private final int interval;
+	private volatile boolean closed;
+
+	/** the newest frame that the sending thread did not take yet and the unused frames */
+	private final AtomicReference<Frame> latest = new AtomicReference<Frame>();
+	private final ConcurrentLinkedQueue<Frame> free = new ConcurrentLinkedQueue<Frame>();
+
+	/** simulation thread: the masses and radii of the planets in the last frame */
+	private long[] lastId = new long[0];
+	private double[] lastMass = new double[0], lastRadius = new double[0];
+	private int lastCount;
+	private HashMap<Long, Integer> lastIndex;
+
+	/** simulation thread: the changed masses that may not have reached the sending thread */
+	private final HashMap<Long, double[]> changes = new HashMap<Long, double[]>();
+	private long frameNumber;
+
+	/** sending thread: the masses and radii of all planets and the subscribers */
+	private final HashMap<Long, double[]> masses = new HashMap<Long, double[]>();
+	private final ArrayList<Subscriber> subscribers = new ArrayList<Subscriber>();
+
+	private final AtomicLong sentFrames = new AtomicLong(), droppedFrames = new AtomicLong();
+	private volatile int subscriberCount;
+
+	/**
+	 * Listens for subscribers on an address and starts the sending thread.
+	 *
+	 * @param address
+	 *            host:port or unix:path, see Connection
+	 * @param interval
+	 *            a frame is published every interval steps
+	 * @throws IOException
+	 */
+	public TelemetryPublisher(String address, int interval) throws IOException {
+		this.interval = Math.max(interval, 1);
+		SocketAddress socketAddress = Connection.parseAddress(address);
+		server = Connection.openServer(socketAddress);
+		server.bind(socketAddress);
+		server.configureBlocking(false);
+		selector = Selector.open();
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		thread = new Thread(this::send, "Telemetry");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Publishes the first frame of a simulation, which holds the masses of all
+	 * planets. Called by the simulation when the publisher is set.
+	 *
+	 * @param simulation
+	 */
+	public void start(Simulation simulation) {
+		lastCount = 0;
+		lastIndex = null;
+		publish(simulation);
+	}
+
+	/**
+	 * Writes a frame with the current state of a simulation and hands it to the
+	 * sending thread. Only called by the simulation thread, never waits.
+	 *
+	 * @param simulation
+	 */
+	public void publish(Simulation simulation) {
+		BodyStore planets = simulation.getPlanetStore();
+		BodyStore particles = simulation.getParticleStore();
+		findChanges(planets);
+
+		int np = planets.size(), nq = particles.size(), nc = changes.size();
+		int size = messageHeaderSize + frameHeaderSize + nc * massRecordSize + (np + nq) * bodyRecordSize;
+		Frame frame = free.poll();
+		if (frame == null)
+			frame = new Frame();
+		ByteBuffer b = frame.reserve(size);
+		b.putInt(magic);
+		b.putInt(frameMessage);
+		b.putInt(size - messageHeaderSize);
+		b.putLong(simulation.getSteps());
+		b.putDouble(simulation.getSecondsCounter());
+		b.putInt(np);
+		b.putInt(nq);
+		b.putInt(nc);
+		b.putInt(0);
+		for (var change : changes.entrySet()) {
+			b.putLong(change.getKey());
+			b.putDouble(change.getValue()[0]);
+			b.putDouble(change.getValue()[1]);
+		}
+		putBodies(b, planets);
+		putBodies(b, particles);
+		b.flip();
+		frame.changes = nc;
+		frame.references = 1;
+
+		// the previous frame was taken if it is not there anymore, then the
+		// changes in it reached the sending thread. Otherwise the sending thread
+		// was already woken up for it and takes the new frame instead. Without
+		// subscribers the sending thread takes the frames when it wakes up anyway.
+		Frame dropped = latest.getAndSet(frame);
+		int subscribers = subscriberCount;
+		if (dropped != null) {
+			free.add(dropped);
+			droppedFrames.addAndGet(subscribers);
+		} else {
+			long taken = frameNumber - 1;
+			if (!changes.isEmpty())
+				changes.values().removeIf(change -> change[2] <= taken);
+			if (subscribers > 0)
+				selector.wakeup();
+		}
+		frameNumber++;
+	}
+
+	/**
+	 * Compares the masses and radii of the planets with the last frame. The
+	 * planets keep their order in the store, so the planet at an index is
+	 * usually found at the next index of the last frame.
+	 */
+	private void findChanges(BodyStore planets) {
+		int n = planets.size();
+		long[] id = planets.getId();
+		double[] mass = planets.getMass(), radius = planets.getRadius();
+		int j = 0;
+		for (int i = 0; i < n; i++) {
+			while (j < lastCount && lastId[j] != id[i] && lastId[j] < id[i])
+				j++;
+			int k = j < lastCount && lastId[j] == id[i] ? j : lastIndex(id[i]);
+			if (k < 0 || lastMass[k] != mass[i] || lastRadius[k] != radius[i])
+				changes.put(id[i], new double[] { mass[i], radius[i], frameNumber });
+		}
+
+		if (lastId.length < n) {
+			lastId = new long[planets.getX().length];
+			lastMass = new double[lastId.length];
+			lastRadius = new double[lastId.length];
+		}
+		System.arraycopy(id, 0, lastId, 0, n);
+		System.arraycopy(mass, 0, lastMass, 0, n);
+		System.arraycopy(radius, 0, lastRadius, 0, n);
+		lastCount = n;
+		lastIndex = null;
+	}
+
+	/**
+	 * @return the index of a planet in the last frame or -1
+	 */
+	private int lastIndex(long id) {
+		if (lastIndex == null) {
+			lastIndex = new HashMap<Long, Integer>();
+			for (int k = 0; k < lastCount; k++)
+				lastIndex.put(lastId[k], k);
+		}
+		Integer k = lastIndex.get(id);
+		return k == null ? -1 : k;
+	}
+
+	private static void putBodies(ByteBuffer b, BodyStore store) {
+		long[] id = store.getId();
+		double[] x = store.getX(), y = store.getY(), velX = store.getVelX(), velY = store.getVelY();
+		for (int i = 0; i < store.size(); i++) {
+			b.putLong(id[i]);
+			b.putDouble(x[i]);
+			b.putDouble(y[i]);
+			b.putDouble(velX[i]);
+			b.putDouble(velY[i]);
+		}
+	}
+
+	/**
+	 * The loop of the sending thread: accepts subscribers, takes the newest frame
+	 * and writes to all subscribers that can take data.
+	 */
+	private void send() {
+		try {
+			while (!closed) {
+				selector.select(100);
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid())
+						continue;
+					if (key.isAcceptable())
+						accept();
+					else if (key.isWritable())
+						((Subscriber) key.attachment()).write();
+				}
+
+				Frame frame = latest.getAndSet(null);
+				if (frame != null) {
+					takeChanges(frame);
+					for (Subscriber subscriber : subscribers)
+						subscriber.offer(frame);
+					release(frame);
+				}
+				subscribers.removeIf(subscriber -> subscriber.closed);
+				subscriberCount = subscribers.size();
+			}
+		} catch (IOException e) {
+			if (!closed)
+				throw new UncheckedIOException(e);
+		} finally {
+			for (Subscriber subscriber : subscribers)
+				subscriber.close();
+			subscribers.clear();
+			subscriberCount = 0;
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = server.accept();
+		if (channel == null)
+			return;
+		channel.configureBlocking(false);
+		if (channel.getLocalAddress() instanceof InetSocketAddress)
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		Subscriber subscriber = new Subscriber(channel);
+		subscriber.key = channel.register(selector, 0, subscriber);
+		subscribers.add(subscriber);
+	}
+
+	/**
+	 * Saves the mass changes of a frame in the masses of all planets and
+	 * forgets the planets that are not in the frame anymore. There are such
+	 * planets exactly if there are more masses than planets.
+	 */
+	private void takeChanges(Frame frame) {
+		ByteBuffer b = frame.buffer;
+		int at = messageHeaderSize + frameHeaderSize;
+		for (int c = 0; c < frame.changes; c++, at += massRecordSize)
+			masses.put(b.getLong(at), new double[] { b.getDouble(at + 8), b.getDouble(at + 16) });
+
+		int np = b.getInt(messageHeaderSize + 16);
+		if (masses.size() > np) {
+			HashSet<Long> ids = new HashSet<Long>();
+			for (int i = 0; i < np; i++, at += bodyRecordSize)
+				ids.add(b.getLong(at));
+			masses.keySet().retainAll(ids);
+		}
+	}
+
+	/**
+	 * Gives a frame back for reuse when no subscriber uses it anymore.
+	 */
+	private void release(Frame frame) {
+		if (--frame.references == 0)
+			free.add(frame);
+	}
+
+	/**
+	 * @return the number of steps between two frames
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * @return the number of frames that were written completely to a subscriber
+	 */
+	public long getSentFrames() {
+		return sentFrames.get();
+	}
+
+	/**
+	 * @return the number of frames that were dropped, once for every subscriber
+	 *         that missed it
+	 */
+	public long getDroppedFrames() {
+		return droppedFrames.get();
+	}
+
+	public int getSubscriberCount() {
+		return subscriberCount;
+	}
+
+	/**
+	 * Stops the sending thread and closes all connections. Does nothing if the
+	 * publisher is already closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		selector.wakeup();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		selector.close();
+		server.close();
+	}
+
+	/**
+	 * A message buffer that is shared by all subscribers. The references are
+	 * only counted by the sending thread.
+	 */
+	private static class Frame {
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 12);
+		int changes;
+		int references;
+
+		ByteBuffer reserve(int size) {
+			if (buffer.capacity() < size)
+				buffer = ByteBuffer.allocateDirect(size + size / 4);
+			buffer.clear();
+			return buffer;
+		}
+	}
+
+	/**
+	 * A connection to a subscriber with the frame that is written now and the
+	 * newest frame after it. Only used by the sending thread.
+	 */
+	private class Subscriber {
+
+		final SocketChannel channel;
+		SelectionKey key;
+		boolean closed;
+
+		/** the frame that is written now, the part that is still to write and the next frame */
+		Frame current, next;
+		ByteBuffer remaining;
+
+		/** the masses message before the current frame */
+		ByteBuffer massesBuffer = ByteBuffer.allocate(0);
+
+		/** true if the subscriber missed a frame with mass changes */
+		boolean missedChanges = true;
+
+		Subscriber(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * Writes a new frame after the current one, a frame that was not started
+		 * yet is dropped.
+		 */
+		void offer(Frame frame) {
+			if (closed)
+				return;
+			frame.references++;
+			if (current == null) {
+				begin(frame);
+				write();
+				return;
+			}
+			if (next != null) {
+				missedChanges |= next.changes > 0;
+				release(next);
+				droppedFrames.incrementAndGet();
+			}
+			next = frame;
+		}
+
+		/**
+		 * Makes a frame the current frame, with a masses message before it if
+		 * the subscriber missed mass changes.
+		 */
+		void begin(Frame frame) {
+			current = frame;
+			remaining = frame.buffer.duplicate();
+			if (missedChanges) {
+				writeMasses(frame);
+				missedChanges = false;
+			}
+		}
+
+		/**
+		 * Writes the masses of the planets of a frame into the masses message.
+		 */
+		void writeMasses(Frame frame) {
+			ByteBuffer b = frame.buffer;
+			long steps = b.getLong(messageHeaderSize);
+			int np = b.getInt(messageHeaderSize + 16);
+			int size = messageHeaderSize + 16 + np * massRecordSize;
+			if (massesBuffer.capacity() < size)
+				massesBuffer = ByteBuffer.allocate(size + size / 4);
+			massesBuffer.clear();
+			massesBuffer.putInt(magic);
+			massesBuffer.putInt(massesMessage);
+			massesBuffer.putInt(size - messageHeaderSize);
+			massesBuffer.putLong(steps);
+			massesBuffer.putInt(np);
+			massesBuffer.putInt(0);
+			int at = messageHeaderSize + frameHeaderSize + frame.changes * massRecordSize;
+			for (int i = 0; i < np; i++, at += bodyRecordSize) {
+				long id = b.getLong(at);
+				double[] mass = masses.get(id);
+				massesBuffer.putLong(id);
+				massesBuffer.putDouble(mass != null ? mass[0] : 0);
+				massesBuffer.putDouble(mass != null ? mass[1] : 0);
+			}
+			massesBuffer.flip();
+		}
+
+		/**
+		 * Writes as much as the channel takes without waiting.
+		 */
+		void write() {
+			try {
+				while (current != null) {
+					if (massesBuffer.hasRemaining()) {
+						channel.write(massesBuffer);
+						if (massesBuffer.hasRemaining())
+							break;
+					}
+					channel.write(remaining);
+					if (remaining.hasRemaining())
+						break;
+
+					release(current);
+					sentFrames.incrementAndGet();
+					current = null;
+					if (next != null) {
+						Frame frame = next;
+						next = null;
+						begin(frame);
+					}
+				}
+				key.interestOps(current != null ? SelectionKey.OP_WRITE : 0);
+			} catch (IOException e) {
+				close();
+			}
+		}
+
+		/**
+		 * Closes the connection and gives the frames back, for example when the
+		 * subscriber disconnected.
+		 */
+		void close() {
+			if (closed)
+				return;
+			closed = true;
+			if (current != null)
+				release(current);
+			if (next != null)
+				release(next);
+			current = next = null;
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// the connection is gone anyway
+			}
+		}
+	}
+
+}
@@ -6,6 +6,8 @@ import bodies.Constellation;
 import bodies.Particle;
 import bodies.Planet;
 import javafx.scene.paint.Color;
+import simulation.integrators.RegularizedLeapfrog;
+import simulation.integrators.WisdomHolman;
 import utils.Orbit;
 import utils.Utils;
 import utils.Vec;
@@ -61,7 +63,9 @@ public class Systems {
 		// asteroid belt between mars and Jupiter
 		ArrayList<Particle> particles = ParticleArrays.getRing(sun, asteroids, PlanetData.AU * 2.3, PlanetData.AU * 3.3);
 
-		return new Constellation(name, planets, particles, scale, time);
+		Constellation solarSystem = new Constellation(name, planets, particles, scale, time);
+		solarSystem.setIntegrator(new WisdomHolman());
+		return solarSystem;
 	}
 
 	/**
@@ -87,7 +91,9 @@ public class Systems {
 
 		ArrayList<Planet> planets = new ArrayList<Planet>(Arrays.asList(sun, jupiter, saturn, uranus, neptun, pluto));
 
-		return new Constellation(name, planets, scale, time);
+		Constellation outerSolarSystem = new Constellation(name, planets, scale, time);
+		outerSolarSystem.setIntegrator(new WisdomHolman());
+		return outerSolarSystem;
 	}
 
 	/**
@@ -155,7 +161,9 @@ public class Systems {
 
 //		ArrayList<Particle> particles = ParticleArrays.getRing(jupiter, 100, 92e6, 122e6);
 
-		return new Constellation("Jupiter System", planets, 4.8e-7, 3);
+		Constellation jupiterSystem = new Constellation("Jupiter System", planets, 4.8e-7, 3);
+		jupiterSystem.setIntegrator(new WisdomHolman());
+		return jupiterSystem;
 	}
 
 	/**
@@ -206,7 +214,9 @@ public class Systems {
 
 		ArrayList<Particle> particles = ParticleArrays.getRing(saturn, ringParticle, 135e6, 200e6);
 
-		return new Constellation(name, planets, particles, scale, time, sps);
+		Constellation saturnSystem = new Constellation(name, planets, particles, scale, time, sps);
+		saturnSystem.setIntegrator(new WisdomHolman());
+		return saturnSystem;
 	}
 
 	/**
@@ -220,7 +230,10 @@ public class Systems {
 
 		ArrayList<Planet> planets = new ArrayList<Planet>(Arrays.asList(ast1, ast2, jupiter));
 
-		return new Constellation("Jupiter flyby", planets, 4.4e-7, 3);
+		// the passes are regularized, so the step can be much larger
+		Constellation jupiterFlyby = new Constellation("Jupiter flyby", planets, 4.4e-7, 30, 600);
+		jupiterFlyby.setIntegrator(new RegularizedLeapfrog(1e9));
+		return jupiterFlyby;
 	}
 
 	/**
@@ -308,11 +321,11 @@ public class Systems {
 			Planet p = PlanetData.getRandomPlanet();
 			
 			double s = 6e7;
-			double x = Utils.plusMinus() * Math.random() * s * 12;
-			double y = Utils.plusMinus() * Math.random() * s * 7;
+			double x = Utils.plusMinus() * Utils.random() * s * 12;
+			double y = Utils.plusMinus() * Utils.random() * s * 7;
 
 			p.setPos(x, y);
-			p.setVel(Utils.plusMinus() * Math.random() * 5000, Utils.plusMinus() * Math.random() * 5000);
+			p.setVel(Utils.plusMinus() * Utils.random() * 5000, Utils.plusMinus() * Utils.random() * 5000);
 			p.setColor(Utils.getRandomColor());
 
 			planets.add(p);
@@ -338,7 +351,10 @@ public class Systems {
 
 		ArrayList<Planet> planets = new ArrayList<Planet>(Arrays.asList(saturn, uranus));
 
-		return new Constellation("Saturn Uranus encounter", planets, particles, 0.7e-6, 4, sps);
+		Constellation saturnUranusEncounter = new Constellation("Saturn Uranus encounter", planets, particles, 0.7e-6, 4,
+				sps);
+		saturnUranusEncounter.setIntegrator(new RegularizedLeapfrog(1e9));
+		return saturnUranusEncounter;
 	}
 
 	/**
@@ -415,7 +431,9 @@ public class Systems {
 
 		ArrayList<Planet> planets = new ArrayList<Planet>(Arrays.asList(p1, p2));
 
-		return new Constellation("Binary with rings", planets, particlesAll, 7.3e-7, 10, sps);
+		Constellation binaryWithRings = new Constellation("Binary with rings", planets, particlesAll, 7.3e-7, 10, sps);
+		binaryWithRings.setMultiRate(true);
+		return binaryWithRings;
 	}
 
 	/**
@@ -433,7 +451,9 @@ public class Systems {
 		ArrayList<Particle> particles = ParticleArrays.getField(PlanetData.moonSma * 2, PlanetData.moonSma * 2,
 				new Vec(-PlanetData.moonSma, 0));
 
-		return new Constellation("Earth flying through particles", planets, particles, 5e-7, 50, sps);
+		Constellation flyThrough = new Constellation("Earth flying through particles", planets, particles, 5e-7, 50, sps);
+		flyThrough.setMultiRate(true);
+		return flyThrough;
 	}
 
 	/**
@@ -442,7 +462,9 @@ public class Systems {
 	public static Constellation particleField() {
 		ArrayList<Planet> planets = new ArrayList<Planet>(Arrays.asList(PlanetData.getEarth()));
 		ArrayList<Particle> particles = ParticleArrays.getField(PlanetData.moonSma, PlanetData.moonSma, new Vec());
-		return new Constellation("Earth in particle field", planets, particles, 2.65e-6, 5, 1000);
+		Constellation particleField = new Constellation("Earth in particle field", planets, particles, 2.65e-6, 5, 1000);
+		particleField.setMultiRate(true);
+		return particleField;
 	}
 
 	public static Constellation iss() {
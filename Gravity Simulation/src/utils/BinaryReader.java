@@ -0,0 +1,144 @@
+package utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads what a BinaryWriter wrote from a channel through a direct buffer.
+ * Arrays are copied from the buffer in blocks without objects for the single
+ * values.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class BinaryReader {
+
+	private static final int defaultBufferSize = 1 << 16;
+
+	private final ReadableByteChannel channel;
+	private final ByteBuffer in;
+
+	/**
+	 * @param channel
+	 *            a channel in blocking mode
+	 * @param bufferSize
+	 *            the size of the buffer in bytes, at least 8
+	 */
+	public BinaryReader(ReadableByteChannel channel, int bufferSize) {
+		this.channel = channel;
+		this.in = ByteBuffer.allocateDirect(Math.max(bufferSize, Long.BYTES));
+		in.limit(0);
+	}
+
+	/**
+	 * @param channel
+	 *            a channel in blocking mode
+	 */
+	public BinaryReader(ReadableByteChannel channel) {
+		this(channel, defaultBufferSize);
+	}
+
+	public byte readByte() throws IOException {
+		fill(1);
+		return in.get();
+	}
+
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	public int readInt() throws IOException {
+		fill(Integer.BYTES);
+		return in.getInt();
+	}
+
+	public long readLong() throws IOException {
+		fill(Long.BYTES);
+		return in.getLong();
+	}
+
+	public double readDouble() throws IOException {
+		fill(Double.BYTES);
+		return in.getDouble();
+	}
+
+	/**
+	 * @return a string written by writeString, null if null was written
+	 */
+	public String readString() throws IOException {
+		int length = readInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		int i = 0;
+		while (i < length) {
+			fill(1);
+			int k = Math.min(length - i, in.remaining());
+			in.get(bytes, i, k);
+			i += k;
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads the elements from index from (inclusive) to index to (exclusive) of
+	 * an array.
+	 */
+	public void readDoubles(double[] a, int from, int to) throws IOException {
+		int i = from;
+		while (i < to) {
+			fill(Double.BYTES);
+			int k = Math.min(to - i, in.remaining() / Double.BYTES);
+			in.asDoubleBuffer().get(a, i, k);
+			in.position(in.position() + k * Double.BYTES);
+			i += k;
+		}
+	}
+
+	/**
+	 * Reads the elements from index from (inclusive) to index to (exclusive) of
+	 * an array.
+	 */
+	public void readInts(int[] a, int from, int to) throws IOException {
+		int i = from;
+		while (i < to) {
+			fill(Integer.BYTES);
+			int k = Math.min(to - i, in.remaining() / Integer.BYTES);
+			in.asIntBuffer().get(a, i, k);
+			in.position(in.position() + k * Integer.BYTES);
+			i += k;
+		}
+	}
+
+	/**
+	 * Reads the elements from index from (inclusive) to index to (exclusive) of
+	 * an array.
+	 */
+	public void readLongs(long[] a, int from, int to) throws IOException {
+		int i = from;
+		while (i < to) {
+			fill(Long.BYTES);
+			int k = Math.min(to - i, in.remaining() / Long.BYTES);
+			in.asLongBuffer().get(a, i, k);
+			in.position(in.position() + k * Long.BYTES);
+			i += k;
+		}
+	}
+
+	/**
+	 * Reads from the channel until at least a number of bytes are in the buffer.
+	 */
+	private void fill(int bytes) throws IOException {
+		if (in.remaining() >= bytes)
+			return;
+		in.compact();
+		while (in.position() < bytes)
+			if (channel.read(in) < 0)
+				throw new EOFException("end of channel");
+		in.flip();
+	}
+
+}
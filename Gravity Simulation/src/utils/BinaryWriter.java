@@ -0,0 +1,155 @@
+package utils;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes numbers, arrays and strings into a channel through a direct buffer.
+ * Numbers are written in the order of Java (big endian), so the data can be
+ * read on other machines. Arrays are copied into the buffer in blocks without
+ * objects for the single values.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class BinaryWriter implements Flushable {
+
+	private static final int defaultBufferSize = 1 << 16;
+
+	private final WritableByteChannel channel;
+	private final ByteBuffer out;
+
+	/**
+	 * @param channel
+	 *            a channel in blocking mode
+	 * @param bufferSize
+	 *            the size of the buffer in bytes, at least 8
+	 */
+	public BinaryWriter(WritableByteChannel channel, int bufferSize) {
+		this.channel = channel;
+		this.out = ByteBuffer.allocateDirect(Math.max(bufferSize, Long.BYTES));
+	}
+
+	/**
+	 * @param channel
+	 *            a channel in blocking mode
+	 */
+	public BinaryWriter(WritableByteChannel channel) {
+		this(channel, defaultBufferSize);
+	}
+
+	public void writeByte(int b) throws IOException {
+		reserve(1);
+		out.put((byte) b);
+	}
+
+	public void writeBoolean(boolean b) throws IOException {
+		writeByte(b ? 1 : 0);
+	}
+
+	public void writeInt(int v) throws IOException {
+		reserve(Integer.BYTES);
+		out.putInt(v);
+	}
+
+	public void writeLong(long v) throws IOException {
+		reserve(Long.BYTES);
+		out.putLong(v);
+	}
+
+	public void writeDouble(double v) throws IOException {
+		reserve(Double.BYTES);
+		out.putDouble(v);
+	}
+
+	/**
+	 * Writes a string as its length and its UTF-8 bytes, null is written as
+	 * length -1.
+	 */
+	public void writeString(String s) throws IOException {
+		if (s == null) {
+			writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeInt(bytes.length);
+		int i = 0;
+		while (i < bytes.length) {
+			reserve(1);
+			int k = Math.min(bytes.length - i, out.remaining());
+			out.put(bytes, i, k);
+			i += k;
+		}
+	}
+
+	/**
+	 * Writes the elements from index from (inclusive) to index to (exclusive) of
+	 * an array.
+	 */
+	public void writeDoubles(double[] a, int from, int to) throws IOException {
+		int i = from;
+		while (i < to) {
+			reserve(Double.BYTES);
+			int k = Math.min(to - i, out.remaining() / Double.BYTES);
+			out.asDoubleBuffer().put(a, i, k);
+			out.position(out.position() + k * Double.BYTES);
+			i += k;
+		}
+	}
+
+	/**
+	 * Writes the elements from index from (inclusive) to index to (exclusive) of
+	 * an array.
+	 */
+	public void writeInts(int[] a, int from, int to) throws IOException {
+		int i = from;
+		while (i < to) {
+			reserve(Integer.BYTES);
+			int k = Math.min(to - i, out.remaining() / Integer.BYTES);
+			out.asIntBuffer().put(a, i, k);
+			out.position(out.position() + k * Integer.BYTES);
+			i += k;
+		}
+	}
+
+	/**
+	 * Writes the elements from index from (inclusive) to index to (exclusive) of
+	 * an array.
+	 */
+	public void writeLongs(long[] a, int from, int to) throws IOException {
+		int i = from;
+		while (i < to) {
+			reserve(Long.BYTES);
+			int k = Math.min(to - i, out.remaining() / Long.BYTES);
+			out.asLongBuffer().put(a, i, k);
+			out.position(out.position() + k * Long.BYTES);
+			i += k;
+		}
+	}
+
+	/**
+	 * Writes everything in the buffer into the channel.
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flip();
+		while (out.hasRemaining())
+			channel.write(out);
+		out.clear();
+	}
+
+	/**
+	 * Writes the buffer into the channel if there is no space for a number of
+	 * bytes.
+	 */
+	private void reserve(int bytes) throws IOException {
+		if (out.remaining() < bytes)
+			flush();
+	}
+
+}
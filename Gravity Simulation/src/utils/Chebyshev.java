@@ -0,0 +1,158 @@
+package utils;
+
+/**
+ * Chebyshev series on the interval [-1, 1]: evaluation of the value and the
+ * derivative and a least squares fit to values and derivatives at given
+ * points. The coefficients of a series of degree n are the n + 1 elements of an
+ * array from an offset on.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class Chebyshev {
+
+	/**
+	 * @param c
+	 *            the coefficients
+	 * @param offset
+	 *            the index of the first coefficient
+	 * @param degree
+	 * @param tau
+	 *            a point in [-1, 1]
+	 * @return the value of the series at tau
+	 */
+	public static double value(double[] c, int offset, int degree, double tau) {
+
+		// Clenshaw's recurrence
+		double b1 = 0, b2 = 0;
+		for (int k = degree; k >= 1; k--) {
+			double b = 2 * tau * b1 - b2 + c[offset + k];
+			b2 = b1;
+			b1 = b;
+		}
+		return tau * b1 - b2 + c[offset];
+	}
+
+	/**
+	 * @param c
+	 *            the coefficients
+	 * @param offset
+	 *            the index of the first coefficient
+	 * @param degree
+	 * @param tau
+	 *            a point in [-1, 1]
+	 * @return the derivative of the series by tau at tau
+	 */
+	public static double derivative(double[] c, int offset, int degree, double tau) {
+		if (degree == 0)
+			return 0;
+
+		// T'(k+1) = 2 T(k) + 2 tau T'(k) - T'(k-1)
+		double t0 = 1, t1 = tau;
+		double d0 = 0, d1 = 1;
+		double sum = c[offset + 1];
+		for (int k = 2; k <= degree; k++) {
+			double d = 2 * t1 + 2 * tau * d1 - d0;
+			double t = 2 * tau * t1 - t0;
+			sum += c[offset + k] * d;
+			t0 = t1;
+			t1 = t;
+			d0 = d1;
+			d1 = d;
+		}
+		return sum;
+	}
+
+	/**
+	 * Fits two series at once to the values and derivatives of two functions at
+	 * some points by least squares. The values and the derivatives have the same
+	 * weight, so the derivatives must be given by tau in the units of the values.
+	 * A degree up to 2 * points - 1 can be fitted.
+	 *
+	 * @param tau
+	 *            the points in [-1, 1]
+	 * @param x
+	 *            the values of the first function
+	 * @param dx
+	 *            the derivatives of the first function by tau
+	 * @param y
+	 *            the values of the second function
+	 * @param dy
+	 *            the derivatives of the second function by tau
+	 * @param points
+	 *            the number of points from index 0 on
+	 * @param degree
+	 * @param cx
+	 *            the coefficients of the first series, degree + 1 from index 0
+	 * @param cy
+	 *            the coefficients of the second series, degree + 1 from index 0
+	 */
+	public static void fit(double[] tau, double[] x, double[] dx, double[] y, double[] dy, int points, int degree,
+			double[] cx, double[] cy) {
+		int n = degree + 1;
+		double[] m = new double[n * n];
+		double[] bx = new double[n], by = new double[n];
+		double[] t = new double[n], d = new double[n];
+
+		// the normal equations of the rows for the values and the derivatives
+		for (int j = 0; j < points; j++) {
+			basis(tau[j], degree, t, d);
+			for (int a = 0; a < n; a++) {
+				for (int b = 0; b <= a; b++)
+					m[a * n + b] += t[a] * t[b] + d[a] * d[b];
+				bx[a] += t[a] * x[j] + d[a] * dx[j];
+				by[a] += t[a] * y[j] + d[a] * dy[j];
+			}
+		}
+
+		// Cholesky decomposition of the lower triangle
+		for (int a = 0; a < n; a++) {
+			for (int b = 0; b <= a; b++) {
+				double s = m[a * n + b];
+				for (int k = 0; k < b; k++)
+					s -= m[a * n + k] * m[b * n + k];
+				if (a == b)
+					m[a * n + a] = Math.sqrt(Math.max(s, Double.MIN_NORMAL));
+				else
+					m[a * n + b] = s / m[b * n + b];
+			}
+		}
+		solve(m, n, bx, cx);
+		solve(m, n, by, cy);
+	}
+
+	/**
+	 * Calculates the Chebyshev polynomials and their derivatives at a point.
+	 */
+	private static void basis(double tau, int degree, double[] t, double[] d) {
+		t[0] = 1;
+		d[0] = 0;
+		if (degree == 0)
+			return;
+		t[1] = tau;
+		d[1] = 1;
+		for (int k = 2; k <= degree; k++) {
+			t[k] = 2 * tau * t[k - 1] - t[k - 2];
+			d[k] = 2 * t[k - 1] + 2 * tau * d[k - 1] - d[k - 2];
+		}
+	}
+
+	/**
+	 * Solves L L^T c = b with the Cholesky factor L in the lower triangle of m.
+	 */
+	private static void solve(double[] m, int n, double[] b, double[] c) {
+		for (int a = 0; a < n; a++) {
+			double s = b[a];
+			for (int k = 0; k < a; k++)
+				s -= m[a * n + k] * c[k];
+			c[a] = s / m[a * n + a];
+		}
+		for (int a = n - 1; a >= 0; a--) {
+			double s = c[a];
+			for (int k = a + 1; k < n; k++)
+				s -= m[k * n + a] * c[k];
+			c[a] = s / m[a * n + a];
+		}
+	}
+
+}
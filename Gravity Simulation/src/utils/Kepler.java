@@ -0,0 +1,115 @@
+package utils;
+
+/**
+ * Moves a body on its Kepler orbit around a central mass. The orbit is solved
+ * with universal variables, so it works for elliptical, parabolic and
+ * hyperbolic orbits.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class Kepler {
+
+	private static final int maxIterations = 50;
+	private static final double tolerance = 1e-13;
+
+	/**
+	 * Moves a body with position and velocity relative to a central mass a time dt
+	 * along its Kepler orbit. Position and velocity are given and returned at
+	 * index i of the arrays.
+	 *
+	 * @param mu
+	 *            G times the central mass
+	 * @param x
+	 * @param y
+	 * @param velX
+	 * @param velY
+	 * @param i
+	 * @param dt
+	 */
+	public static void drift(double mu, double[] x, double[] y, double[] velX, double[] velY, int i, double dt) {
+		double x0 = x[i], y0 = y[i];
+		double vx0 = velX[i], vy0 = velY[i];
+
+		double r0 = Math.sqrt(x0 * x0 + y0 * y0);
+		double v2 = vx0 * vx0 + vy0 * vy0;
+		double sqrtMu = Math.sqrt(mu);
+
+		// radial velocity part and reciprocal of the semi-major axis
+		double vr0 = (x0 * vx0 + y0 * vy0) / r0;
+		double alpha = 2 / r0 - v2 / mu;
+
+		// solve the universal Kepler equation for chi with Newton's method
+		double chi = sqrtMu * Math.abs(alpha) * dt;
+		if (alpha <= 0 || chi == 0)
+			chi = sqrtMu * dt / r0;
+
+		double a = r0 * vr0 / sqrtMu;
+		double b = 1 - alpha * r0;
+		double c = 0, s = 0;
+		for (int k = 0; k < maxIterations; k++) {
+			double chi2 = chi * chi;
+			double z = alpha * chi2;
+			c = stumpffC(z);
+			s = stumpffS(z);
+
+			double f = a * chi2 * c + b * chi2 * chi * s + r0 * chi - sqrtMu * dt;
+			double df = a * chi * (1 - z * s) + b * chi2 * c + r0;
+			double delta = f / df;
+			chi -= delta;
+
+			if (Math.abs(delta) <= tolerance * Math.abs(chi))
+				break;
+		}
+
+		double chi2 = chi * chi;
+		double z = alpha * chi2;
+		c = stumpffC(z);
+		s = stumpffS(z);
+
+		// Lagrange coefficients
+		double f = 1 - chi2 / r0 * c;
+		double g = dt - chi2 * chi * s / sqrtMu;
+
+		double nx = f * x0 + g * vx0;
+		double ny = f * y0 + g * vy0;
+		double r = Math.sqrt(nx * nx + ny * ny);
+
+		double df = sqrtMu / (r * r0) * (z * chi * s - chi);
+		double dg = 1 - chi2 / r * c;
+
+		x[i] = nx;
+		y[i] = ny;
+		velX[i] = df * x0 + dg * vx0;
+		velY[i] = df * y0 + dg * vy0;
+	}
+
+	/**
+	 * The Stumpff function C(z) = (1 - cos(sqrt(z))) / z
+	 */
+	static double stumpffC(double z) {
+		if (z > 1e-3) {
+			return (1 - Math.cos(Math.sqrt(z))) / z;
+		} else if (z < -1e-3) {
+			return (Math.cosh(Math.sqrt(-z)) - 1) / -z;
+		} else {
+			return 1.0 / 2 - z / 24 + z * z / 720 - z * z * z / 40320;
+		}
+	}
+
+	/**
+	 * The Stumpff function S(z) = (sqrt(z) - sin(sqrt(z))) / sqrt(z)^3
+	 */
+	static double stumpffS(double z) {
+		if (z > 1e-3) {
+			double sz = Math.sqrt(z);
+			return (sz - Math.sin(sz)) / (sz * z);
+		} else if (z < -1e-3) {
+			double sz = Math.sqrt(-z);
+			return (Math.sinh(sz) - sz) / (sz * -z);
+		} else {
+			return 1.0 / 6 - z / 120 + z * z / 5040 - z * z * z / 362880;
+		}
+	}
+
+}
@@ -0,0 +1,126 @@
+package utils;
+
+/**
+ * Moves the relative position of two bodies with the Levi-Civita
+ * regularization, the form of the Kustaanheimo-Stiefel regularization in two
+ * dimensions. The position z = x + iy is written as the square of a complex
+ * number u and the time is replaced by a fictitious time s with dt = r ds. In
+ * these variables the two-body problem is a harmonic oscillator without the
+ * singularity at r = 0, so very close passes are solved as accurately as wide
+ * orbits.
+ *
+ * The oscillator is solved exactly with Stumpff functions, only the fictitious
+ * time that belongs to a time step is searched with Newton's method.
+ *
+ * @author Jan Muskalla
+ *
+ */
+public class LeviCivita {
+
+	private static final int maxIterations = 200;
+	private static final double tolerance = 1e-14;
+
+	/**
+	 * Moves a relative position and velocity a time dt along the two-body orbit.
+	 *
+	 * @param mu
+	 *            G times the sum of both masses
+	 * @param state
+	 *            x, y, velX and velY of the relative position, changed in place
+	 * @param dt
+	 */
+	public static void drift(double mu, double[] state, double dt) {
+		double x0 = state[0], y0 = state[1];
+		double vx0 = state[2], vy0 = state[3];
+		double r0 = Math.sqrt(x0 * x0 + y0 * y0);
+		if (r0 == 0) {
+			state[0] += vx0 * dt;
+			state[1] += vy0 * dt;
+			return;
+		}
+
+		// u = sqrt(z) and u' = du/ds = v * conj(u) / 2
+		double ux = Math.sqrt((r0 + x0) / 2);
+		double uy = Math.copySign(Math.sqrt((r0 - x0) / 2), y0);
+		double wx = (vx0 * ux + vy0 * uy) / 2;
+		double wy = (vy0 * ux - vx0 * uy) / 2;
+
+		double w2 = wx * wx + wy * wy;
+		double uw = ux * wx + uy * wy;
+
+		// u'' = -omega2 * u with the energy h = -2 * omega2
+		double omega2 = (mu - 2 * w2) / (2 * r0);
+
+		// the fictitious time of the step, t(s) is increasing, so Newton's method is
+		// kept inside a bracket and replaced by bisection if it converges slowly,
+		// like on the steep part of a hyperbolic orbit
+		double lo = 0, hi = dt / r0;
+		while (time(hi, r0, uw, w2, omega2) < dt)
+			hi *= 2;
+		double s = hi;
+		double step = hi - lo, lastStep = step;
+		for (int k = 0; k < maxIterations; k++) {
+			// t(s) overflows far out on a hyperbolic orbit, that is after the step
+			double f = time(s, r0, uw, w2, omega2) - dt;
+			if (f > 0 || Double.isNaN(f))
+				hi = s;
+			else
+				lo = s;
+
+			double df = radius(s, r0, uw, w2, omega2);
+			double next = s - f / df;
+			if (!(next > lo && next < hi) || Math.abs(2 * f) > Math.abs(lastStep * df)) {
+				next = (lo + hi) / 2;
+				lastStep = step;
+				step = hi - lo;
+			} else {
+				lastStep = step;
+				step = f / df;
+			}
+			if (Math.abs(next - s) <= tolerance * s) {
+				s = next;
+				break;
+			}
+			s = next;
+		}
+
+		// u(s) = u0 * c0 + u0' * s * c1 and u'(s) = -omega2 * s * c1 * u0 + c0 * u0'
+		double z = omega2 * s * s;
+		double c1 = 1 - z * Kepler.stumpffS(z);
+		double c0 = 1 - z * Kepler.stumpffC(z);
+		double nux = ux * c0 + wx * s * c1;
+		double nuy = uy * c0 + wy * s * c1;
+		double nwx = -omega2 * s * c1 * ux + c0 * wx;
+		double nwy = -omega2 * s * c1 * uy + c0 * wy;
+
+		// z = u^2 and v = 2 * u * u' / r
+		double r = nux * nux + nuy * nuy;
+		state[0] = nux * nux - nuy * nuy;
+		state[1] = 2 * nux * nuy;
+		state[2] = 2 * (nux * nwx - nuy * nwy) / r;
+		state[3] = 2 * (nux * nwy + nuy * nwx) / r;
+	}
+
+	/**
+	 * @return the physical time t(s), the integral of |u|^2 over s
+	 */
+	private static double time(double s, double r0, double uw, double w2, double omega2) {
+		double z = 4 * omega2 * s * s;
+		double c2 = Kepler.stumpffC(z);
+		double c3 = Kepler.stumpffS(z);
+		double c1 = 1 - z * c3;
+		return r0 * s * (1 + c1) / 2 + 2 * uw * s * s * c2 + 2 * w2 * s * s * s * c3;
+	}
+
+	/**
+	 * @return the distance r(s) = |u(s)|^2, the derivative of t(s)
+	 */
+	private static double radius(double s, double r0, double uw, double w2, double omega2) {
+		double z = 4 * omega2 * s * s;
+		double c2 = Kepler.stumpffC(z);
+		double c1 = 1 - z * Kepler.stumpffS(z);
+		double c0 = 1 - z * c2;
+		return r0 * (1 + c0) / 2 + 2 * uw * s * c1 + 2 * w2 * s * s * c2;
+	}
+
+}
@@ -45,6 +45,11 @@ public class PolarVec implements Vec2d {
 		return radius;
 	}
 
+	@Override
+	public double lengthSquared() {
+		return radius * radius;
+	}
+
 	@Override
 	public double getAngle() {
 		return Vec2d.toDegree(angle);
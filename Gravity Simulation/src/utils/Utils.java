@@ -1,11 +1,12 @@
 package utils;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Random;
 
 import bodies.Body;
 import bodies.Planet;
 import javafx.scene.paint.Color;
+import simulation.Snapshot;
 import window.Window;
 
 /**
@@ -18,6 +19,9 @@ public class Utils {
 
 	public static final double GRAV_CONST = 6.67408e-11;
 
+	/** the random numbers of each thread, so random systems can be repeated */
+	private static final ThreadLocal<Random> random = ThreadLocal.withInitial(Random::new);
+
 	/**
 	 * returns the most massive planet from a collection of planets
 	 * 
@@ -57,16 +61,12 @@ public class Utils {
 	/**
 	 * returns the biggest planet on the screen
 	 * 
-	 * @param planets
-	 * @param x1
-	 * @param x2
-	 * @param y1
-	 * @param y2
-	 * @return the most massive planet
+	 * @param win
+	 * @param snapshot
+	 *            the drawn state of the simulation
+	 * @return the most massive planet on the screen or null if there is none
 	 */
-	public static Planet getBiggestInView(Window win, Planet... planets) {
-		LinkedList<Planet> planetsInView = new LinkedList<Planet>();
-
+	public static Planet getBiggestInView(Window win, Snapshot snapshot) {
 		Vec topLeft = win.transfromBack(new Vec(0, 0));
 		Vec bottomRight = win.transfromBack(new Vec(win.getWidth(), win.getHeight()));
 
@@ -75,15 +75,16 @@ public class Utils {
 		double y1 = topLeft.getY();
 		double y2 = bottomRight.getY();
 
-		Vec pos;
-
-		for (Planet planet : planets) {
-			pos = planet.getPos();
-			if (pos.getX() > x1 && pos.getX() < x2 && pos.getY() < y1 && pos.getY() > y2)
-				planetsInView.add(planet);
+		int biggest = -1;
+		for (int i = 0; i < snapshot.getPlanetCount(); i++) {
+			double x = snapshot.getPlanetX(i);
+			double y = snapshot.getPlanetY(i);
+			if (x > x1 && x < x2 && y < y1 && y > y2
+					&& (biggest < 0 || snapshot.getPlanetMass(i) > snapshot.getPlanetMass(biggest)))
+				biggest = i;
 		}
 
-		return getBiggest(planetsInView.toArray(new Planet[planetsInView.size()]));
+		return biggest < 0 ? null : snapshot.getPlanets()[biggest];
 	}
 
 	/**
@@ -98,7 +99,7 @@ public class Utils {
 		double angle = getRandomInInervall(0, 360);
 		double radius = getRandomInInervall(rMin, rMax);
 
-		return (new Vec(new PolarVec(radius, angle))).add(parent.getPos());
+		return (new Vec(new PolarVec(radius, angle))).addInPlace(parent.getPos());
 	}
 
 	/**
@@ -111,13 +112,13 @@ public class Utils {
 	public static Vec getOrbitalVelocityCircular(Planet parent, Body body) {
 
 		// connection vector
-		Vec r = parent.getPos().sub(body.getPos());
+		Vec r = parent.getPos().subInPlace(body.getPos());
 
 		// normal vector to r
 		Vec velDirection = new Vec(r.getY(), -r.getX());
 
 		// norm and multiply with orbital speed
-		return velDirection.normalize().mult(orbSpeedCircular(parent, r.getRadius())).add(parent.getVel());
+		return velDirection.normalizeInPlace().multInPlace(orbSpeedCircular(parent, r.getRadius())).addInPlace(parent.getVel());
 	}
 
 	/**
@@ -130,13 +131,13 @@ public class Utils {
 	public static Vec getOrbitalVelocityElliptical(Planet parent, Body body, double sma) {
 
 		// connection vector
-		Vec r = parent.getPos().sub(body.getPos());
+		Vec r = parent.getPos().subInPlace(body.getPos());
 
 		// normal vector to r
 		Vec velDirection = new Vec(r.getY(), -r.getX());
 
 		// norm and multiply with orbital speed
-		return velDirection.normalize().mult(orbSpeedElliptical(parent, r.getRadius(), sma)).add(parent.getVel());
+		return velDirection.normalizeInPlace().multInPlace(orbSpeedElliptical(parent, r.getRadius(), sma)).addInPlace(parent.getVel());
 	}
 
 	/**
@@ -176,7 +177,27 @@ public class Utils {
 	}
 
 	public static Vec momComp(Planet p1, Planet p2) {
-		return p2.getVel().mult(p2.getMass()).mult(-1.0 / p1.getMass());
+		return p2.getVel().multInPlace(p2.getMass()).multInPlace(-1.0 / p1.getMass());
+	}
+
+	/**
+	 * Sets the seed of the random numbers of the current thread. Random systems
+	 * that are created afterwards in this thread are the same for the same seed.
+	 * 
+	 * @param seed
+	 */
+	public static void setSeed(long seed) {
+		random.set(new Random(seed));
+	}
+
+	/**
+	 * returns a random double in [0, 1) from the random numbers of the current
+	 * thread
+	 * 
+	 * @return random double
+	 */
+	public static double random() {
+		return random.get().nextDouble();
 	}
 
 	/**
@@ -185,7 +206,7 @@ public class Utils {
 	 * @return 1 or -1
 	 */
 	public static double plusMinus() {
-		if (Math.random() - 0.5 < 0)
+		if (random() - 0.5 < 0)
 			return -1;
 		else
 			return 1;
@@ -199,7 +220,7 @@ public class Utils {
 	 * @return random double
 	 */
 	public static double getRandomInInervall(double min, double max) {
-		return min + (Math.random() * (max - min));
+		return min + (random() * (max - min));
 	}
 
 	/**
@@ -208,7 +229,7 @@ public class Utils {
 	 * @return a color
 	 */
 	public static Color getRandomColor() {
-		return Color.color(Math.random()*0.8+0.2, Math.random()*0.8+0.2, Math.random()*0.8+0.2);
+		return Color.color(random()*0.8+0.2, random()*0.8+0.2, random()*0.8+0.2);
 	}
 
 	// /**
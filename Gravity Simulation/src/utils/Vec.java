@@ -3,6 +3,11 @@ package utils;
 /**
  * A two dimensional vector with x and y coordinate
  * 
+ * The methods mult, add, sub and normalize return a new vector. The methods
+ * ending with InPlace change this vector and the methods ending with Into write
+ * the result into a given vector, so they can be used in loops without creating
+ * objects.
+ * 
  * @author Jan Muskalla
  *
  */
@@ -30,6 +35,17 @@ public class Vec implements Vec2d {
 		this.y = y;
 	}
 
+	/**
+	 * Sets the coordinates of this vector to the coordinates of another vector.
+	 * 
+	 * @param v
+	 * @return this vector
+	 */
+	public Vec set(Vec2d v) {
+		set(v.getX(), v.getY());
+		return this;
+	}
+
 	@Override
 	public double getX() {
 		return x;
@@ -45,6 +61,11 @@ public class Vec implements Vec2d {
 		return Math.sqrt(x * x + y * y);
 	}
 
+	@Override
+	public double lengthSquared() {
+		return x * x + y * y;
+	}
+
 	@Override
 	public double getAngle() {
 		return Vec2d.toDegree(Math.tan(y / x));
@@ -70,6 +91,89 @@ public class Vec implements Vec2d {
 		return this.mult(1.0 / this.getRadius());
 	}
 
+	/**
+	 * @param a
+	 * @return this vector multiplied with a
+	 */
+	public Vec multInPlace(double a) {
+		x *= a;
+		y *= a;
+		return this;
+	}
+
+	/**
+	 * @param v
+	 * @return this vector plus v
+	 */
+	public Vec addInPlace(Vec2d v) {
+		x += v.getX();
+		y += v.getY();
+		return this;
+	}
+
+	/**
+	 * @param v
+	 * @return this vector minus v
+	 */
+	public Vec subInPlace(Vec2d v) {
+		x -= v.getX();
+		y -= v.getY();
+		return this;
+	}
+
+	/**
+	 * @return this vector with length 1
+	 */
+	public Vec normalizeInPlace() {
+		return multInPlace(1.0 / getRadius());
+	}
+
+	/**
+	 * Adds a multiple of another vector to this vector (fused multiply-add).
+	 * 
+	 * @param v
+	 * @param a
+	 * @return this vector plus a times v
+	 */
+	public Vec fma(Vec2d v, double a) {
+		x += a * v.getX();
+		y += a * v.getY();
+		return this;
+	}
+
+	/**
+	 * @param a
+	 * @param dst
+	 *            the vector for the result, can be this vector
+	 * @return dst set to this vector multiplied with a
+	 */
+	public Vec multInto(double a, Vec dst) {
+		dst.set(a * x, a * y);
+		return dst;
+	}
+
+	/**
+	 * @param v
+	 * @param dst
+	 *            the vector for the result, can be this vector or v
+	 * @return dst set to this vector plus v
+	 */
+	public Vec addInto(Vec2d v, Vec dst) {
+		dst.set(x + v.getX(), y + v.getY());
+		return dst;
+	}
+
+	/**
+	 * @param v
+	 * @param dst
+	 *            the vector for the result, can be this vector or v
+	 * @return dst set to this vector minus v
+	 */
+	public Vec subInto(Vec2d v, Vec dst) {
+		dst.set(x - v.getX(), y - v.getY());
+		return dst;
+	}
+
 	@Override
 	public String toString() {
 		return x + " " + y;
@@ -16,6 +16,11 @@ public interface Vec2d {
 
 	public double getRadius();
 
+	/**
+	 * @return the squared length, faster than getRadius for comparisons
+	 */
+	public double lengthSquared();
+
 	public double getAngle();
 
 	public Vec2d mult(double a);
@@ -30,6 +30,8 @@ public class HelpWindow extends Application {
 				+ "Accelerate Time	.\n"
 				+ "Decelerate Time	,\n"
 				+ "Reset Time		-\n"
+				+ "Reverse Replay	B\n"
+				+ "Skip in Replay	Left or Right\n"
 				+ "Trails			T\n"
 				+ "Labels			L\n"
 				+ "Information		I\n"
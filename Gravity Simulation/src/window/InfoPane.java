@@ -5,6 +5,7 @@ import javafx.scene.control.Label;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import simulation.Main;
+import simulation.Snapshot;
 
 /**
  * Implements the information group for the main window.
@@ -46,19 +47,21 @@ public class InfoPane extends Pane {
 	int spsFinal = 0;
 
 	/**
-	 * updates the info labels
+	 * updates the info labels with the drawn state of the simulation
+	 * 
+	 * @param snapshot
 	 */
-	public void updateInfo() {
+	public void updateInfo(Snapshot snapshot) {
 		if (this.isVisible()) {
 
 			// time label
-			if (!Main.sim.isPaused()) {
+			if (!Main.source.isPaused()) {
 
 				// sps 1s average calculator
 				for (int i = 0; i < spsArray.length; i++) {
 					if (spsArray[i] == 0) {
-						spsArray[i] = Main.sim.getSpsCounter() * 60;
-						Main.sim.resetSpsCounter();
+						spsArray[i] = Main.source.getSpsCounter() * 60;
+						Main.source.resetSpsCounter();
 						break;
 					}
 				}
@@ -72,21 +75,24 @@ public class InfoPane extends Pane {
 				spsLabel.setText("Steps/Sec: " + spsFinal);
 
 				// past simulation time
-				pastTimeLabel.setText(getTimeString(Main.sim.getSecondsCounter()));
+				pastTimeLabel.setText(getTimeString(snapshot.getSeconds()));
 			}
 
 			// general information
-			String infoText = Main.sim.getName() + "\nObjects: " + Main.sim.getNumberOfObjects() + "\nTime: x"
-					+ ((int) (Main.sim.getTime() * Main.sim.getSps()));
+			String infoText = Main.source.getName() + "\nObjects: " + snapshot.getNumberOfObjects() + "\nTime: x"
+					+ ((int) Main.source.getSpeed()) + "\nIntegrator: " + Main.source.getMethodName();
 
 			// info about selected planet
 			Planet selPl = Main.win.getSelectedPlanet();
-			if (selPl != null) {
+			int i = Main.win.getSelectedIndex();
+			if (i >= 0) {
+				double m = snapshot.getPlanetMass(i);
+				double r = snapshot.getPlanetRadius(i);
 				String name = selPl.getName() + "\n";
-				String mass = "Mass: " + selPl.getMass() + " kg\n";
-				String rad = "Radius: " + Math.round(selPl.getRadius() / 1000.0) + " km\n";
-				String dens = "Density: " + (int) selPl.getDensity() + " kg/m^3\n";
-				String vel = "Velocity: " + (int) selPl.getVel().getRadius() + " m/s" + "\n";
+				String mass = "Mass: " + m + " kg\n";
+				String rad = "Radius: " + Math.round(r / 1000.0) + " km\n";
+				String dens = "Density: " + (int) (m / ((4d / 3) * Math.PI * Math.pow(r, 3))) + " kg/m^3\n";
+				String vel = "Velocity: " + (int) Math.hypot(snapshot.getPlanetVelX(i), snapshot.getPlanetVelY(i)) + " m/s" + "\n";
 				infoText += "\n\n" + name + rad + mass + dens + vel;
 			}
 
@@ -0,0 +1,50 @@
+package window;
+
+import javafx.scene.layout.Pane;
+import javafx.scene.shape.Circle;
+import simulation.Main;
+import utils.Vec;
+
+/**
+ * The circle of a particle in the main window. A view is only created for
+ * particles that are on the screen.
+ * 
+ * @author Jan Muskalla
+ *
+ */
+public class ParticleView {
+
+	/** drawn objects */
+	private final Circle circle;
+
+	/** reused screen coordinates, all views are only updated by the FX thread */
+	private static final Vec screenPos = new Vec();
+
+	/** Creates the circle of a particle. */
+	public ParticleView() {
+		circle = new Circle(ViewSettings.minBodySize);
+		circle.setFill(ViewSettings.bodyColor);
+	}
+
+	/**
+	 * Updates the circle to a position of the particle.
+	 * 
+	 * @param x
+	 * @param y
+	 */
+	public void update(double x, double y) {
+		Vec tp = Main.win.transformInto(x, y, screenPos);
+		circle.setCenterX(tp.getX());
+		circle.setCenterY(tp.getY());
+	}
+
+	/** deletes the circle from the window */
+	public void delete() {
+		((Pane) circle.getParent()).getChildren().remove(circle);
+	}
+
+	public Circle getCircle() {
+		return circle;
+	}
+
+}
@@ -0,0 +1,118 @@
+package window;
+
+import bodies.Planet;
+import javafx.scene.control.Label;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Circle;
+import simulation.Main;
+import utils.Vec;
+
+/**
+ * The drawn objects of a planet in the main window: a circle, a label and a
+ * trail. A view is only created for planets that are on the screen.
+ * 
+ * @author Jan Muskalla
+ *
+ */
+public class PlanetView {
+
+	/** the planet of this view */
+	private final Planet planet;
+
+	/** drawn objects */
+	private final Circle circle;
+	private final Label label;
+	private final Trail trail;
+
+	/** reused screen coordinates, all views are only updated by the FX thread */
+	private static final Vec screenPos = new Vec();
+
+	/**
+	 * Creates the circle, label and trail of a planet.
+	 * 
+	 * @param planet
+	 */
+	public PlanetView(Planet planet) {
+		this.planet = planet;
+
+		label = new Label(planet.getName());
+		label.setTextFill(ViewSettings.textColor);
+		label.setScaleX(0.9);
+		label.setScaleY(0.9);
+		circle = new Circle(1, getColor());
+		trail = new Trail(this);
+	}
+
+	/**
+	 * Updates the position and radius of the circle, the label and the trail to a
+	 * position and radius of the planet.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param radius
+	 */
+	public void update(double x, double y, double radius) {
+		Vec tp = Main.win.transformInto(x, y, screenPos);
+		double circleRadius = Main.source.getScale() * Main.win.getZoom() * radius;
+
+		// update circle
+		circle.setCenterX(tp.getX());
+		circle.setCenterY(tp.getY());
+		if (circleRadius < ViewSettings.minBodySize)
+			circle.setRadius(ViewSettings.minBodySize);
+		else
+			circle.setRadius(circleRadius);
+
+		// update label
+		if (Main.win.isLabels()) {
+			double d = (circleRadius / 1.41421) + 2;
+			label.relocate(tp.getX() + d, tp.getY() + d);
+		}
+
+		// update trail
+		if (Main.win.isTrails())
+			trail.addLine(x, y);
+	}
+
+	/** deletes the drawn objects from the window */
+	public void delete() {
+		trail.delete();
+		((Pane) circle.getParent()).getChildren().remove(circle);
+		((Pane) label.getParent()).getChildren().remove(label);
+	}
+
+	/** a selected planet has a white border */
+	public void select() {
+		circle.setStroke(ViewSettings.planetSelectionColor);
+	}
+
+	/** a deselected planet has a black border */
+	public void deselect() {
+		circle.setStroke(null);
+	}
+
+	/**
+	 * @return the color of the planet or the body color if it has none
+	 */
+	public Color getColor() {
+		return planet.getColor() == null ? ViewSettings.bodyColor : planet.getColor();
+	}
+
+	public Planet getPlanet() {
+		return planet;
+	}
+
+	public Circle getCircle() {
+		return circle;
+	}
+
+	public Label getLabel() {
+		return label;
+	}
+
+	public Trail getTrail() {
+		return trail;
+	}
+
+}
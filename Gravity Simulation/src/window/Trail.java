@@ -1,5 +1,6 @@
-package bodies;
+package window;
 
+import java.util.Iterator;
 import java.util.LinkedList;
 import javafx.animation.FadeTransition;
 import javafx.scene.layout.Pane;
@@ -7,7 +8,6 @@ import javafx.scene.shape.Line;
 import javafx.util.Duration;
 import simulation.Main;
 import utils.Vec;
-import window.ViewSettings;
 
 /**
  * A trail that shows the path of a planet. A trail is made up of lines saved in
@@ -19,8 +19,8 @@ import window.ViewSettings;
  */
 public class Trail {
 
-	/** the parent planet */
-	Planet parent;
+	/** the view of the parent planet */
+	private PlanetView parent;
 
 	/** the trail lines */
 	private LinkedList<Line> lineList;
@@ -28,12 +28,15 @@ public class Trail {
 	/** the real coordinates of the trail */
 	private LinkedList<Vec> coordList;
 
+	/** reused screen coordinates, all trails are only used by the FX thread */
+	private static final Vec screenPos = new Vec(), lastScreenPos = new Vec(), diff = new Vec();
+
 	/**
 	 * creates a new trail
 	 * 
 	 * @param parent
 	 */
-	public Trail(Planet parent) {
+	public Trail(PlanetView parent) {
 		this.parent = parent;
 		lineList = new LinkedList<Line>();
 		coordList = new LinkedList<Vec>();
@@ -42,14 +45,22 @@ public class Trail {
 	/**
 	 * adds a new trail to the list and the window and removes old lines
 	 * 
-	 * @param pos
+	 * @param x
+	 * @param y
+	 *            the current position of the planet
 	 */
-	public void addLine() {
-		Vec tp = Main.win.transform(parent.getPos());
-		Vec tplast = Main.win.transform(coordList.getLast());
+	public void addLine(double x, double y) {
+		if (coordList.isEmpty()) {
+			savePosition(x, y);
+			return;
+		}
+
+		Vec last = coordList.getLast();
+		Vec tp = Main.win.transformInto(x, y, screenPos);
+		Vec tplast = Main.win.transformInto(last.getX(), last.getY(), lastScreenPos);
 
 		// only draw new line if planet moved more than trailLength
-		if (tp.sub(tplast).getRadius() > ViewSettings.trailLength) {
+		if (tp.subInto(tplast, diff).lengthSquared() > ViewSettings.trailLength * ViewSettings.trailLength) {
 
 			// the new line
 			Line newLine = new Line(tplast.getX(), tplast.getY(), tp.getX(), tp.getY());
@@ -74,35 +85,41 @@ public class Trail {
 			}
 
 			// save position for the next line start
-			savePosition();
+			savePosition(x, y);
 		}
 	}
 
 	/**
-	 * Saves the current position of the planet in coordList.
+	 * Saves a position of the planet in coordList.
+	 * 
+	 * @param x
+	 * @param y
 	 */
-	public void savePosition() {
-		coordList.add(new Vec(parent.getPos()));
+	public void savePosition(double x, double y) {
+		coordList.add(new Vec(x, y));
 	}
 
 	/**
 	 * Translate all Lines in lineList with help of orbitPoints.
 	 */
 	public void translate() {
-		Vec newStart, newEnd;
-		Line line;
+		Iterator<Vec> coords = coordList.iterator();
+		if (!coords.hasNext())
+			return;
+		Vec start = coords.next();
 
-		for (int i = 0; i < lineList.size(); i++) {
-			line = lineList.get(i);
+		for (Line line : lineList) {
+			Vec end = coords.next();
 
 			// get the coordinates and use the current transform
-			newStart = Main.win.transform(coordList.get(i));
-			newEnd = Main.win.transform(coordList.get(i + 1));
-
+			Vec newStart = Main.win.transformInto(start.getX(), start.getY(), screenPos);
 			line.setStartX(newStart.getX());
 			line.setStartY(newStart.getY());
+			Vec newEnd = Main.win.transformInto(end.getX(), end.getY(), screenPos);
 			line.setEndX(newEnd.getX());
 			line.setEndY(newEnd.getY());
+
+			start = end;
 		}
 	}
 
@@ -1,7 +1,5 @@
 package window;
 
-import bodies.Particle;
-import bodies.Planet;
 import javafx.scene.paint.Color;
 import simulation.Main;
 
@@ -49,23 +47,6 @@ public class ViewSettings {
 
 	private static void updateColors() {
 		Main.win.updateColors();
-
-		for (Planet p : Main.sim.getPlanetList()) {
-			p.getLabel().setTextFill(ViewSettings.textColor);
-		}
-
-		for (Particle p : Main.sim.getParticleList()) {
-			p.getCircle().setFill(ViewSettings.bodyColor);
-		}
-
-		// system
-		for (Planet p : Main.sim.getConstellation().getPlanetList()) {
-			p.getLabel().setTextFill(ViewSettings.textColor);
-		}
-
-		for (Particle p : Main.sim.getConstellation().getParticleList()) {
-			p.getCircle().setFill(ViewSettings.bodyColor);
-		}
 	}
 
 }
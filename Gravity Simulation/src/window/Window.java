@@ -1,6 +1,7 @@
 package window;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import javafx.animation.Animation;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
@@ -24,9 +25,11 @@ import javafx.scene.shape.Line;
 import javafx.stage.Stage;
 import javafx.util.Duration;
 import simulation.*;
+import simulation.recording.Replay;
 import systems.PlanetData;
 import utils.Utils;
 import utils.Vec;
+import bodies.Body;
 import bodies.Constellation;
 import bodies.Particle;
 import bodies.Planet;
@@ -48,7 +51,7 @@ public class Window extends Application {
 	private Group root;
 
 	/** panes for circles, trails, labels and Info */
-	private Pane bodyPane, trailPane, labelPane;
+	private Pane particlePane, bodyPane, trailPane, labelPane;
 	private InfoPane infoPane;
 
 	/** the menu */
@@ -66,8 +69,12 @@ public class Window extends Application {
 	/** the current mouse position for adding planets */
 	private Vec mousePos;
 
-	/** the selected planet and a flag for following it*/
+	/** reused for screen coordinates in each frame */
+	private final Vec screenPos = new Vec();
+
+	/** the selected planet, its index in the last snapshot and a flag for following it*/
 	private Planet selectedPlanet;
+	private int selectedIndex;
 	private boolean follow;
 
 	/** the next planet that will be added and the mode */
@@ -79,6 +86,13 @@ public class Window extends Application {
 
 	private Constellation save;
 
+	/** the drawn state of the simulation, null until the first snapshot */
+	private Snapshot snapshot;
+
+	/** the drawn objects of all bodies that were on the screen */
+	private final IdentityHashMap<Planet, PlanetView> planetViews = new IdentityHashMap<Planet, PlanetView>();
+	private final IdentityHashMap<Particle, ParticleView> particleViews = new IdentityHashMap<Particle, ParticleView>();
+
 	/**
 	 * Creates a new window with initialized local variables.
 	 */
@@ -116,6 +130,7 @@ public class Window extends Application {
 
 		// add panes and menu to root
 		trailPane = new Pane();
+		particlePane = new Pane();
 		bodyPane = new Pane();
 		labelPane = new Pane();
 		infoPane = new InfoPane();
@@ -125,7 +140,7 @@ public class Window extends Application {
 			int x = 285;
 			int y = -1;
 			deccButton = new Button("<<");
-			deccButton.setOnAction(actionEvent -> Main.sim.multTime(0.5));
+			deccButton.setOnAction(actionEvent -> Main.source.multTime(0.5));
 			deccButton.setOpacity(ViewSettings.uiOpacity);
 			deccButton.setTranslateX(x);
 			deccButton.setTranslateY(y);
@@ -138,7 +153,7 @@ public class Window extends Application {
 			pauseButton.setPrefWidth(25);
 
 			accButton = new Button(">>");
-			accButton.setOnAction(actionEvent -> Main.sim.multTime(2));
+			accButton.setOnAction(actionEvent -> Main.source.multTime(2));
 			accButton.setOpacity(ViewSettings.uiOpacity);
 			accButton.setTranslateX(x + 63);
 			accButton.setTranslateY(y);
@@ -151,11 +166,11 @@ public class Window extends Application {
 			pauseLabel.setTranslateY(-3);
 		}
 
-		root.getChildren().addAll(trailPane, bodyPane, labelPane, infoPane, menuBar, deccButton, pauseButton, accButton,
+		root.getChildren().addAll(trailPane, particlePane, bodyPane, labelPane, infoPane, menuBar, deccButton, pauseButton, accButton,
 				pauseLabel);
 
 		// initialize all values to default and load the planet objects
-		resetAndLoad(Main.sim);
+		resetAndLoad();
 
 		// starts the updating time line
 		runTimeLine();
@@ -172,13 +187,22 @@ public class Window extends Application {
 	}
 
 	/**
-	 * The main window time line. 60 times per second updates all drawn objects and
-	 * adjusts the view.
+	 * The main window time line. 60 times per second takes the latest snapshot of
+	 * the simulation, updates all drawn objects and adjusts the view.
 	 */
 	private void runTimeLine() {
 		Timeline timeline = new Timeline(new KeyFrame(Duration.seconds(1.0 / 60), new EventHandler<ActionEvent>() {
 			public void handle(ActionEvent event) {
 
+				// take the new snapshot and delete the removed bodies
+				Snapshot newSnapshot = Main.source.takeSnapshot();
+				if (newSnapshot != null) {
+					snapshot = newSnapshot;
+					removeBodies();
+				}
+				if (snapshot == null)
+					return;
+
 				// transform trails if window size has changed
 				if (winWasChanged) {
 					translateTrails();
@@ -187,20 +211,41 @@ public class Window extends Application {
 
 				// follow a planet
 				if (follow) {
-					Vec pos = selectedPlanet.getPos().mult(Main.sim.getScale());
-					dx = -pos.getX();
-					dy = pos.getY();
-					translateTrails();
+					int i = getSelectedIndex();
+					if (i >= 0) {
+						double scale = Main.source.getScale();
+						dx = -snapshot.getPlanetX(i) * scale;
+						dy = snapshot.getPlanetY(i) * scale;
+						translateTrails();
+					}
 				}
 
-				// update all drawn objects
-				for (Planet planet : Main.sim.getPlanetList())
-					planet.updateObjects();
-				for (Particle particle : Main.sim.getParticleList())
-					particle.updateObjects();
+				// update all drawn objects, the objects of a body are created when it is
+				// on the screen for the first time
+				Planet[] planets = snapshot.getPlanets();
+				for (int i = 0; i < snapshot.getPlanetCount(); i++) {
+					double x = snapshot.getPlanetX(i);
+					double y = snapshot.getPlanetY(i);
+					double radius = snapshot.getPlanetRadius(i);
+					PlanetView view = planetViews.get(planets[i]);
+					if (view == null && isOnScreen(x, y, radius))
+						view = addView(planets[i]);
+					if (view != null)
+						view.update(x, y, radius);
+				}
+				Particle[] particles = snapshot.getParticles();
+				for (int i = 0; i < snapshot.getParticleCount(); i++) {
+					double x = snapshot.getParticleX(i);
+					double y = snapshot.getParticleY(i);
+					ParticleView view = particleViews.get(particles[i]);
+					if (view == null && isOnScreen(x, y, 0))
+						view = addView(particles[i]);
+					if (view != null)
+						view.update(x, y);
+				}
 
 				// update info
-				infoPane.updateInfo();
+				infoPane.updateInfo(snapshot);
 
 				bodyPane.requestFocus();
 			}
@@ -209,6 +254,71 @@ public class Window extends Application {
 		timeline.play();
 	}
 
+	/**
+	 * Deletes the drawn objects of the bodies that were removed from the
+	 * simulation since the last snapshot. A selected planet that merged into
+	 * another planet passes the selection on.
+	 */
+	private void removeBodies() {
+		for (Body body : snapshot.getRemoved()) {
+			if (body == selectedPlanet) {
+				Planet merged = snapshot.getMergedPlanet(selectedPlanet);
+				if (merged != selectedPlanet)
+					selectPlanet(merged);
+				else
+					deselectPlanet();
+			}
+
+			PlanetView planetView = planetViews.remove(body);
+			if (planetView != null)
+				planetView.delete();
+			ParticleView particleView = particleViews.remove(body);
+			if (particleView != null)
+				particleView.delete();
+		}
+	}
+
+	/**
+	 * Creates the drawn objects of a planet and adds them to the window.
+	 * 
+	 * @param planet
+	 * @return the view of the planet
+	 */
+	private PlanetView addView(Planet planet) {
+		PlanetView view = new PlanetView(planet);
+		view.getLabel().setVisible(labels);
+		bodyPane.getChildren().add(view.getCircle());
+		labelPane.getChildren().add(view.getLabel());
+		planetViews.put(planet, view);
+		return view;
+	}
+
+	/**
+	 * Creates the circle of a particle and adds it to the window.
+	 * 
+	 * @param particle
+	 * @return the view of the particle
+	 */
+	private ParticleView addView(Particle particle) {
+		ParticleView view = new ParticleView();
+		particlePane.getChildren().add(view.getCircle());
+		particleViews.put(particle, view);
+		return view;
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @param radius
+	 * @return true if a body at a position with a radius is visible on the screen
+	 */
+	private boolean isOnScreen(double x, double y, double radius) {
+		Vec tp = transformInto(x, y, screenPos);
+		double r = Math.max(Main.source.getScale() * zoom * radius, ViewSettings.minBodySize);
+		return tp.getX() + r >= 0 && tp.getX() - r <= getWidth() && tp.getY() + r >= 0
+				&& tp.getY() - r <= getHeight();
+	}
+
 	/**
 	 * Handles keyboard and mouse actions.
 	 * 
@@ -243,20 +353,30 @@ public class Window extends Application {
 
 				// time controls
 				if (key == KeyCode.PERIOD)
-					Main.sim.multTime(2);
+					Main.source.multTime(2);
 				if (key == KeyCode.COMMA)
-					Main.sim.multTime(0.5);
+					Main.source.multTime(0.5);
 				if (key == KeyCode.MINUS)
-					Main.sim.resetTime();
+					Main.source.resetTime();
 				if (key == KeyCode.P || key == KeyCode.SPACE)
 					togglePause();
 
+				// replay controls
+				if (Main.source instanceof Replay) {
+					Replay replay = (Replay) Main.source;
+					if (key == KeyCode.B)
+						replay.reverse();
+					if (key == KeyCode.LEFT)
+						replay.skip(-0.05);
+					if (key == KeyCode.RIGHT)
+						replay.skip(0.05);
+				}
+
 				// planets
 				if (key == KeyCode.A)
 					addNextPlanet();
-				if (key == KeyCode.DELETE && selectedPlanet != null) {
-					Main.sim.getPlanetList().remove(selectedPlanet);
-					selectedPlanet.delete();
+				if (key == KeyCode.DELETE && selectedPlanet != null && Main.source == Main.sim) {
+					Main.sim.removePlanet(selectedPlanet);
 					deselectPlanet();
 				}
 				if (key == KeyCode.O)
@@ -346,29 +466,26 @@ public class Window extends Application {
 
 	/**
 	 * Sets the view to default values, clears trails and bodies and loads all new
-	 * bodies from the simulation
+	 * bodies from the next snapshot of the current source (Main.source)
 	 */
-	public void resetAndLoad(Simulation sim) {
+	public void resetAndLoad() {
 		zoom = 1;
 		dx = dy = tempdx = tempdy = 0;
 
 		deselectPlanet();
 		follow = false;
+		snapshot = null;
 
 		pauseLabel.setVisible(false);
 
-		// clear the pane and add the new bodies
+		// clear the panes, the drawn objects of the new bodies are created when they
+		// are on the screen
+		particlePane.getChildren().clear();
 		bodyPane.getChildren().clear();
 		labelPane.getChildren().clear();
 		trailPane.getChildren().clear();
-
-		for (Particle particle : sim.getParticleList())
-			bodyPane.getChildren().add(particle.getCircle());
-
-		for (Planet planet : sim.getPlanetList())
-			bodyPane.getChildren().add(planet.getCircle());
-		for (Planet planet : sim.getPlanetList())
-			labelPane.getChildren().add(planet.getLabel());
+		planetViews.clear();
+		particleViews.clear();
 	}
 
 	/**
@@ -436,10 +553,12 @@ public class Window extends Application {
 					follow = true;
 				}
 
-				if (selectedPlanet == null) {
+				int i = getSelectedIndex();
+				if (i < 0) {
 					timeline.stop();
 				} else {
-					Vec scaledPos = selectedPlanet.getPos().mult(Main.sim.getScale());
+					screenPos.set(snapshot.getPlanetX(i), snapshot.getPlanetY(i));
+					Vec scaledPos = screenPos.multInPlace(Main.source.getScale());
 
 					// pancounter from 0 -> 1
 					dx = posx * (1 - pancounter) + -scaledPos.getX() * pancounter;
@@ -464,13 +583,13 @@ public class Window extends Application {
 		Circle circle;
 		Vec mouse, center;
 
-		for (Planet p : Main.sim.getPlanetList()) {
-			circle = p.getCircle();
+		for (PlanetView view : planetViews.values()) {
+			circle = view.getCircle();
 			center = new Vec(circle.getCenterX(), circle.getCenterY());
 			mouse = new Vec(mouseX, mouseY);
 
 			if (mouse.sub(center).getRadius() < circle.getRadius() + 10) {
-				selectPlanet(p);
+				selectPlanet(view.getPlanet());
 			}
 		}
 	}
@@ -479,39 +598,49 @@ public class Window extends Application {
 	 * adds the selected planet to the simulation
 	 */
 	private void addNextPlanet() {
+		if (Main.source != Main.sim)
+			return;
 		Planet newPlanet = nextAddedPlanet.clone();
 
 		// position
 		newPlanet.setPos(transfromBack(mousePos));
 
-		// velocity
-		if (!orbitMode || Main.sim.getPlanetList().size() == 0) {
-			newPlanet.setVel(0, 0);
-		} else {
-			Planet biggest = Utils.getBiggestInView(Main.win, Main.sim.getPlanetList().toArray(new Planet[] {}));
-			newPlanet.setVel(Utils.getOrbitalVelocityCircular(biggest, newPlanet));
-		}
+		// velocity, the orbital velocity is calculated in the simulation thread with
+		// the current state of the biggest planet
+		newPlanet.setVel(0, 0);
+		Planet biggest = orbitMode && snapshot != null ? Utils.getBiggestInView(this, snapshot) : null;
+		if (biggest != null)
+			Main.sim.execute(() -> newPlanet.setVel(Utils.getOrbitalVelocityCircular(biggest, newPlanet)));
 
 		// add the planet
 		Main.sim.addNewPlanet(newPlanet);
-
-		bodyPane.getChildren().add(newPlanet.getCircle());
-		labelPane.getChildren().add(newPlanet.getLabel());
 	}
 
+	/**
+	 * Pauses the simulation and shows its planets side by side. The current state
+	 * is copied in the simulation thread, so the planets of the simulation stay
+	 * in its store.
+	 */
 	public void enterCompareMode() {
-		Main.sim.setPause(true);
-
-		save = new Constellation(Main.sim.getName(), Main.sim.getPlanetList(), Main.sim.getParticleList(),
-				Main.sim.getScale(), Main.sim.getTime(), Main.sim.getSps());
+		Simulation sim = Main.sim;
+		sim.setPause(true);
+		sim.execute(() -> {
+			Constellation current = new Constellation(sim.getName(), sim.getPlanetList(), sim.getPlanetStore(),
+					sim.getParticleList(), sim.getParticleStore(), sim.getScale(), sim.getTime(), sim.getSps())
+					.clone();
+			Platform.runLater(() -> showCompareMode(current));
+		});
+	}
 
-		for (Planet p : save.getPlanetList()) {
-			p.getTrail().delete();
-			p.getTrail().savePosition();
-		}
+	/**
+	 * Restarts with copies of the planets of a constellation in a row, the
+	 * constellation is saved to go back to it.
+	 */
+	private void showCompareMode(Constellation current) {
+		save = current;
 
 		ArrayList<Planet> planetList = new ArrayList<>();
-		for (Planet p : Main.sim.getPlanetList()) {
+		for (Planet p : save.getPlanetList()) {
 			planetList.add(p.clone());
 		}
 
@@ -547,8 +676,8 @@ public class Window extends Application {
 	 */
 	private void translateTrails() {
 		if (trails)
-			for (Planet p : Main.sim.getPlanetList())
-				p.getTrail().translate();
+			for (PlanetView view : planetViews.values())
+				view.getTrail().translate();
 	}
 
 	/**
@@ -567,9 +696,23 @@ public class Window extends Application {
 	 * @return the transformed vector
 	 */
 	public Vec transform(Vec vector) {
-		double x = zoom * (Main.sim.getScale() * vector.getX() + dx + tempdx) + getWidth() / 2.0;
-		double y = zoom * (Main.sim.getScale() * -vector.getY() + dy + tempdy) + getHeight() / 2.0;
-		return new Vec(x, y);
+		return transformInto(vector.getX(), vector.getY(), new Vec());
+	}
+
+	/**
+	 * Transforms a position from planet coordinates to screen coordinates without
+	 * creating a vector.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param dst
+	 *            the vector for the screen coordinates
+	 * @return dst
+	 */
+	public Vec transformInto(double x, double y, Vec dst) {
+		dst.set(zoom * (Main.source.getScale() * x + dx + tempdx) + getWidth() / 2.0,
+				zoom * (Main.source.getScale() * -y + dy + tempdy) + getHeight() / 2.0);
+		return dst;
 	}
 
 	/**
@@ -579,8 +722,8 @@ public class Window extends Application {
 	 * @return the transformed vector
 	 */
 	public Vec transfromBack(Vec vector) {
-		double x = ((vector.getX() - getWidth() / 2) / zoom - dx - tempdx) / Main.sim.getScale();
-		double y = -((vector.getY() - getHeight() / 2) / zoom - dy - tempdy) / Main.sim.getScale();
+		double x = ((vector.getX() - getWidth() / 2) / zoom - dx - tempdx) / Main.source.getScale();
+		double y = -((vector.getY() - getHeight() / 2) / zoom - dy - tempdy) / Main.source.getScale();
 		return new Vec(x, y);
 	}
 
@@ -592,7 +735,10 @@ public class Window extends Application {
 	public void selectPlanet(Planet planet) {
 		deselectPlanet();
 		selectedPlanet = planet;
-		planet.select();
+		selectedIndex = snapshot == null ? 0 : snapshot.getPlanetCount() - 1;
+		PlanetView view = planetViews.get(planet);
+		if (view != null)
+			view.select();
 		panToBody();
 	}
 
@@ -601,8 +747,8 @@ public class Window extends Application {
 	 */
 	public void deselectPlanet() {
 		follow = false;
-		if (selectedPlanet != null)
-			selectedPlanet.deselect();
+		if (selectedPlanet != null && planetViews.containsKey(selectedPlanet))
+			planetViews.get(selectedPlanet).deselect();
 		selectedPlanet = null;
 	}
 
@@ -625,6 +771,10 @@ public class Window extends Application {
 	public void updateColors() {
 		scene.setFill(ViewSettings.background);
 		infoPane.updateTextColor(ViewSettings.textColor);
+		for (PlanetView view : planetViews.values())
+			view.getLabel().setTextFill(ViewSettings.textColor);
+		for (ParticleView view : particleViews.values())
+			view.getCircle().setFill(ViewSettings.bodyColor);
 		menuBar.updateCMIs();
 	}
 
@@ -633,17 +783,9 @@ public class Window extends Application {
 	 * menu item.
 	 */
 	public void toggleTrails() {
-		if (trails) {
-			for (Planet p : Main.sim.getPlanetList())
-				p.getTrail().delete();
-			trails = false;
-		} else {
-			for (Planet p : Main.sim.getPlanetList())
-				p.getTrail().delete();
-			for (Planet p : Main.sim.getPlanetList())
-				p.getTrail().savePosition();
-			trails = true;
-		}
+		for (PlanetView view : planetViews.values())
+			view.getTrail().delete();
+		trails = !trails;
 		menuBar.updateCMIs();
 	}
 
@@ -653,8 +795,8 @@ public class Window extends Application {
 	 */
 	public void toggleLabels() {
 		labels = !labels;
-		for (Planet p : Main.sim.getPlanetList()) {
-			p.getLabel().setVisible(labels);
+		for (PlanetView view : planetViews.values()) {
+			view.getLabel().setVisible(labels);
 		}
 		menuBar.updateCMIs();
 	}
@@ -674,8 +816,8 @@ public class Window extends Application {
 	}
 
 	private void togglePause() {
-		boolean np = !Main.sim.isPaused();
-		Main.sim.setPause(np);
+		boolean np = !Main.source.isPaused();
+		Main.source.setPause(np);
 		pauseLabel.setVisible(np);
 		if (np)
 			pauseButton.setText(">");
@@ -691,6 +833,14 @@ public class Window extends Application {
 		menuBar.updateCMIs();
 	}
 
+	/**
+	 * turns the parallel force calculation on or off
+	 */
+	public void toggleParallel() {
+		Main.sim.setParallel(!Main.sim.isParallel());
+		menuBar.updateCMIs();
+	}
+
 	private void printInfo() {
 		System.out.println("System: " + Main.sim.getConstellation().getName());
 		System.out.println("Scale: " + zoom * Main.sim.getScale());
@@ -725,6 +875,21 @@ public class Window extends Application {
 		return selectedPlanet;
 	}
 
+	/**
+	 * The planet is searched from its index in the last snapshot, so it is
+	 * usually found at once even if bodies before it were removed.
+	 *
+	 * @return the index of the selected planet in the current snapshot or -1
+	 */
+	public int getSelectedIndex() {
+		if (selectedPlanet == null || snapshot == null)
+			return -1;
+		int i = snapshot.indexOf(selectedPlanet, selectedIndex);
+		if (i >= 0)
+			selectedIndex = i;
+		return i;
+	}
+
 	public double getZoom() {
 		return zoom;
 	}
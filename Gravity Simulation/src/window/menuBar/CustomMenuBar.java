@@ -29,6 +29,7 @@ public class CustomMenuBar extends MenuBar {
 
 	/** menu items in settings menu */
 	private CheckMenuItem orbitModeCMI = new CheckMenuItem("Place in Orbit");
+	private CheckMenuItem parallelCMI = new CheckMenuItem("Parallel Gravity");
 
 	/**
 	 * Creates the menu bar.
@@ -58,9 +59,10 @@ public class CustomMenuBar extends MenuBar {
 		 * settings menu
 		 */
 		orbitModeCMI.setOnAction(actionEvent -> Main.win.toggleOrbitMode());
+		parallelCMI.setOnAction(actionEvent -> Main.win.toggleParallel());
 
 		Menu settingsMenu = new Menu("Settings");
-		settingsMenu.getItems().addAll(orbitModeCMI);
+		settingsMenu.getItems().addAll(orbitModeCMI, parallelCMI);
 
 		/*
 		 * view menu
@@ -103,6 +105,7 @@ public class CustomMenuBar extends MenuBar {
 		labelsCMI.setSelected(Main.win.isLabels());
 		infoCMI.setSelected(Main.win.isInfoVisible());
 		orbitModeCMI.setSelected(Main.win.isOrbitMode());
+		parallelCMI.setSelected(Main.sim.isParallel());
 		darkThemeCMI.setSelected(ViewSettings.darkTheme);
 		lightThemeCMI.setSelected(!ViewSettings.darkTheme);
 		fullscreen.setSelected(Main.win.isFullscreen());
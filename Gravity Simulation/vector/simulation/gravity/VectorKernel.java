@@ -0,0 +1,127 @@
+package simulation.gravity;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import utils.Utils;
+
+/**
+ * The gravity kernels written with the vector API of the JDK. This class is in
+ * its own source folder, because it needs --add-modules jdk.incubator.vector
+ * to be compiled and used. VectorSum loads it by name if the module is
+ * available, so the rest of the application is compiled and runs without it.
+ * 
+ * @author Jan Muskalla
+ *
+ */
+class VectorKernel implements VectorSum.Kernel {
+
+	private static final VectorSpecies<Double> species = DoubleVector.SPECIES_PREFERRED;
+
+	/** the number of doubles in one vector */
+	private static final int lanes = species.length();
+
+	@Override
+	public int getLanes() {
+		return lanes;
+	}
+
+	@Override
+	public void accelerateBySources(double[] x, double[] y, double[] accX, double[] accY, int from, int to,
+			double[] srcX, double[] srcY, double[] srcMass, int m, boolean self, double eps2) {
+		int bound = species.loopBound(m);
+
+		for (int i = from; i < to; i++) {
+			DoubleVector xi = DoubleVector.broadcast(species, x[i]);
+			DoubleVector yi = DoubleVector.broadcast(species, y[i]);
+			DoubleVector ax = DoubleVector.zero(species);
+			DoubleVector ay = DoubleVector.zero(species);
+
+			int j = 0;
+			for (; j < bound; j += lanes) {
+				DoubleVector dx = DoubleVector.fromArray(species, srcX, j).sub(xi);
+				DoubleVector dy = DoubleVector.fromArray(species, srcY, j).sub(yi);
+				DoubleVector r2 = dx.fma(dx, dy.mul(dy).add(eps2));
+				DoubleVector f = DoubleVector.fromArray(species, srcMass, j).mul(Utils.GRAV_CONST)
+						.div(r2.mul(r2.sqrt()));
+
+				// a body does not accelerate itself
+				if (self && i >= j && i < j + lanes)
+					f = f.blend(0.0, VectorMask.fromLong(species, 1L << (i - j)));
+
+				ax = dx.fma(f, ax);
+				ay = dy.fma(f, ay);
+			}
+
+			double sumX = ax.reduceLanes(VectorOperators.ADD);
+			double sumY = ay.reduceLanes(VectorOperators.ADD);
+
+			// remaining sources
+			for (; j < m; j++) {
+				if (self && i == j)
+					continue;
+				double dx = srcX[j] - x[i];
+				double dy = srcY[j] - y[i];
+				double r2 = dx * dx + dy * dy + eps2;
+				double f = Utils.GRAV_CONST * srcMass[j] / (r2 * Math.sqrt(r2));
+				sumX += dx * f;
+				sumY += dy * f;
+			}
+
+			accX[i] = sumX;
+			accY[i] = sumY;
+		}
+	}
+
+	@Override
+	public void accelerateTargets(double[] x, double[] y, double[] accX, double[] accY, int from, int to,
+			double[] srcX, double[] srcY, double[] srcMass, int m, boolean self, double eps2) {
+		int bound = from + species.loopBound(to - from);
+
+		int i = from;
+		for (; i < bound; i += lanes) {
+			DoubleVector xi = DoubleVector.fromArray(species, x, i);
+			DoubleVector yi = DoubleVector.fromArray(species, y, i);
+			DoubleVector ax = DoubleVector.zero(species);
+			DoubleVector ay = DoubleVector.zero(species);
+
+			for (int j = 0; j < m; j++) {
+				DoubleVector dx = DoubleVector.broadcast(species, srcX[j]).sub(xi);
+				DoubleVector dy = DoubleVector.broadcast(species, srcY[j]).sub(yi);
+				DoubleVector r2 = dx.fma(dx, dy.mul(dy).add(eps2));
+				DoubleVector f = DoubleVector.broadcast(species, Utils.GRAV_CONST * srcMass[j])
+						.div(r2.mul(r2.sqrt()));
+
+				// a body does not accelerate itself
+				if (self && j >= i && j < i + lanes)
+					f = f.blend(0.0, VectorMask.fromLong(species, 1L << (j - i)));
+
+				ax = dx.fma(f, ax);
+				ay = dy.fma(f, ay);
+			}
+
+			ax.intoArray(accX, i);
+			ay.intoArray(accY, i);
+		}
+
+		// remaining targets
+		for (; i < to; i++) {
+			double sumX = 0;
+			double sumY = 0;
+			for (int j = 0; j < m; j++) {
+				if (self && i == j)
+					continue;
+				double dx = srcX[j] - x[i];
+				double dy = srcY[j] - y[i];
+				double r2 = dx * dx + dy * dy + eps2;
+				double f = Utils.GRAV_CONST * srcMass[j] / (r2 * Math.sqrt(r2));
+				sumX += dx * f;
+				sumY += dy * f;
+			}
+			accX[i] = sumX;
+			accY[i] = sumY;
+		}
+	}
+
+}